@@ -14,7 +14,7 @@ public class Application {
    * @param args the input arguments
    */
   public static void main(String[] args) {
-    PubSubApplication application = null;
+    PubSubApplication<String> application = null;
     Scanner scanner = new Scanner(System.in);
     String message;
 
@@ -0,0 +1,97 @@
+package ua.danit.queue;
+
+/**
+ * Interrelated interfaces for establishing flow-controlled components in which
+ * {@link Publisher Publishers} produce items consumed by one or more
+ * {@link Subscriber Subscribers}, each managed by a {@link Subscription}.
+ *
+ * <p>Mirrors {@code java.util.concurrent.Flow} (Reactive Streams) method for method, as the
+ * project targets Java 8 where that class is not available. Adapting to the JDK types is a
+ * matter of delegating each call.
+ *
+ * @author Andrey Minov
+ */
+public final class Flow {
+
+  private Flow() {
+  }
+
+  /**
+   * A producer of items received by subscribers. Each subscriber receives items in the same
+   * order, unless drops or errors are encountered.
+   *
+   * @param <T> the published item type
+   */
+  @FunctionalInterface
+  public interface Publisher<T> {
+    /**
+     * Adds the given subscriber. The subscriber is always notified with
+     * {@link Subscriber#onSubscribe(Subscription)} first.
+     *
+     * @param subscriber the subscriber
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * A receiver of messages. The methods are invoked in strict sequential order for each
+   * subscription.
+   *
+   * @param <T> the subscribed item type
+   */
+  public interface Subscriber<T> {
+    /**
+     * Method invoked prior to invoking any other subscriber methods for the given subscription.
+     *
+     * @param subscription a new subscription
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Method invoked with a subscription's next item. Never called more times than requested.
+     *
+     * @param item the item
+     */
+    void onNext(T item);
+
+    /**
+     * Method invoked upon an unrecoverable error encountered by a publisher or subscription.
+     *
+     * @param throwable the exception
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Method invoked when it is known that no additional subscriber invocations will occur.
+     */
+    void onComplete();
+  }
+
+  /**
+   * Message control linking a {@link Publisher} and {@link Subscriber}.
+   */
+  public interface Subscription {
+    /**
+     * Adds the given number of items to the current unfulfilled demand for this subscription.
+     * If {@code n} is less than or equal to zero, the subscriber will receive an
+     * {@code onError} signal with an {@link IllegalArgumentException}.
+     *
+     * @param n the increment of demand, {@code Long.MAX_VALUE} means effectively unbounded.
+     */
+    void request(long n);
+
+    /**
+     * Causes the subscriber to (eventually) stop receiving messages.
+     */
+    void cancel();
+  }
+
+  /**
+   * A component that acts as both a subscriber and publisher.
+   *
+   * @param <T> the subscribed item type
+   * @param <R> the published item type
+   */
+  public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+  }
+}
@@ -0,0 +1,36 @@
+package ua.danit.queue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary representation of messages of publisher-subscriber application. Codec writes into and
+ * reads from buffers owned by the caller, so the same buffer can be reused for many messages.
+ *
+ * <p>Implementations must be thread safe, as the same codec is used by all publishing and
+ * consuming threads.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public interface MessageCodec<T> {
+
+  /**
+   * Write message starting at current position of the buffer, advancing the position past the
+   * written bytes.
+   *
+   * @param message the message to encode.
+   * @param target  the buffer to write to.
+   * @throws java.nio.BufferOverflowException if message does not fit into remaining space, the
+   *                                          caller may retry with larger buffer.
+   */
+  void encode(T message, ByteBuffer target);
+
+  /**
+   * Read message from all remaining bytes of the buffer, advancing the position to its limit.
+   *
+   * @param source the buffer holding exactly one encoded message.
+   * @return the decoded message.
+   * @throws IllegalArgumentException if bytes are not valid encoding of a message.
+   */
+  T decode(ByteBuffer source);
+}
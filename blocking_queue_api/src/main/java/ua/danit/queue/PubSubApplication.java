@@ -1,25 +1,39 @@
 package ua.danit.queue;
 
+import java.util.Collection;
 import java.util.function.Consumer;
 
 /**
  * Publisher-subscriber application.
  *
+ * @param <T> the message type
  * @author Andrey Minov
  */
-public interface PubSubApplication extends AutoCloseable {
+public interface PubSubApplication<T> extends AutoCloseable {
 
   /**
    * Register message consumer into publish subscribe application.
    *
    * @param messageConsumer consumer for message coming from message queue.
    */
-  void registerConsumer(Consumer<String> messageConsumer);
+  void registerConsumer(Consumer<T> messageConsumer);
 
   /**
    * Publish message into processing system.
    *
    * @param message the message to publish.
    */
-  void publish(String message);
+  void publish(T message);
+
+  /**
+   * Publish several messages into processing system. Implementations may enqueue all of them
+   * at once instead of one by one.
+   *
+   * @param messages the messages to publish in order.
+   */
+  default void publishAll(Collection<T> messages) {
+    for (T message : messages) {
+      publish(message);
+    }
+  }
 }
@@ -0,0 +1,55 @@
+package ua.danit.queue;
+
+import java.util.function.Consumer;
+
+/**
+ * Publisher-subscriber application with named topics. Unlike consumers of
+ * {@link PubSubApplication}, which compete for messages of the single channel, every subscriber
+ * of a topic receives every message published to it.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public interface TopicPubSubApplication<T> extends AutoCloseable {
+
+  /**
+   * Subscribe consumer to messages published to the topic after subscription. Messages of one
+   * topic reach the consumer in publish order. Topic consists of words separated by dot and
+   * may be pattern, where word {@code *} matches exactly one word and last word {@code #}
+   * matches any number of words, so {@code orders.#} matches {@code orders} and
+   * {@code orders.new.eu}.
+   *
+   * @param topic           the topic name or pattern.
+   * @param messageConsumer consumer for messages of the topic.
+   * @return the subscription, to be cancelled when consumer is not interested anymore.
+   */
+  Subscription subscribe(String topic, Consumer<T> messageConsumer);
+
+  /**
+   * Publish message to all subscribers of the topic. Message of topic without subscribers is
+   * dropped.
+   *
+   * @param topic   the topic name.
+   * @param message the message to publish.
+   */
+  void publish(String topic, T message);
+
+  /**
+   * Subscription of consumer to the topic.
+   */
+  interface Subscription {
+
+    /**
+     * Topic of subscription.
+     *
+     * @return the topic name or pattern.
+     */
+    String getTopic();
+
+    /**
+     * Stop delivery of messages to consumer. Message which is being delivered at the moment may
+     * still reach it.
+     */
+    void cancel();
+  }
+}
@@ -0,0 +1,216 @@
+package ua.danit.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Reentrant lock which spins for a while before parking contending thread. Spin time follows
+ * recent hold times of the lock: when critical sections are short, lock is likely to be
+ * released sooner than parked thread would be woken, and when they are long spinning only
+ * burns CPU, so thread parks at once.
+ *
+ * <p>Fair lock is given in order of arrival and spins only while nobody is queued, unfair one
+ * lets arriving thread take the lock ahead of queued ones. Conditions behave as conditions
+ * of {@link java.util.concurrent.locks.ReentrantLock}.
+ *
+ * @author Andrey Minov
+ */
+public class AdaptiveSpinLock implements Lock {
+  private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+  private static final long MIN_SPIN_NANOS = 500;
+  private static final long MAX_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+  private static final int SAMPLE_MASK = 15;
+  private static final int SPINS_PER_CHECK = 32;
+
+  /*
+   * Waiting queue, parking and conditions come from AbstractQueuedSynchronizer, the lock only
+   * tries to acquire it spinning first. Spin is bounded by twice the estimated hold time, as
+   * thread arriving at a random moment waits on average half of it, and is skipped when the
+   * estimate exceeds MAX_SPIN_NANOS, about the cost of park and unpark round trip. On single
+   * processor owner can not release the lock while we spin, so there is no spinning at all.
+   *
+   * Hold time is sampled on every 16th acquisition only, so that reading the clock does not
+   * double the cost of few instructions long critical section. Estimate is moving average
+   * updated by the owner on release, so it needs no atomic update. Spinner reads the lock
+   * state before trying to change it, so that spinning threads do not keep stealing cache
+   * line of the state from each other and from the owner.
+   */
+  private final Sync sync;
+
+  /**
+   * Instantiates a new unfair lock.
+   */
+  public AdaptiveSpinLock() {
+    this(false);
+  }
+
+  /**
+   * Instantiates a new lock.
+   *
+   * @param fair true to give the lock in order of arrival.
+   */
+  public AdaptiveSpinLock(boolean fair) {
+    this.sync = new Sync(fair);
+  }
+
+  @Override
+  public void lock() {
+    if (!sync.tryAcquire(1) && !spin()) {
+      sync.acquire(1);
+    }
+  }
+
+  @Override
+  public void lockInterruptibly() throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (!sync.tryAcquire(1) && !spin()) {
+      sync.acquireInterruptibly(1);
+    }
+  }
+
+  /**
+   * Acquire the lock if it is free. Fair lock is not acquired if other threads are queued.
+   *
+   * @return true if lock is acquired.
+   */
+  @Override
+  public boolean tryLock() {
+    return sync.tryAcquire(1);
+  }
+
+  @Override
+  public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    return sync.tryAcquire(1) || spin() || sync.tryAcquireNanos(1, unit.toNanos(time));
+  }
+
+  @Override
+  public void unlock() {
+    sync.release(1);
+  }
+
+  @Override
+  public Condition newCondition() {
+    return sync.newCondition();
+  }
+
+  /**
+   * Check if current thread holds the lock.
+   *
+   * @return true if current thread holds the lock.
+   */
+  public boolean isHeldByCurrentThread() {
+    return sync.isHeldExclusively();
+  }
+
+  /**
+   * Check if lock is fair.
+   *
+   * @return true if lock is given in order of arrival.
+   */
+  public boolean isFair() {
+    return sync.fair;
+  }
+
+  /**
+   * Estimated time the lock is held for.
+   *
+   * @return the moving average of sampled hold times in nanoseconds.
+   */
+  long holdEstimateNanos() {
+    return sync.holdEstimate;
+  }
+
+  private boolean spin() {
+    long estimate = sync.holdEstimate;
+    if (!MULTIPROCESSOR || estimate > MAX_SPIN_NANOS) {
+      return false;
+    }
+    long deadline = System.nanoTime() + Math.max(MIN_SPIN_NANOS, 2 * estimate);
+    do {
+      for (int i = 0; i < SPINS_PER_CHECK; i++) {
+        if (sync.isFree() && sync.tryAcquire(1)) {
+          return true;
+        }
+      }
+      if (sync.fair && sync.hasQueuedThreads()) {
+        // Queued threads go first, spinning any longer can not win the lock.
+        return false;
+      }
+    } while (System.nanoTime() < deadline);
+    return false;
+  }
+
+  private static final class Sync extends AbstractQueuedSynchronizer {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean fair;
+    private volatile long holdEstimate;
+    private int acquisitions;
+    private long acquiredAt;
+
+    private Sync(boolean fair) {
+      this.fair = fair;
+    }
+
+    private boolean isFree() {
+      return getState() == 0;
+    }
+
+    @Override
+    protected boolean tryAcquire(int acquires) {
+      Thread current = Thread.currentThread();
+      int state = getState();
+      if (state == 0) {
+        if ((fair && hasQueuedPredecessors()) || !compareAndSetState(0, acquires)) {
+          return false;
+        }
+        setExclusiveOwnerThread(current);
+        acquiredAt = (++acquisitions & SAMPLE_MASK) == 0 ? System.nanoTime() : 0;
+        return true;
+      }
+      if (current == getExclusiveOwnerThread()) {
+        int next = state + acquires;
+        if (next < 0) {
+          throw new Error("Maximum lock count exceeded");
+        }
+        setState(next);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    protected boolean tryRelease(int releases) {
+      if (Thread.currentThread() != getExclusiveOwnerThread()) {
+        throw new IllegalMonitorStateException();
+      }
+      int state = getState() - releases;
+      if (state == 0) {
+        if (acquiredAt != 0) {
+          long hold = System.nanoTime() - acquiredAt;
+          long estimate = holdEstimate;
+          holdEstimate = estimate + ((hold - estimate) >> 3);
+        }
+        setExclusiveOwnerThread(null);
+      }
+      setState(state);
+      return state == 0;
+    }
+
+    @Override
+    protected boolean isHeldExclusively() {
+      return getExclusiveOwnerThread() == Thread.currentThread();
+    }
+
+    private Condition newCondition() {
+      return new ConditionObject();
+    }
+  }
+}
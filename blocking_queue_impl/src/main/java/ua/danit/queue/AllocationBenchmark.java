@@ -0,0 +1,103 @@
+package ua.danit.queue;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Benchmark of memory allocated by steady state put and take.
+ *
+ * <p>Usage: {@code AllocationBenchmark [--queues NAME,...] [--capacity N] [--operations N]}.
+ *
+ * <p>Every queue is run twice, bounded with given capacity and unlimited, half filled and then
+ * put and take are called in turns from single thread. Bytes allocated by the thread during the
+ * measured loop are taken from HotSpot thread management bean. Bounded queues keep elements in
+ * preallocated storage and are expected to report zero bytes per operation. Waiting on full or
+ * empty queue is not measured as it allocates queue nodes of the lock itself.
+ *
+ * @author Andrey Minov
+ */
+public class AllocationBenchmark {
+  private static final Integer ELEMENT = 1;
+
+  private final List<String> queues;
+  private final int capacity;
+  private final int operations;
+  private final PrintStream out;
+
+  /**
+   * Instantiates a new allocation benchmark.
+   *
+   * @param options the options parsed from command line.
+   * @param out     the stream to print reports to.
+   */
+  AllocationBenchmark(Map<String, String> options, PrintStream out) {
+    this.queues = Arrays.asList(options.getOrDefault("queues",
+        String.join(",", BlockingQueues.names())).split(","));
+    this.capacity = Integer.parseInt(options.getOrDefault("capacity", "1024"));
+    this.operations = Integer.parseInt(options.getOrDefault("operations", "10000000"));
+    this.out = out;
+  }
+
+  /**
+   * The entry point of benchmark.
+   *
+   * @param args the input arguments
+   * @throws InterruptedException if interrupted while running.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    new AllocationBenchmark(LoadGenerator.parse(args), System.out).run();
+  }
+
+  /**
+   * Run benchmark for all queues and print the table of results.
+   *
+   * @throws InterruptedException if interrupted while running.
+   */
+  void run() throws InterruptedException {
+    out.printf("%-22s %12s %14s%n", "queue", "capacity", "bytes/op");
+    for (String queue : queues) {
+      for (int queueCapacity : new int[] {capacity, Integer.MAX_VALUE}) {
+        double bytes = bytesPerOperation(BlockingQueues.create(queue, queueCapacity));
+        out.printf("%-22s %12s %14.3f%n", queue,
+            queueCapacity == Integer.MAX_VALUE ? "unlimited" : String.valueOf(queueCapacity),
+            bytes);
+      }
+    }
+  }
+
+  /**
+   * Measure bytes allocated per single put or take on the queue.
+   *
+   * @param queue the queue to measure.
+   * @return average number of allocated bytes.
+   * @throws InterruptedException if interrupted while running.
+   */
+  double bytesPerOperation(BlockingQueue<Integer> queue) throws InterruptedException {
+    for (int i = 0; i < capacity / 2; i++) {
+      queue.put(ELEMENT);
+    }
+    // First pass lets JIT compile the loop, second one is measured.
+    loop(queue);
+    long before = allocatedBytes();
+    loop(queue);
+    long allocated = allocatedBytes() - before;
+    return allocated / (2.0 * operations);
+  }
+
+  private void loop(BlockingQueue<Integer> queue) throws InterruptedException {
+    for (int i = 0; i < operations; i++) {
+      queue.put(ELEMENT);
+      queue.take();
+    }
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
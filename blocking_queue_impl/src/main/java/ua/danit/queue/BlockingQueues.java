@@ -0,0 +1,57 @@
+package ua.danit.queue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Factory of project blocking queue implementations by name, used by tools which let user pick
+ * the implementation.
+ *
+ * @author Andrey Minov
+ */
+public final class BlockingQueues {
+  private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(
+      "two-way", "single", "synchronized", "two-condition", "specific-notification",
+      "two-way-parking"));
+
+  private BlockingQueues() {
+  }
+
+  /**
+   * Names of available implementations.
+   *
+   * @return implementation names.
+   */
+  public static List<String> names() {
+    return NAMES;
+  }
+
+  /**
+   * Instantiates a new queue.
+   *
+   * @param name     the implementation name, one of {@link #names()}.
+   * @param capacity the queue capacity.
+   * @param <T>      the element type.
+   * @return new empty queue.
+   */
+  public static <T> BlockingQueue<T> create(String name, int capacity) {
+    switch (name) {
+      case "two-way":
+        return new TwoWayLockingQueue<>(capacity);
+      case "single":
+        return new SingleBlockingQueue<>(capacity);
+      case "synchronized":
+        return new SynchronizedBlockingQueue<>(capacity);
+      case "two-condition":
+        return new TwoConditionBlockingQueue<>(capacity);
+      case "specific-notification":
+        return new SpecificNotificationQueue<>(capacity);
+      case "two-way-parking":
+        return new TwoWayParkingQueue<>(capacity);
+      default:
+        throw new IllegalArgumentException("Unknown queue " + name + ", expected one of " + NAMES);
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package ua.danit.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk publishing of delimited messages from files and streams.
+ *
+ * <p>Files are memory-mapped, streams are read through a large direct buffer. Messages are
+ * split on a single byte delimiter, decoded as UTF-8 and published in batches.
+ *
+ * @author Andrey Minov
+ */
+public class BulkIngestion {
+  private static final int DEFAULT_BATCH_SIZE = 1024;
+  private static final int STREAM_BUFFER_SIZE = 1 << 20;
+  private static final long MAP_WINDOW_SIZE = 1L << 30;
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+  private static final byte CARRIAGE_RETURN = '\r';
+
+  /*
+   * Delimiter is searched eight bytes at a time: word XOR delimiter pattern has zero byte
+   * exactly where delimiter is, and (x - 0x01..01) & ~x & 0x80..80 marks the first zero byte
+   * with its high bit. The trick may also mark a byte more significant than a real zero, so
+   * the word is read little-endian (first byte in memory is the least significant one) and the
+   * first match is found with numberOfTrailingZeros. Only the tail shorter than a word is
+   * scanned byte by byte.
+   *
+   * Message bytes are copied once into a reusable array and decoded from there. Mapping is done
+   * in windows, every next window starts right after the last delimiter of the previous one, so
+   * message is never split between windows.
+   */
+  private final PubSubApplication<String> application;
+  private final byte delimiter;
+  private final long pattern;
+  private final int batchSize;
+  private final List<String> batch;
+  private byte[] scratch;
+  private long messages;
+
+  /**
+   * Instantiates a new bulk ingestion of new line delimited messages.
+   *
+   * @param application the application to publish messages into.
+   */
+  public BulkIngestion(PubSubApplication<String> application) {
+    this(application, (byte) '\n', DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Instantiates a new bulk ingestion.
+   *
+   * @param application the application to publish messages into.
+   * @param delimiter   the byte separating messages.
+   * @param batchSize   the number of messages published at once.
+   */
+  public BulkIngestion(PubSubApplication<String> application, byte delimiter, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive!");
+    }
+    this.application = application;
+    this.delimiter = delimiter;
+    this.pattern = (delimiter & 0xFFL) * ONES;
+    this.batchSize = batchSize;
+    this.batch = new ArrayList<>(batchSize);
+    this.scratch = new byte[256];
+  }
+
+  /**
+   * Publish all messages of the file.
+   *
+   * @param path the path to file.
+   * @return ingestion statistics.
+   * @throws IOException if file cannot be read.
+   */
+  public Report ingest(Path path) throws IOException {
+    final long start = System.nanoTime();
+    messages = 0;
+    long size;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      size = channel.size();
+      long position = 0;
+      while (position < size) {
+        long length = Math.min(MAP_WINDOW_SIZE, size - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        boolean last = position + length == size;
+        int consumed = split(buffer, 0, (int) length, last);
+        if (consumed == 0 && !last) {
+          throw new IOException("Message is longer than " + MAP_WINDOW_SIZE + " bytes");
+        }
+        position += consumed;
+      }
+    }
+    flush();
+    return new Report(messages, size, System.nanoTime() - start);
+  }
+
+  /**
+   * Publish all messages of the channel, until end of stream.
+   *
+   * @param channel the channel to read, for example standard input.
+   * @return ingestion statistics.
+   * @throws IOException if channel cannot be read.
+   */
+  public Report ingest(ReadableByteChannel channel) throws IOException {
+    final long start = System.nanoTime();
+    messages = 0;
+    long bytes = 0;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+    int read;
+    while ((read = channel.read(buffer)) >= 0) {
+      bytes += read;
+      if (buffer.hasRemaining()) {
+        continue;
+      }
+      buffer.flip();
+      int consumed = split(buffer, 0, buffer.limit(), false);
+      if (consumed == 0) {
+        throw new IOException("Message is longer than " + STREAM_BUFFER_SIZE + " bytes");
+      }
+      buffer.position(consumed);
+      buffer.compact();
+    }
+    buffer.flip();
+    split(buffer, 0, buffer.limit(), true);
+    flush();
+    return new Report(messages, bytes, System.nanoTime() - start);
+  }
+
+  /**
+   * Split buffer region into messages.
+   *
+   * @return the number of bytes consumed, up to and including the last delimiter, or whole
+   *     region if it is the last one.
+   */
+  private int split(ByteBuffer buffer, int from, int to, boolean last) {
+    int start = from;
+    int index = from;
+    while (index < to) {
+      int found = indexOf(buffer, index, to);
+      if (found < 0) {
+        break;
+      }
+      publish(buffer, start, found);
+      start = found + 1;
+      index = start;
+    }
+    if (last && start < to) {
+      publish(buffer, start, to);
+      return to - from;
+    }
+    return start - from;
+  }
+
+  private int indexOf(ByteBuffer buffer, int from, int to) {
+    int index = from;
+    for (; index + Long.BYTES <= to; index += Long.BYTES) {
+      long word = Long.reverseBytes(buffer.getLong(index)) ^ pattern;
+      long found = (word - ONES) & ~word & HIGHS;
+      if (found != 0) {
+        return index + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+    }
+    for (; index < to; index++) {
+      if (buffer.get(index) == delimiter) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private void publish(ByteBuffer buffer, int from, int to) {
+    int end = to;
+    if (delimiter == '\n' && end > from && buffer.get(end - 1) == CARRIAGE_RETURN) {
+      end--;
+    }
+    int length = end - from;
+    if (length == 0) {
+      return;
+    }
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    ByteBuffer view = buffer.duplicate();
+    view.position(from);
+    view.get(scratch, 0, length);
+    batch.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+    messages++;
+    if (batch.size() == batchSize) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    if (!batch.isEmpty()) {
+      application.publishAll(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Result of single ingestion.
+   */
+  public static final class Report {
+    private final long messages;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    Report(long messages, long bytes, long elapsedNanos) {
+      this.messages = messages;
+      this.bytes = bytes;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getMessages() {
+      return messages;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Messages published per second.
+     *
+     * @return message throughput.
+     */
+    public double getMessagesPerSecond() {
+      return elapsedNanos == 0 ? 0 : messages * (double) TimeUnit.SECONDS.toNanos(1)
+          / elapsedNanos;
+    }
+
+    /**
+     * Megabytes read per second.
+     *
+     * @return byte throughput.
+     */
+    public double getMegabytesPerSecond() {
+      return elapsedNanos == 0 ? 0 : bytes / (1024.0 * 1024.0)
+          * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Published %d messages (%d bytes) in %d ms: %.0f msg/s, %.1f MB/s",
+          messages, bytes, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+          getMessagesPerSecond(), getMegabytesPerSecond());
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package ua.danit.queue;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Not thread safe queue on top of circular array. Used as storage of blocking queues: with
+ * finite capacity the array is preallocated and offer and poll do not allocate, unlimited
+ * queue starts small and doubles the array when it is full.
+ *
+ * <p>Every element is stamped with sequence number of its insertion, so that weakly consistent
+ * iterators can find where to continue with {@link #offsetAfter(long)}, even if elements were
+ * removed meanwhile.
+ *
+ * <p>Versioned storage also lets readers observe it without the lock of its queue: every
+ * modification is made holding write lock of a {@link StampedLock}, which is never contended
+ * as writers already hold the queue lock, and readers validate optimistic stamp after reading.
+ * Reads are racy until validated, so methods used by optimistic readers never fail on
+ * inconsistent state.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+class CircularArrayQueue<T> extends AbstractQueue<T> {
+  private static final int INITIAL_LENGTH = 16;
+
+  private final int capacity;
+  private final StampedLock versions;
+  private Object[] items;
+  private long[] seqs;
+  private int takeIndex;
+  private int putIndex;
+  private int count;
+  private long nextSeq;
+  private int modifications;
+
+  CircularArrayQueue(int capacity) {
+    this(capacity, false);
+  }
+
+  CircularArrayQueue(int capacity, boolean versioned) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive!");
+    }
+    this.capacity = capacity;
+    this.versions = versioned ? new StampedLock() : null;
+    int length = capacity == Integer.MAX_VALUE ? INITIAL_LENGTH : capacity;
+    this.items = new Object[length];
+    this.seqs = new long[length];
+  }
+
+  @Override
+  public boolean offer(T t) {
+    if (t == null) {
+      throw new NullPointerException("Queue does not permit null elements!");
+    }
+    if (count == capacity) {
+      return false;
+    }
+    long stamp = beginWrite();
+    try {
+      if (count == items.length) {
+        grow();
+      }
+      items[putIndex] = t;
+      seqs[putIndex] = nextSeq++;
+      putIndex = inc(putIndex);
+      count++;
+      modifications++;
+      return true;
+    } finally {
+      endWrite(stamp);
+    }
+  }
+
+  @Override
+  public T poll() {
+    if (count == 0) {
+      return null;
+    }
+    long stamp = beginWrite();
+    try {
+      int index = takeIndex;
+      takeIndex = inc(index);
+      count--;
+      modifications++;
+      T result = itemAt(index);
+      items[index] = null;
+      return result;
+    } finally {
+      endWrite(stamp);
+    }
+  }
+
+  @Override
+  public T peek() {
+    return count == 0 ? null : itemAt(takeIndex);
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public void clear() {
+    long stamp = beginWrite();
+    try {
+      for (int i = 0, index = takeIndex; i < count; i++, index = inc(index)) {
+        items[index] = null;
+      }
+      takeIndex = 0;
+      putIndex = 0;
+      count = 0;
+      modifications++;
+    } finally {
+      endWrite(stamp);
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Itr();
+  }
+
+  /**
+   * Stamp for optimistic read of versioned storage.
+   *
+   * @return the stamp, zero if storage is being modified.
+   */
+  long tryOptimisticRead() {
+    return versions.tryOptimisticRead();
+  }
+
+  /**
+   * Check that storage was not modified since stamp was taken. Values read in between are
+   * consistent only if this returns true.
+   *
+   * @param stamp the stamp from {@link #tryOptimisticRead()}.
+   * @return true if storage was not modified.
+   */
+  boolean validate(long stamp) {
+    return versions.validate(stamp);
+  }
+
+  /**
+   * Head element, safe to call without the queue lock.
+   *
+   * @return the head element or null.
+   */
+  T optimisticPeek() {
+    Object[] array = items;
+    int index = takeIndex;
+    return count == 0 || index >= array.length ? null : castItem(array[index]);
+  }
+
+  /**
+   * Check if element is in the storage, safe to call without the queue lock.
+   *
+   * @param o the element to find.
+   * @return true if element is found.
+   */
+  boolean optimisticContains(Object o) {
+    if (o == null) {
+      return false;
+    }
+    Object[] array = items;
+    int index = takeIndex;
+    int number = Math.min(count, array.length);
+    for (int i = 0; i < number && index < array.length; i++) {
+      if (o.equals(array[index])) {
+        return true;
+      }
+      index = ++index == array.length ? 0 : index;
+    }
+    return false;
+  }
+
+  /**
+   * Offset from the head of the first element inserted after element with given sequence.
+   *
+   * @param seq the sequence number of element, -1 to start from the head.
+   * @return the offset, equal to size if there is no such element.
+   */
+  int offsetAfter(long seq) {
+    // Sequences grow from head to tail, removal from the middle keeps the order.
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (seqs[indexOf(middle)] <= seq) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  T elementAt(int offset) {
+    return itemAt(indexOf(offset));
+  }
+
+  long seqAt(int offset) {
+    return seqs[indexOf(offset)];
+  }
+
+  void removeElementAt(int offset) {
+    removeAt(indexOf(offset));
+  }
+
+  private long beginWrite() {
+    return versions == null ? 0 : versions.writeLock();
+  }
+
+  private void endWrite(long stamp) {
+    if (versions != null) {
+      versions.unlockWrite(stamp);
+    }
+  }
+
+  private void grow() {
+    int length = items.length >= capacity / 2 ? capacity : items.length * 2;
+    Object[] grownItems = new Object[length];
+    long[] grownSeqs = new long[length];
+    int head = items.length - takeIndex;
+    System.arraycopy(items, takeIndex, grownItems, 0, head);
+    System.arraycopy(items, 0, grownItems, head, takeIndex);
+    System.arraycopy(seqs, takeIndex, grownSeqs, 0, head);
+    System.arraycopy(seqs, 0, grownSeqs, head, takeIndex);
+    Arrays.fill(items, null);
+    items = grownItems;
+    seqs = grownSeqs;
+    takeIndex = 0;
+    putIndex = count;
+  }
+
+  private void removeAt(int index) {
+    long stamp = beginWrite();
+    try {
+      // Shift elements following removed one backwards, as ArrayBlockingQueue does.
+      for (int next = inc(index); next != putIndex; index = next, next = inc(next)) {
+        items[index] = items[next];
+        seqs[index] = seqs[next];
+      }
+      items[index] = null;
+      putIndex = index;
+      count--;
+      modifications++;
+    } finally {
+      endWrite(stamp);
+    }
+  }
+
+  private int indexOf(int offset) {
+    // Sum may overflow for huge capacities, subtraction brings it back into range.
+    int index = takeIndex + offset;
+    return index < 0 || index >= items.length ? index - items.length : index;
+  }
+
+  private int inc(int index) {
+    return ++index == items.length ? 0 : index;
+  }
+
+  private T itemAt(int index) {
+    return castItem(items[index]);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T castItem(Object item) {
+    return (T) item;
+  }
+
+  private final class Itr implements Iterator<T> {
+    private int position;
+    private int last = -1;
+    private int expected = modifications;
+
+    @Override
+    public boolean hasNext() {
+      return position < count;
+    }
+
+    @Override
+    public T next() {
+      if (expected != modifications) {
+        throw new ConcurrentModificationException();
+      }
+      if (position >= count) {
+        throw new NoSuchElementException();
+      }
+      last = position++;
+      return itemAt(indexOf(last));
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException("Next was not called!");
+      }
+      if (expected != modifications) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(indexOf(last));
+      position = last;
+      last = -1;
+      expected = modifications;
+    }
+  }
+}
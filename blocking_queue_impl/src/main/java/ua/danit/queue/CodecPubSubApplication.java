@@ -0,0 +1,625 @@
+package ua.danit.queue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publisher-subscriber application based on queue, passing messages of any type. Messages stay
+ * objects inside the application, codec converts them from and to bytes only at its boundary,
+ * for publishers and consumers dealing with binary data.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public class CodecPubSubApplication<T> implements PubSubApplication<T> {
+  private static final long TIMEOUT_SEC = 2;
+  private static final int INITIAL_BUFFER_SIZE = 256;
+  private static final long MIN_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final MessageCodec<T> codec;
+  private final ThreadLocal<ByteBuffer> buffers;
+  private final AtomicLong redeliveries;
+  private final DeadLetterQueue<T> deadLetters;
+  private final AtomicInteger publishers;
+  private ExecutorService executor;
+  private ElasticConsumerPool<T> pool;
+  private BlockingQueue<T> queue;
+  private QueueDrainer<T> drainer;
+  private AtomicBoolean open;
+  private volatile Deduplication<T, ?> deduplication;
+  private volatile ContentRouter<T> router;
+  private volatile InFlightTable<T> inFlight;
+  private volatile RetryScheduler<T> retries;
+  private long visibilityNanos;
+  private volatile ScheduledExecutorService scheduler;
+
+  /**
+   * Instantiates a new application on top of given queue.
+   *
+   * @param codec        the binary representation of messages.
+   * @param threadNumber the thread number for application to start.
+   * @param queue        the queue holding published messages.
+   */
+  public CodecPubSubApplication(MessageCodec<T> codec, int threadNumber, BlockingQueue<T> queue) {
+    this.codec = codec;
+    this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+    this.redeliveries = new AtomicLong();
+    this.deadLetters = new DeadLetterQueue<>(this::replay);
+    this.executor = Executors.newFixedThreadPool(threadNumber);
+    this.queue = queue;
+    this.drainer = new QueueDrainer<>(queue);
+    this.open = new AtomicBoolean(true);
+    this.publishers = new AtomicInteger();
+  }
+
+  /**
+   * Instantiates a new application in elastic mode, where number of consumer threads follows
+   * queue depth and message age within policy bounds.
+   *
+   * @param codec  the binary representation of messages.
+   * @param policy the scaling policy of consumer threads.
+   */
+  public CodecPubSubApplication(MessageCodec<T> codec, ScalingPolicy policy) {
+    this.codec = codec;
+    this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+    this.redeliveries = new AtomicLong();
+    this.deadLetters = new DeadLetterQueue<>(this::replay);
+    this.queue = new TwoWayLockingQueue<>();
+    this.pool = new ElasticConsumerPool<>(queue, policy);
+    this.open = new AtomicBoolean(true);
+    this.publishers = new AtomicInteger();
+  }
+
+  /**
+   * Consumer pool of application running in elastic mode.
+   *
+   * @return the elastic pool or null if application runs fixed number of threads.
+   */
+  public ElasticConsumerPool<T> getConsumerPool() {
+    return pool;
+  }
+
+  /**
+   * Codec of application messages.
+   *
+   * @return the codec.
+   */
+  public MessageCodec<T> getCodec() {
+    return codec;
+  }
+
+  /**
+   * Drop messages whose identifier was already published recently, so that publishers retrying
+   * on timeout do not deliver the same message twice. Duplicates are dropped before they are
+   * enqueued and counted as hits of the cache. Identifier of message the queue has no space for
+   * is forgotten again, so that the retry of that message is accepted.
+   *
+   * @param idExtractor the identifier of message.
+   * @param cache       the cache of recently published identifiers.
+   * @param <K>         the identifier type
+   */
+  public <K> void deduplicate(Function<? super T, ? extends K> idExtractor,
+                              DeduplicationCache<K> cache) {
+    this.deduplication = new Deduplication<>(idExtractor, cache);
+  }
+
+  /**
+   * Keep every delivered message until consumer acknowledges it and deliver it again after
+   * visibility timeout otherwise, so that message is not lost when consumer fails. Consumer
+   * registered with {@link #registerConsumer(Consumer)} acknowledges message when it returns
+   * normally, consumer registered with {@link #registerAckConsumer(Consumer)} acknowledges it
+   * explicitly. Must be called before consumers are registered.
+   *
+   * @param visibilityTimeout the time given to consumer to process message.
+   */
+  public synchronized void requireAcknowledgements(Duration visibilityTimeout) {
+    checkOpen();
+    if (inFlight != null) {
+      throw new IllegalStateException("Acknowledgements are already required!");
+    }
+    if (visibilityTimeout.isNegative() || visibilityTimeout.isZero()) {
+      throw new IllegalArgumentException("Visibility timeout must be positive!");
+    }
+    this.visibilityNanos = visibilityTimeout.toNanos();
+    this.inFlight = new InFlightTable<>();
+    long period = Math.max(MIN_SWEEP_NANOS, visibilityNanos / 4);
+    scheduler().scheduleWithFixedDelay(this::redeliverExpired, period, period,
+        TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Deliver messages failed by consumers again following retry policy, instead of only logging
+   * the failure. Message failed on the last attempt goes to the dead-letter queue. Messages
+   * waiting for retry are reported as undelivered on close.
+   *
+   * <p>In acknowledgement mode failed message is acknowledged and retried after the backoff,
+   * visibility timeout covers only consumers which neither return nor throw.
+   *
+   * @param policy the retry policy.
+   */
+  public synchronized void retryFailed(RetryPolicy policy) {
+    checkOpen();
+    if (retries != null) {
+      throw new IllegalStateException("Retries are already enabled!");
+    }
+    this.retries = new RetryScheduler<>(policy, scheduler(), queue::offer, deadLetters);
+  }
+
+  /**
+   * Messages failed on every allowed attempt when retries are enabled.
+   *
+   * @return the dead-letter queue.
+   */
+  public DeadLetterQueue<T> getDeadLetterQueue() {
+    return deadLetters;
+  }
+
+  /**
+   * Number of messages delivered again after failure.
+   *
+   * @return the retry count.
+   */
+  public long getRetryCount() {
+    RetryScheduler<T> scheduler = retries;
+    return scheduler == null ? 0 : scheduler.getRetryCount();
+  }
+
+  /**
+   * Number of failed messages waiting for the next attempt.
+   *
+   * @return the pending retry count.
+   */
+  public int getPendingRetryCount() {
+    RetryScheduler<T> scheduler = retries;
+    return scheduler == null ? 0 : scheduler.getPendingCount();
+  }
+
+  /**
+   * Number of messages delivered and not acknowledged yet.
+   *
+   * @return the in-flight message count, zero if acknowledgements are not required.
+   */
+  public int getInFlightCount() {
+    InFlightTable<T> table = inFlight;
+    return table == null ? 0 : table.size();
+  }
+
+  /**
+   * Number of messages delivered again after visibility timeout.
+   *
+   * @return the redelivery count.
+   */
+  public long getRedeliveryCount() {
+    return redeliveries.get();
+  }
+
+  @Override
+  public void registerConsumer(Consumer<T> messageConsumer) {
+    Consumer<T> consumer = message -> process(message, messageConsumer);
+    InFlightTable<T> table = inFlight;
+    if (table == null) {
+      start(consumer);
+      return;
+    }
+    start(message -> {
+      Delivery<T> delivery = track(table, message);
+      consumer.accept(message);
+      delivery.ack();
+    });
+  }
+
+  /**
+   * Register consumer of messages matching the filter. Matching messages are routed on publish
+   * into queue of the consumer, so consumer is not woken up by messages it is not interested
+   * in. Every filtered consumer receives every message matching its filter, message matching no
+   * filter goes to consumers registered without filter.
+   *
+   * <p>Filtered consumer owns one of consumer threads. Failures of filtered consumers are only
+   * logged, acknowledgements and retries apply to consumers registered without filter.
+   *
+   * @param filter          the filter selecting messages of consumer.
+   * @param messageConsumer consumer for matching messages.
+   * @throws IllegalStateException if application runs in elastic mode.
+   */
+  public void registerConsumer(Predicate<? super T> filter, Consumer<T> messageConsumer) {
+    route(new ContentRouter.Route<>(null, filter, new TwoWayLockingQueue<>()), messageConsumer);
+  }
+
+  /**
+   * Register consumer of messages whose text starts with the prefix. Same as
+   * {@link #registerConsumer(Predicate, Consumer)}, but prefixes of all consumers are matched
+   * at once, so publish cost does not grow with number of prefix consumers.
+   *
+   * @param prefix          the prefix of text of messages, as given by their toString.
+   * @param messageConsumer consumer for matching messages.
+   * @throws IllegalStateException if application runs in elastic mode.
+   */
+  public void registerPrefixConsumer(String prefix, Consumer<T> messageConsumer) {
+    route(new ContentRouter.Route<>(prefix, null, new TwoWayLockingQueue<>()), messageConsumer);
+  }
+
+  /**
+   * Register consumer acknowledging messages explicitly. Message is delivered again if it is
+   * not acknowledged within visibility timeout, also when consumer throws and retries are not
+   * enabled.
+   *
+   * @param deliveryConsumer consumer for delivered messages.
+   * @throws IllegalStateException if acknowledgements are not required.
+   */
+  public void registerAckConsumer(Consumer<Delivery<T>> deliveryConsumer) {
+    InFlightTable<T> table = inFlight;
+    if (table == null) {
+      throw new IllegalStateException("Acknowledgements are not required!");
+    }
+    start(message -> {
+      Delivery<T> delivery = track(table, message);
+      RetryScheduler<T> scheduler = retries;
+      try {
+        deliveryConsumer.accept(delivery);
+      } catch (RuntimeException e) {
+        // Retry takes the message over unless consumer has acknowledged it before failing.
+        if (scheduler == null || !delivery.ack()) {
+          throw e;
+        }
+        scheduler.failed(message, e);
+        return;
+      }
+      if (scheduler != null) {
+        scheduler.succeeded(message);
+      }
+    });
+  }
+
+  /**
+   * Register consumer of messages in binary form. Consumer gets buffer holding encoded message
+   * between its position and limit. Buffer is reused for next messages delivered by the same
+   * thread, so consumer must not keep it after it returns.
+   *
+   * @param messageConsumer consumer for encoded messages.
+   */
+  public void registerEncodedConsumer(Consumer<ByteBuffer> messageConsumer) {
+    registerConsumer(message -> messageConsumer.accept(encode(message)));
+  }
+
+  @Override
+  public void publish(T message) {
+    enter();
+    try {
+      Deduplication<T, ?> filter = deduplication;
+      if (filter != null && !filter.admit(message)) {
+        Logger.getGlobal().log(Level.FINE, () -> String.format("Drop duplicate %s", message));
+        return;
+      }
+      Logger.getGlobal().log(Level.INFO, () -> String.format("Publish message %s", message));
+      ContentRouter<T> routes = router;
+      if ((routes == null || !routes.route(message)) && !queue.offer(message)) {
+        if (filter != null) {
+          filter.revoke(message);
+        }
+        Logger.getGlobal().log(Level.WARNING, () -> String
+            .format("Queue is full, drop message %s", message));
+      }
+    } finally {
+      leave();
+    }
+  }
+
+  /**
+   * Decode message from remaining bytes of the buffer and publish it. Buffer may be reused by
+   * the caller as soon as method returns.
+   *
+   * @param payload the buffer holding exactly one encoded message.
+   */
+  public void publishEncoded(ByteBuffer payload) {
+    publish(codec.decode(payload));
+  }
+
+  @Override
+  public void publishAll(Collection<T> messages) {
+    enter();
+    try {
+      Logger.getGlobal().log(Level.INFO, () -> String
+          .format("Publish %d messages", messages.size()));
+      Deduplication<T, ?> filter = deduplication;
+      ContentRouter<T> routes = router;
+      if (filter == null && routes == null) {
+        enqueueAll(messages, null);
+        return;
+      }
+      List<T> unrouted = new ArrayList<>(messages.size());
+      for (T message : messages) {
+        if ((filter == null || filter.admit(message))
+            && (routes == null || !routes.route(message))) {
+          unrouted.add(message);
+        }
+      }
+      enqueueAll(unrouted, filter);
+    } finally {
+      leave();
+    }
+  }
+
+  /**
+   * Stop accepting messages without waiting for queued messages to be consumed. Consumers
+   * waiting for messages are woken up and process messages already queued in background, busy
+   * consumers finish their message, none is interrupted. Messages waiting for retry are dropped
+   * and reported in the log.
+   */
+  @Override
+  public void close() {
+    if (!stop()) {
+      return;
+    }
+    if (pool != null) {
+      pool.close();
+    } else {
+      drainer.start();
+      executor.shutdown();
+    }
+    RetryScheduler<T> retryScheduler = retries;
+    if (retryScheduler != null) {
+      List<T> pending = new ArrayList<>();
+      retryScheduler.drainPending(pending);
+      if (!pending.isEmpty()) {
+        Logger.getGlobal().log(Level.WARNING, () -> String
+            .format("Closed with %d messages waiting for retry", pending.size()));
+      }
+    }
+  }
+
+  /**
+   * Stop accepting messages and let consumers process messages already queued. Consumers
+   * waiting for messages are woken up immediately. When the timeout elapses, consumers are
+   * interrupted, so blocking consumer may be stopped in the middle of its message, and no
+   * further message is delivered.
+   *
+   * @param drainTimeout the max time to wait for queued messages to be consumed.
+   * @return messages left undelivered, empty if everything was consumed in time.
+   */
+  public List<T> close(Duration drainTimeout) {
+    if (!stop()) {
+      return Collections.emptyList();
+    }
+    InFlightTable<T> table = inFlight;
+    List<T> remaining;
+    if (pool != null) {
+      remaining = new ArrayList<>(pool.close(drainTimeout));
+    } else {
+      drainer.start();
+      executor.shutdown();
+      remaining = new ArrayList<>(drainer.await(executor, drainTimeout));
+    }
+    if (table != null) {
+      // Messages consumers failed to acknowledge are undelivered as well.
+      table.clear(remaining);
+    }
+    RetryScheduler<T> retryScheduler = retries;
+    if (retryScheduler != null) {
+      retryScheduler.drainPending(remaining);
+    }
+    if (!remaining.isEmpty()) {
+      Logger.getGlobal().log(Level.WARNING, () -> String
+          .format("Closed with %d undelivered messages", remaining.size()));
+    }
+    return remaining;
+  }
+
+  private boolean stop() {
+    if (!open.compareAndSet(true, false)) {
+      return false;
+    }
+    awaitPublishers();
+    ScheduledExecutorService timer = scheduler;
+    if (timer != null) {
+      timer.shutdownNow();
+    }
+    return true;
+  }
+
+  private void start(Consumer<T> messageConsumer) {
+    checkOpen();
+    if (pool != null) {
+      pool.addConsumer(messageConsumer);
+      return;
+    }
+    executor.execute(() -> {
+      consume(drainer, messageConsumer);
+      Logger.getGlobal().log(Level.INFO, () -> String
+          .format("Exiting consumer from %s", Thread.currentThread()));
+    });
+  }
+
+  private synchronized void route(ContentRouter.Route<T> route, Consumer<T> messageConsumer) {
+    checkOpen();
+    if (pool != null) {
+      throw new IllegalStateException("Filtered consumers need fixed consumer threads!");
+    }
+    router = (router == null ? new ContentRouter<T>() : router).with(route);
+    drainer.link(route.getDrainer());
+    executor.execute(() -> consume(route.getDrainer(), messageConsumer));
+  }
+
+  private void process(T message, Consumer<T> messageConsumer) {
+    RetryScheduler<T> scheduler = retries;
+    if (scheduler == null) {
+      messageConsumer.accept(message);
+      return;
+    }
+    try {
+      messageConsumer.accept(message);
+    } catch (RuntimeException e) {
+      scheduler.failed(message, e);
+      return;
+    }
+    scheduler.succeeded(message);
+  }
+
+  private synchronized ScheduledExecutorService scheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+    return scheduler;
+  }
+
+  private Delivery<T> track(InFlightTable<T> table, T message) {
+    return new Delivery<>(message, table.add(message, System.nanoTime() + visibilityNanos),
+        table);
+  }
+
+  private void redeliverExpired() {
+    List<T> expired = new ArrayList<>();
+    long now = System.nanoTime();
+    inFlight.expire(now, expired);
+    for (T message : expired) {
+      if (queue.offer(message)) {
+        redeliveries.incrementAndGet();
+      } else {
+        // Queue is full, message stays in flight until the next sweep.
+        inFlight.add(message, now);
+      }
+    }
+  }
+
+  private void enqueueAll(Collection<T> messages, Deduplication<T, ?> filter) {
+    if (messages.isEmpty() || queue.addAll(messages)) {
+      return;
+    }
+    // Bounded queue rejects the whole batch when it does not fit, enqueue whatever fits.
+    int rejected = 0;
+    for (T message : messages) {
+      if (!queue.offer(message)) {
+        rejected++;
+        if (filter != null) {
+          filter.revoke(message);
+        }
+      }
+    }
+    if (rejected > 0) {
+      int dropped = rejected;
+      Logger.getGlobal().log(Level.WARNING, () -> String
+          .format("Queue is full, drop %d messages", dropped));
+    }
+  }
+
+  private boolean replay(T message) {
+    enter();
+    try {
+      return queue.offer(message);
+    } finally {
+      leave();
+    }
+  }
+
+  private ByteBuffer encode(T message) {
+    ByteBuffer buffer = buffers.get();
+    while (true) {
+      buffer.clear();
+      try {
+        codec.encode(message, buffer);
+        buffer.flip();
+        return buffer;
+      } catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffers.set(buffer);
+      }
+    }
+  }
+
+  private void consume(QueueDrainer<T> source, Consumer<T> messageConsumer) {
+    while (!source.isDraining()) {
+      try {
+        T message = source.poll(TIMEOUT_SEC, TimeUnit.SECONDS);
+        if (message == null) {
+          continue;
+        }
+        deliver(message, messageConsumer);
+      } catch (InterruptedException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> "Interruption error.");
+      }
+    }
+    List<T> batch = new ArrayList<>();
+    boolean more = true;
+    while (more) {
+      more = source.drainBatch(batch, message -> deliver(message, messageConsumer));
+    }
+  }
+
+  private void deliver(T message, Consumer<T> messageConsumer) {
+    Logger.getGlobal().log(Level.INFO, () -> String
+        .format("Received message %s by %s", message, Thread.currentThread()));
+    try {
+      messageConsumer.accept(message);
+    } catch (RuntimeException e) {
+      Logger.getGlobal().log(Level.SEVERE, e, () -> "Consumer failed to process message.");
+    }
+  }
+
+  private void checkOpen() {
+    if (!open.get()) {
+      throw new IllegalStateException("Application is closed!");
+    }
+  }
+
+  private void enter() {
+    publishers.incrementAndGet();
+    if (!open.get()) {
+      leave();
+      throw new IllegalStateException("Application is closed!");
+    }
+  }
+
+  private void leave() {
+    publishers.decrementAndGet();
+  }
+
+  private void awaitPublishers() {
+    // Publisher which saw application open is only enqueueing, let its message reach the queue
+    // before consumers start draining it.
+    while (publishers.get() > 0) {
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Admission of messages through deduplication cache, keyed by message identifier.
+   *
+   * @param <T> the message type
+   * @param <K> the identifier type
+   */
+  private static final class Deduplication<T, K> {
+    private final Function<? super T, ? extends K> idExtractor;
+    private final DeduplicationCache<K> cache;
+
+    private Deduplication(Function<? super T, ? extends K> idExtractor,
+                          DeduplicationCache<K> cache) {
+      this.idExtractor = idExtractor;
+      this.cache = cache;
+    }
+
+    private boolean admit(T message) {
+      return cache.add(idExtractor.apply(message));
+    }
+
+    private void revoke(T message) {
+      cache.remove(idExtractor.apply(message));
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
+
+/**
+ * Immutable table routing published messages into queues of filtered consumers. Router with
+ * one more route is made by {@link #with(Route)}.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+final class ContentRouter<T> {
+
+  /*
+   * Prefix routes are indexed by character trie over message text, so message is checked
+   * against all prefixes walking at most as many nodes as the longest matching prefix has
+   * characters, however many prefix routes exist. Predicates cannot be indexed and are tested
+   * one by one. Routes are registered rarely, so router is rebuilt on every registration and
+   * published as a whole, and publishers route without any lock.
+   */
+  private final List<Route<T>> routes;
+  private final List<Route<T>> predicates;
+  private final Node<T> root;
+
+  ContentRouter() {
+    this(Collections.emptyList());
+  }
+
+  private ContentRouter(List<Route<T>> routes) {
+    this.routes = routes;
+    this.predicates = new ArrayList<>();
+    this.root = new Node<>();
+    for (Route<T> route : routes) {
+      if (route.prefix == null) {
+        predicates.add(route);
+        continue;
+      }
+      Node<T> node = root;
+      for (int i = 0; i < route.prefix.length(); i++) {
+        node = node.childOrAdd(route.prefix.charAt(i));
+      }
+      node.routes.add(route);
+    }
+  }
+
+  /**
+   * Router with all routes of this one and the given route.
+   *
+   * @param route the route to add.
+   * @return the new router.
+   */
+  ContentRouter<T> with(Route<T> route) {
+    List<Route<T>> extended = new ArrayList<>(routes);
+    extended.add(route);
+    return new ContentRouter<>(extended);
+  }
+
+  /**
+   * Offer message to queue of every matching route.
+   *
+   * @param message the published message.
+   * @return true if message matched at least one route.
+   */
+  boolean route(T message) {
+    boolean matched = false;
+    if (predicates.size() < routes.size()) {
+      String text = message.toString();
+      Node<T> node = root;
+      int index = 0;
+      while (node != null) {
+        for (Route<T> route : node.routes) {
+          route.queue.offer(message);
+          matched = true;
+        }
+        node = index < text.length() ? node.child(text.charAt(index++)) : null;
+      }
+    }
+    for (Route<T> route : predicates) {
+      if (route.filter.test(message)) {
+        route.queue.offer(message);
+        matched = true;
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Queue of filtered consumer with the filter selecting its messages.
+   *
+   * @param <T> the message type
+   */
+  static final class Route<T> {
+    private final String prefix;
+    private final Predicate<? super T> filter;
+    private final BlockingQueue<T> queue;
+    private final QueueDrainer<T> drainer;
+
+    Route(String prefix, Predicate<? super T> filter, BlockingQueue<T> queue) {
+      this.prefix = prefix;
+      this.filter = filter;
+      this.queue = queue;
+      this.drainer = new QueueDrainer<>(queue);
+    }
+
+    QueueDrainer<T> getDrainer() {
+      return drainer;
+    }
+  }
+
+  private static final class Node<T> {
+    private final List<Route<T>> routes;
+    private char[] labels;
+    private Node<T>[] children;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    private Node() {
+      this.routes = new ArrayList<>();
+      this.labels = new char[0];
+      this.children = (Node<T>[]) new Node<?>[0];
+    }
+
+    private Node<T> child(char label) {
+      for (int i = 0; i < size; i++) {
+        if (labels[i] == label) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node<T> childOrAdd(char label) {
+      Node<T> child = child(label);
+      if (child == null) {
+        child = new Node<>();
+        labels = Arrays.copyOf(labels, size + 1);
+        children = Arrays.copyOf(children, size + 1);
+        labels[size] = label;
+        children[size] = child;
+        size++;
+      }
+      return child;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
+
+/**
+ * Messages which consumers failed to process on every allowed attempt, kept for inspection
+ * and replay.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public class DeadLetterQueue<T> {
+  private final BlockingQueue<DeadLetter<T>> letters;
+  private final Predicate<T> replayTarget;
+
+  /**
+   * Instantiates a new dead-letter queue.
+   *
+   * @param replayTarget the destination of replayed messages, returns false if it has no space
+   *                     for message.
+   */
+  DeadLetterQueue(Predicate<T> replayTarget) {
+    this.letters = new TwoWayLockingQueue<>();
+    this.replayTarget = replayTarget;
+  }
+
+  void add(DeadLetter<T> letter) {
+    letters.offer(letter);
+  }
+
+  /**
+   * Number of dead letters.
+   *
+   * @return the size.
+   */
+  public int size() {
+    return letters.size();
+  }
+
+  /**
+   * Snapshot of dead letters, oldest first.
+   *
+   * @return the dead letters.
+   */
+  public List<DeadLetter<T>> inspect() {
+    return new ArrayList<>(letters);
+  }
+
+  /**
+   * Publish all dead letters again with fresh attempt count.
+   *
+   * @return the number of replayed messages.
+   */
+  public int replay() {
+    return replay(letter -> true);
+  }
+
+  /**
+   * Publish dead letters matching the filter again with fresh attempt count. Other letters stay
+   * in the queue, as well as those the destination has no space for.
+   *
+   * @param filter the letters to replay.
+   * @return the number of replayed messages.
+   * @throws IllegalStateException if the destination is closed, no letter is lost then.
+   */
+  public int replay(Predicate<? super DeadLetter<T>> filter) {
+    List<DeadLetter<T>> drained = new ArrayList<>();
+    letters.drainTo(drained);
+    int replayed = 0;
+    for (int i = 0; i < drained.size(); i++) {
+      DeadLetter<T> letter = drained.get(i);
+      try {
+        if (filter.test(letter) && replayTarget.test(letter.getMessage())) {
+          replayed++;
+          continue;
+        }
+      } catch (RuntimeException e) {
+        letters.addAll(drained.subList(i, drained.size()));
+        throw e;
+      }
+      letters.offer(letter);
+    }
+    return replayed;
+  }
+
+  /**
+   * Remove all dead letters.
+   *
+   * @return the removed letters.
+   */
+  public List<DeadLetter<T>> clear() {
+    List<DeadLetter<T>> result = new ArrayList<>();
+    letters.drainTo(result);
+    return result;
+  }
+
+  /**
+   * Message failed on the last attempt.
+   *
+   * @param <T> the message type
+   */
+  public static final class DeadLetter<T> {
+    private final T message;
+    private final int attempts;
+    private final RuntimeException cause;
+    private final long failedAtMillis;
+
+    DeadLetter(T message, int attempts, RuntimeException cause, long failedAtMillis) {
+      this.message = message;
+      this.attempts = attempts;
+      this.cause = cause;
+      this.failedAtMillis = failedAtMillis;
+    }
+
+    public T getMessage() {
+      return message;
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public RuntimeException getCause() {
+      return cause;
+    }
+
+    public long getFailedAtMillis() {
+      return failedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Dead letter %s after %d attempts: %s", message, attempts, cause);
+    }
+  }
+}
@@ -0,0 +1,331 @@
+package ua.danit.queue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded concurrent set of recently seen message identifiers, used to drop duplicate messages
+ * before they are enqueued.
+ *
+ * <p>Identifier is remembered for given time to live. Cache holds at most given number of
+ * identifiers and at most given estimated number of bytes, evicting identifiers not seen
+ * recently first when either bound is reached.
+ *
+ * @param <K> the identifier type
+ * @author Andrey Minov
+ */
+public class DeduplicationCache<K> {
+  private static final int STRIPES = 16;
+  private static final int MIN_STRIPE_ENTRIES = 64;
+  private static final long ENTRY_OVERHEAD = 72;
+
+  /*
+   * Cache is split into stripes by identifier hash, each guarded by own lock, so publishers
+   * contend only when their identifiers fall into the same stripe. Small cache keeps at least
+   * MIN_STRIPE_ENTRIES in a stripe, as eviction order is kept per stripe. Stripe keeps entries in
+   * fixed ring of slots evicted with CLOCK algorithm: every hit sets reference bit of the
+   * entry, hand moving over the ring clears the bit of referenced entries and evicts the first
+   * entry which is not referenced or has expired. Identifier seen again survives the next pass
+   * of the hand, so frequently repeated identifiers stay while one-off ones go first, at the
+   * cost of a single bit per entry instead of list reordering on every hit.
+   *
+   * Expired entries are not swept eagerly: identifier seen after its time to live counts as
+   * new, and expired entries are the first victims of the hand.
+   *
+   * Memory is estimated as fixed overhead of map node and entry plus the weight of identifier,
+   * bounds are divided evenly between stripes.
+   */
+  private final Stripe[] stripes;
+  private final long ttlNanos;
+  private final ToLongFunction<? super K> weigher;
+  private final LongSupplier clock;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+  private final LongAdder expirations;
+
+  /**
+   * Instantiates a new deduplication cache estimating size of identifiers by their type.
+   *
+   * @param maxEntries the max number of remembered identifiers.
+   * @param ttl        the time to remember identifier for.
+   * @param maxBytes   the max estimated memory taken by the cache.
+   */
+  public DeduplicationCache(int maxEntries, Duration ttl, long maxBytes) {
+    this(maxEntries, ttl, maxBytes, DeduplicationCache::defaultWeight);
+  }
+
+  /**
+   * Instantiates a new deduplication cache.
+   *
+   * @param maxEntries the max number of remembered identifiers.
+   * @param ttl        the time to remember identifier for.
+   * @param maxBytes   the max estimated memory taken by the cache.
+   * @param weigher    the estimated size of identifier in bytes.
+   */
+  public DeduplicationCache(int maxEntries, Duration ttl, long maxBytes,
+                            ToLongFunction<? super K> weigher) {
+    this(maxEntries, ttl, maxBytes, weigher, System::nanoTime);
+  }
+
+  DeduplicationCache(int maxEntries, Duration ttl, long maxBytes,
+                     ToLongFunction<? super K> weigher, LongSupplier clock) {
+    if (maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Cache bounds must be positive!");
+    }
+    if (ttl.isNegative() || ttl.isZero()) {
+      throw new IllegalArgumentException("Time to live must be positive!");
+    }
+    this.ttlNanos = ttl.toNanos();
+    this.weigher = weigher;
+    this.clock = clock;
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+    this.expirations = new LongAdder();
+    int stripeCount = Math.min(STRIPES,
+        Integer.highestOneBit(Math.max(1, maxEntries / MIN_STRIPE_ENTRIES)));
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Stripe[] created = (Stripe[]) new DeduplicationCache.Stripe[stripeCount];
+    this.stripes = created;
+    int stripeEntries = (maxEntries + stripeCount - 1) / stripeCount;
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe(stripeEntries, maxBytes / stripeCount);
+    }
+  }
+
+  /**
+   * Remember identifier unless it was seen within time to live.
+   *
+   * @param key the message identifier.
+   * @return true if identifier is new, false if message is a duplicate.
+   */
+  public boolean add(K key) {
+    Stripe stripe = stripeOf(key);
+    stripe.lock.lock();
+    try {
+      return stripe.add(key, clock.getAsLong());
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Forget identifier, so that message carrying it is new again. Used to undo {@link #add(Object)}
+   * when admitted message could not be enqueued.
+   *
+   * @param key the message identifier.
+   * @return true if identifier was remembered.
+   */
+  public boolean remove(K key) {
+    Stripe stripe = stripeOf(key);
+    stripe.lock.lock();
+    try {
+      return stripe.remove(key);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Number of duplicates found.
+   *
+   * @return the hit count.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Number of new identifiers, including ones seen before time to live expired.
+   *
+   * @return the miss count.
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Number of identifiers evicted to keep cache within entry and memory bounds, expired
+   * identifiers are not counted.
+   *
+   * @return the eviction count.
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Number of identifiers removed or renewed after their time to live.
+   *
+   * @return the expiration count.
+   */
+  public long getExpirationCount() {
+    return expirations.sum();
+  }
+
+  /**
+   * Number of remembered identifiers, including expired ones not evicted yet.
+   *
+   * @return the number of entries.
+   */
+  public int size() {
+    int result = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        result += stripe.map.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Estimated memory taken by remembered identifiers.
+   *
+   * @return the number of bytes.
+   */
+  public long getEstimatedBytes() {
+    long result = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        result += stripe.bytes;
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return result;
+  }
+
+  private Stripe stripeOf(K key) {
+    if (key == null) {
+      throw new NullPointerException("Identifier cannot be null!");
+    }
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return stripes[hash & (stripes.length - 1)];
+  }
+
+  private static long defaultWeight(Object key) {
+    if (key instanceof CharSequence) {
+      return 40 + 2L * ((CharSequence) key).length();
+    }
+    if (key instanceof byte[]) {
+      return 16 + ((byte[]) key).length;
+    }
+    return 16;
+  }
+
+  private static final class Entry {
+    private final Object key;
+    private final long weight;
+    private final int slot;
+    private long expiresAt;
+    private boolean referenced;
+
+    private Entry(Object key, long weight, int slot, long expiresAt) {
+      this.key = key;
+      this.weight = weight;
+      this.slot = slot;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final class Stripe {
+    private final Lock lock;
+    private final Map<Object, Entry> map;
+    private final Entry[] ring;
+    private final int[] free;
+    private final long maxBytes;
+    private int freeCount;
+    private int hand;
+    private long bytes;
+
+    private Stripe(int capacity, long maxBytes) {
+      this.lock = new AdaptiveSpinLock();
+      this.map = new HashMap<>();
+      this.ring = new Entry[capacity];
+      this.free = new int[capacity];
+      this.maxBytes = maxBytes;
+      for (int i = 0; i < capacity; i++) {
+        free[i] = capacity - 1 - i;
+      }
+      this.freeCount = capacity;
+    }
+
+    private boolean add(K key, long now) {
+      Entry entry = map.get(key);
+      if (entry != null) {
+        if (entry.expiresAt - now > 0) {
+          entry.referenced = true;
+          hits.increment();
+          return false;
+        }
+        entry.expiresAt = now + ttlNanos;
+        entry.referenced = false;
+        expirations.increment();
+        misses.increment();
+        return true;
+      }
+      misses.increment();
+      long weight = ENTRY_OVERHEAD + weigher.applyAsLong(key);
+      if (weight > maxBytes) {
+        // Identifier alone exceeds the memory bound, it can not be remembered.
+        return true;
+      }
+      while (bytes + weight > maxBytes) {
+        free[freeCount++] = evict(now);
+      }
+      int slot = freeCount > 0 ? free[--freeCount] : evict(now);
+      entry = new Entry(key, weight, slot, now + ttlNanos);
+      ring[slot] = entry;
+      map.put(key, entry);
+      bytes += weight;
+      return true;
+    }
+
+    private boolean remove(K key) {
+      Entry entry = map.remove(key);
+      if (entry == null) {
+        return false;
+      }
+      ring[entry.slot] = null;
+      free[freeCount++] = entry.slot;
+      bytes -= entry.weight;
+      return true;
+    }
+
+    private int evict(long now) {
+      while (true) {
+        int slot = hand;
+        hand = hand + 1 == ring.length ? 0 : hand + 1;
+        Entry entry = ring[slot];
+        if (entry == null) {
+          continue;
+        }
+        boolean expired = entry.expiresAt - now <= 0;
+        if (entry.referenced && !expired) {
+          entry.referenced = false;
+          continue;
+        }
+        if (expired) {
+          expirations.increment();
+        } else {
+          evictions.increment();
+        }
+        ring[entry.slot] = null;
+        map.remove(entry.key);
+        bytes -= entry.weight;
+        return slot;
+      }
+    }
+  }
+}
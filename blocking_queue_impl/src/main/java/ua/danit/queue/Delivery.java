@@ -0,0 +1,44 @@
+package ua.danit.queue;
+
+/**
+ * Message handed to consumer in acknowledgement mode. Message is delivered again after
+ * visibility timeout, unless consumer acknowledges it before.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public final class Delivery<T> {
+  private final T message;
+  private final long id;
+  private final InFlightTable<T> inFlight;
+
+  Delivery(T message, long id, InFlightTable<T> inFlight) {
+    this.message = message;
+    this.id = id;
+    this.inFlight = inFlight;
+  }
+
+  /**
+   * Delivered message.
+   *
+   * @return the message.
+   */
+  public T getMessage() {
+    return message;
+  }
+
+  /**
+   * Confirm that message is processed, so that it is not delivered again.
+   *
+   * @return false if visibility timeout has elapsed and message is delivered again or the
+   *     delivery is acknowledged already.
+   */
+  public boolean ack() {
+    return inFlight.remove(id) != null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Delivery %d of %s", id, message);
+  }
+}
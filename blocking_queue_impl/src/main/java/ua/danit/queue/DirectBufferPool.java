@@ -0,0 +1,66 @@
+package ua.danit.queue;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized direct byte buffers.
+ *
+ * <p>Direct buffers are expensive to allocate and are released only by garbage collector, so
+ * buffers of closed connections are kept for reuse up to pool capacity.
+ *
+ * @author Andrey Minov
+ */
+final class DirectBufferPool {
+  private final int bufferSize;
+  private final int capacity;
+  private final Queue<ByteBuffer> buffers;
+  private final AtomicInteger pooled;
+
+  /**
+   * Instantiates a new buffer pool.
+   *
+   * @param bufferSize the size of every buffer in bytes.
+   * @param capacity   the max number of idle buffers kept.
+   */
+  DirectBufferPool(int bufferSize, int capacity) {
+    this.bufferSize = bufferSize;
+    this.capacity = capacity;
+    this.buffers = new ConcurrentLinkedQueue<>();
+    this.pooled = new AtomicInteger();
+  }
+
+  int bufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Take cleared buffer from the pool, allocating new one when pool is empty.
+   *
+   * @return buffer ready for writing.
+   */
+  ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(bufferSize);
+    }
+    pooled.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Return buffer into the pool. Buffer must not be used by caller afterwards.
+   *
+   * @param buffer buffer taken from this pool.
+   */
+  void release(ByteBuffer buffer) {
+    if (pooled.incrementAndGet() <= capacity) {
+      buffers.offer(buffer);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package ua.danit.queue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of consumer threads which grows and shrinks following the queue load.
+ *
+ * <p>Consumers are served N-M: every worker polls the shared queue and hands the message to
+ * the next registered consumer in round-robin order.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public class ElasticConsumerPool<T> implements AutoCloseable {
+  private static final long POLL_TIMEOUT_MILLIS = 2000;
+  private static final double RATE_SMOOTHING = 0.3;
+
+  /*
+   * Growth is decided by single controller task sampling the queue every check interval.
+   * Message age cannot be read from the queue without timestamping every element, so it is
+   * estimated using Little's law: time in queue = depth / dequeue rate, where rate is smoothed
+   * over recent intervals. If nothing was dequeued while messages are waiting, age is the time
+   * since the last dequeue.
+   *
+   * Shrinking is decided by the workers themselves: worker which found the queue empty for
+   * shrink idle period retires, but only if the queue is well below grow threshold and the pool
+   * has not grown recently. The gap between both conditions is the hysteresis which prevents
+   * flapping under spiky load.
+   */
+  private final BlockingQueue<T> queue;
+  private final ScalingPolicy policy;
+  private final Consumer<ScalingEvent> listener;
+  private final List<Consumer<T>> consumers;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService controller;
+  private final QueueDrainer<T> drainer;
+
+  private final AtomicInteger workerCount;
+  private final AtomicInteger nextConsumer;
+  private final AtomicLong processed;
+  private final AtomicLong growEvents;
+  private final AtomicLong shrinkEvents;
+  private volatile int peakWorkers;
+  private volatile long lastGrowNanos;
+  private volatile long lastDequeueNanos;
+  private volatile long estimatedAgeMillis;
+  private volatile boolean running;
+
+  private long lastProcessed;
+  private double dequeueRate;
+
+  /**
+   * Instantiates a new elastic pool logging scaling events.
+   *
+   * @param queue  the queue to consume messages from.
+   * @param policy the scaling thresholds.
+   */
+  public ElasticConsumerPool(BlockingQueue<T> queue, ScalingPolicy policy) {
+    this(queue, policy, event -> Logger.getGlobal().log(Level.INFO, event::toString));
+  }
+
+  /**
+   * Instantiates a new elastic pool.
+   *
+   * @param queue    the queue to consume messages from.
+   * @param policy   the scaling thresholds.
+   * @param listener the listener notified about every worker count change.
+   */
+  public ElasticConsumerPool(BlockingQueue<T> queue, ScalingPolicy policy,
+                             Consumer<ScalingEvent> listener) {
+    this.queue = queue;
+    this.policy = policy;
+    this.listener = listener;
+    this.consumers = new CopyOnWriteArrayList<>();
+    this.workers = Executors.newCachedThreadPool();
+    this.controller = Executors.newSingleThreadScheduledExecutor();
+    this.drainer = new QueueDrainer<>(queue);
+    this.workerCount = new AtomicInteger();
+    this.nextConsumer = new AtomicInteger();
+    this.processed = new AtomicLong();
+    this.growEvents = new AtomicLong();
+    this.shrinkEvents = new AtomicLong();
+    this.lastDequeueNanos = System.nanoTime();
+    this.running = true;
+  }
+
+  /**
+   * Register message consumer. Minimal number of workers starts with the first consumer.
+   *
+   * @param consumer consumer for message coming from the queue.
+   */
+  public synchronized void addConsumer(Consumer<T> consumer) {
+    if (!running) {
+      throw new IllegalStateException("Pool is closed!");
+    }
+    consumers.add(consumer);
+    if (consumers.size() == 1) {
+      startWorkers(policy.getMinWorkers());
+      peakWorkers = policy.getMinWorkers();
+      controller.scheduleWithFixedDelay(this::check, policy.getCheckIntervalMillis(),
+          policy.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Current number of workers.
+   *
+   * @return worker count.
+   */
+  public int getWorkerCount() {
+    return workerCount.get();
+  }
+
+  /**
+   * Max number of workers running at once.
+   *
+   * @return peak worker count.
+   */
+  public int getPeakWorkers() {
+    return peakWorkers;
+  }
+
+  /**
+   * Number of messages handed to consumers.
+   *
+   * @return processed message count.
+   */
+  public long getProcessedCount() {
+    return processed.get();
+  }
+
+  /**
+   * Number of times the pool has grown.
+   *
+   * @return grow event count.
+   */
+  public long getGrowEvents() {
+    return growEvents.get();
+  }
+
+  /**
+   * Number of workers retired.
+   *
+   * @return shrink event count.
+   */
+  public long getShrinkEvents() {
+    return shrinkEvents.get();
+  }
+
+  /**
+   * Message age estimated during last check.
+   *
+   * @return estimated sojourn time in milliseconds.
+   */
+  public long getEstimatedAgeMillis() {
+    return estimatedAgeMillis;
+  }
+
+  /**
+   * Stop scaling without waiting for queued messages to be consumed. Idle workers are woken up
+   * and process messages already queued in background, busy workers finish their message, none
+   * is interrupted.
+   */
+  @Override
+  public void close() {
+    stop();
+  }
+
+  /**
+   * Stop scaling and let workers process messages already queued. Idle workers are woken up
+   * immediately. When the timeout elapses, workers are interrupted, so blocking consumer may be
+   * stopped in the middle of its message, and no further message is delivered.
+   *
+   * @param drainTimeout the max time to wait for queued messages to be consumed.
+   * @return messages left undelivered.
+   */
+  public List<T> close(Duration drainTimeout) {
+    if (!stop()) {
+      return Collections.emptyList();
+    }
+    return drainer.await(workers, drainTimeout);
+  }
+
+  private boolean stop() {
+    synchronized (this) {
+      if (!running) {
+        return false;
+      }
+      running = false;
+    }
+    controller.shutdownNow();
+    drainer.start();
+    workers.shutdown();
+    return true;
+  }
+
+  private void check() {
+    if (!running) {
+      return;
+    }
+    long now = System.nanoTime();
+    long total = processed.get();
+    double intervalRate = (total - lastProcessed) * 1000.0 / policy.getCheckIntervalMillis();
+    lastProcessed = total;
+    dequeueRate = RATE_SMOOTHING * intervalRate + (1 - RATE_SMOOTHING) * dequeueRate;
+
+    int depth = queue.size();
+    long age;
+    if (depth == 0) {
+      age = 0;
+    } else if (intervalRate == 0) {
+      age = TimeUnit.NANOSECONDS.toMillis(now - lastDequeueNanos);
+    } else {
+      age = (long) (depth * 1000.0 / dequeueRate);
+    }
+    estimatedAgeMillis = age;
+
+    ScalingEvent.Reason reason = null;
+    if (depth > policy.getGrowDepth()) {
+      reason = ScalingEvent.Reason.QUEUE_DEPTH;
+    } else if (age > policy.getGrowAgeMillis()) {
+      reason = ScalingEvent.Reason.MESSAGE_AGE;
+    }
+    int current = workerCount.get();
+    if (reason == null || current >= policy.getMaxWorkers()) {
+      return;
+    }
+    // Grow by half of current size, so the pool catches up with a burst in a few checks.
+    int step = Math.min(policy.getMaxWorkers() - current, Math.max(1, current / 2));
+    lastGrowNanos = now;
+    startWorkers(step);
+    growEvents.incrementAndGet();
+    peakWorkers = Math.max(peakWorkers, current + step);
+    listener.accept(new ScalingEvent(reason, current, current + step, depth, age));
+  }
+
+  private void startWorkers(int number) {
+    for (int i = 0; i < number; i++) {
+      workerCount.incrementAndGet();
+      workers.execute(this::work);
+    }
+  }
+
+  private void work() {
+    long idleSince = System.nanoTime();
+    long timeout = Math.min(POLL_TIMEOUT_MILLIS, policy.getShrinkIdleMillis());
+    while (!drainer.isDraining()) {
+      try {
+        T message = drainer.poll(timeout, TimeUnit.MILLISECONDS);
+        long now = System.nanoTime();
+        if (message == null) {
+          if (now - idleSince >= TimeUnit.MILLISECONDS.toNanos(policy.getShrinkIdleMillis())
+              && tryRetire(now)) {
+            return;
+          }
+          continue;
+        }
+        idleSince = now;
+        lastDequeueNanos = now;
+        processed.incrementAndGet();
+        dispatch(message);
+      } catch (InterruptedException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> "Interruption error.");
+      }
+    }
+    List<T> batch = new ArrayList<>();
+    boolean more = true;
+    while (more) {
+      more = drainer.drainBatch(batch, message -> {
+        processed.incrementAndGet();
+        dispatch(message);
+      });
+    }
+    workerCount.decrementAndGet();
+    Logger.getGlobal().log(Level.INFO, () -> String
+        .format("Exiting consumer from %s", Thread.currentThread()));
+  }
+
+  private void dispatch(T message) {
+    Consumer<T> consumer = consumers.get(
+        Math.floorMod(nextConsumer.getAndIncrement(), consumers.size()));
+    Logger.getGlobal().log(Level.INFO, () -> String
+        .format("Received message %s by %s", message, Thread.currentThread()));
+    try {
+      consumer.accept(message);
+    } catch (RuntimeException e) {
+      Logger.getGlobal().log(Level.SEVERE, e, () -> "Consumer failed to process message.");
+    }
+  }
+
+  private boolean tryRetire(long now) {
+    long cooldown = TimeUnit.MILLISECONDS.toNanos(policy.getShrinkIdleMillis());
+    if (now - lastGrowNanos < cooldown || queue.size() >= policy.getGrowDepth() / 2) {
+      return false;
+    }
+    int current;
+    do {
+      current = workerCount.get();
+      if (current <= policy.getMinWorkers()) {
+        return false;
+      }
+    } while (!workerCount.compareAndSet(current, current - 1));
+    shrinkEvents.incrementAndGet();
+    listener.accept(new ScalingEvent(ScalingEvent.Reason.IDLE, current, current - 1,
+        queue.size(), estimatedAgeMillis));
+    return true;
+  }
+}
@@ -0,0 +1,129 @@
+package ua.danit.queue;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link WorkStealingExecutor} against {@link Executors#newFixedThreadPool(int)}
+ * running short consumer callbacks.
+ *
+ * <p>Usage: {@code ExecutorBenchmark [--executors NAME,...] [--threads N,...] [--tasks N]
+ * [--fanout N] [--work N]}, where executor names are {@code work-stealing} and {@code fixed}.
+ *
+ * <p>Two loads are measured for every executor and thread count. In {@code external} load a
+ * single thread submits all tasks from outside of the pool, as publisher hands messages to
+ * consumers. In {@code nested} load every external task submits {@code fanout} follow-up
+ * callbacks from inside the pool, where fixed pool goes through its shared queue again and
+ * work stealing pool keeps them in the deque of the worker. Each callback spins for
+ * {@code work} iterations. Reported is throughput of callbacks.
+ *
+ * @author Andrey Minov
+ */
+public class ExecutorBenchmark {
+  private final List<String> executors;
+  private final int[] threads;
+  private final int tasks;
+  private final int fanout;
+  private final int work;
+  private final PrintStream out;
+  private volatile long sink;
+
+  /**
+   * Instantiates a new executor benchmark.
+   *
+   * @param options the options parsed from command line.
+   * @param out     the stream to print reports to.
+   */
+  ExecutorBenchmark(Map<String, String> options, PrintStream out) {
+    this.executors = Arrays.asList(options.getOrDefault("executors", "work-stealing,fixed")
+        .split(","));
+    this.threads = Arrays.stream(options.getOrDefault("threads", "1,2,4,8").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    this.tasks = Integer.parseInt(options.getOrDefault("tasks", "1000000"));
+    this.fanout = Integer.parseInt(options.getOrDefault("fanout", "8"));
+    this.work = Integer.parseInt(options.getOrDefault("work", "100"));
+    this.out = out;
+  }
+
+  /**
+   * The entry point of benchmark.
+   *
+   * @param args the input arguments
+   * @throws InterruptedException if interrupted while running.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    new ExecutorBenchmark(LoadGenerator.parse(args), System.out).run();
+  }
+
+  /**
+   * Run benchmark for all executors and thread counts and print the table of results.
+   *
+   * @throws InterruptedException if interrupted while running.
+   */
+  void run() throws InterruptedException {
+    out.printf("%-14s %-9s %8s %14s%n", "executor", "load", "threads", "tasks/s");
+    for (String executor : executors) {
+      // First runs warm up the code and are not reported.
+      run(executor, threads[0], false);
+      run(executor, threads[0], true);
+      for (int threadCount : threads) {
+        out.printf("%-14s %-9s %8d %14.0f%n", executor, "external", threadCount,
+            run(executor, threadCount, false));
+        out.printf("%-14s %-9s %8d %14.0f%n", executor, "nested", threadCount,
+            run(executor, threadCount, true));
+      }
+    }
+  }
+
+  private double run(String name, int threadCount, boolean nested)
+      throws InterruptedException {
+    ExecutorService executor = create(name, threadCount);
+    int external = nested ? tasks / (fanout + 1) : tasks;
+    int total = nested ? external * (fanout + 1) : external;
+    CountDownLatch done = new CountDownLatch(total);
+    Runnable callback = () -> {
+      consume();
+      done.countDown();
+    };
+    Runnable parent = !nested ? callback : () -> {
+      for (int i = 0; i < fanout; i++) {
+        executor.execute(callback);
+      }
+      callback.run();
+    };
+    long begin = System.nanoTime();
+    for (int i = 0; i < external; i++) {
+      executor.execute(parent);
+    }
+    done.await();
+    long elapsed = System.nanoTime() - begin;
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    return total / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private void consume() {
+    long result = 0;
+    for (int i = 0; i < work; i++) {
+      result = result * 31 + i;
+    }
+    sink = result;
+  }
+
+  private static ExecutorService create(String name, int threadCount) {
+    switch (name) {
+      case "work-stealing":
+        return new WorkStealingExecutor(threadCount);
+      case "fixed":
+        return Executors.newFixedThreadPool(threadCount);
+      default:
+        throw new IllegalArgumentException("Unknown executor " + name);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package ua.danit.queue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Codec of records occupying the same number of bytes each, for example several numeric fields
+ * written one after another. Writer and reader put and get fields with relative operations,
+ * starting at the position of the buffer and advancing it, in the byte order of the buffer
+ * (big-endian unless changed by the owner of the buffer).
+ *
+ * <p>Codec checks that writer produces and reader consumes exactly the record size, so broken
+ * layout fails on the first message rather than corrupting the following ones.
+ *
+ * @param <T> the record type
+ * @author Andrey Minov
+ */
+public class FixedLayoutCodec<T> implements MessageCodec<T> {
+  private final int size;
+  private final BiConsumer<T, ByteBuffer> writer;
+  private final Function<ByteBuffer, T> reader;
+
+  /**
+   * Instantiates a new fixed layout codec.
+   *
+   * @param size   the size of a record in bytes.
+   * @param writer the writer putting record fields with relative puts at buffer position.
+   * @param reader the reader getting record fields with relative gets at buffer position.
+   */
+  public FixedLayoutCodec(int size, BiConsumer<T, ByteBuffer> writer,
+                          Function<ByteBuffer, T> reader) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Record size must be positive!");
+    }
+    this.size = size;
+    this.writer = writer;
+    this.reader = reader;
+  }
+
+  /**
+   * Size of a record.
+   *
+   * @return the number of bytes of every record.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public void encode(T message, ByteBuffer target) {
+    if (target.remaining() < size) {
+      throw new BufferOverflowException();
+    }
+    int start = target.position();
+    writer.accept(message, target);
+    if (target.position() - start != size) {
+      throw new IllegalStateException(String.format("Record writer wrote %d bytes instead of %d!",
+          target.position() - start, size));
+    }
+  }
+
+  @Override
+  public T decode(ByteBuffer source) {
+    if (source.remaining() != size) {
+      throw new IllegalArgumentException(String.format("Record of %d bytes expected, got %d!",
+          size, source.remaining()));
+    }
+    T result = reader.apply(source);
+    if (source.hasRemaining()) {
+      throw new IllegalArgumentException(String.format("Record reader left %d bytes unread!",
+          source.remaining()));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,236 @@
+package ua.danit.queue;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Table of messages delivered to consumers and not acknowledged yet, keyed by delivery
+ * identifier.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+final class InFlightTable<T> {
+  private static final int STRIPES = 16;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final long MIX = 0x9E3779B97F4A7C15L;
+
+  /*
+   * Every stripe is open addressing hash table with linear probing over parallel arrays of
+   * identifiers, deadlines and messages, so tracking a delivery allocates nothing but the
+   * occasional larger arrays when stripe grows. Identifier zero marks empty slot. Removed
+   * entry is filled by shifting following entries of the same probe chain back, so there are
+   * no tombstones and lookups stay short however many deliveries pass through.
+   *
+   * Identifiers are sequential, so consecutive deliveries go to different stripes and
+   * consumers acknowledging them rarely meet on one lock. Sweep only tries the lock of every
+   * stripe and skips stripes which are busy, to be visited by the next sweep, so it never
+   * makes delivery or acknowledgement wait for more than scan of one stripe.
+   */
+  private final Stripe<T>[] stripes;
+  private final AtomicLong sequence;
+
+  @SuppressWarnings("unchecked")
+  InFlightTable() {
+    this.stripes = (Stripe<T>[]) new Stripe<?>[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe<>();
+    }
+    this.sequence = new AtomicLong();
+  }
+
+  /**
+   * Track delivered message until the deadline.
+   *
+   * @param message  the delivered message.
+   * @param deadline the time in {@link System#nanoTime()} units to redeliver message after.
+   * @return the delivery identifier, never zero.
+   */
+  long add(T message, long deadline) {
+    long id = sequence.incrementAndGet();
+    Stripe<T> stripe = stripeOf(id);
+    stripe.lock.lock();
+    try {
+      stripe.put(id, message, deadline);
+    } finally {
+      stripe.lock.unlock();
+    }
+    return id;
+  }
+
+  /**
+   * Stop tracking delivery.
+   *
+   * @param id the delivery identifier.
+   * @return the message or null if delivery is not tracked anymore.
+   */
+  T remove(long id) {
+    Stripe<T> stripe = stripeOf(id);
+    stripe.lock.lock();
+    try {
+      int slot = stripe.find(id);
+      return slot < 0 ? null : stripe.delete(slot);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Remove deliveries with passed deadline from stripes not used by other threads.
+   *
+   * @param now     the current time in {@link System#nanoTime()} units.
+   * @param expired the collection to add messages of expired deliveries to.
+   * @return the number of expired deliveries.
+   */
+  int expire(long now, Collection<? super T> expired) {
+    int result = 0;
+    for (Stripe<T> stripe : stripes) {
+      if (stripe.size == 0 || !stripe.lock.tryLock()) {
+        continue;
+      }
+      try {
+        result += stripe.remove(now, false, expired);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove all deliveries.
+   *
+   * @param removed the collection to add messages to.
+   */
+  void clear(Collection<? super T> removed) {
+    for (Stripe<T> stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        stripe.remove(0, true, removed);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Number of tracked deliveries.
+   *
+   * @return the size.
+   */
+  int size() {
+    int result = 0;
+    for (Stripe<T> stripe : stripes) {
+      result += stripe.size;
+    }
+    return result;
+  }
+
+  private Stripe<T> stripeOf(long id) {
+    return stripes[(int) id & (STRIPES - 1)];
+  }
+
+  private static final class Stripe<T> {
+    private final Lock lock;
+    private long[] ids;
+    private long[] deadlines;
+    private Object[] messages;
+    private volatile int size;
+
+    private Stripe() {
+      this.lock = new AdaptiveSpinLock();
+      allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+      ids = new long[capacity];
+      deadlines = new long[capacity];
+      messages = new Object[capacity];
+    }
+
+    private int home(long id) {
+      // Low bits select the stripe, the rest is spread over the table.
+      return (int) (((id >>> 4) * MIX) >>> 32) & (ids.length - 1);
+    }
+
+    private void put(long id, Object message, long deadline) {
+      if ((size + 1) * 2 > ids.length) {
+        grow();
+      }
+      insert(id, message, deadline);
+      size++;
+    }
+
+    private void insert(long id, Object message, long deadline) {
+      int slot = home(id);
+      while (ids[slot] != 0) {
+        slot = (slot + 1) & (ids.length - 1);
+      }
+      ids[slot] = id;
+      deadlines[slot] = deadline;
+      messages[slot] = message;
+    }
+
+    private int find(long id) {
+      int slot = home(id);
+      while (ids[slot] != 0) {
+        if (ids[slot] == id) {
+          return slot;
+        }
+        slot = (slot + 1) & (ids.length - 1);
+      }
+      return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T delete(int slot) {
+      final T result = (T) messages[slot];
+      int mask = ids.length - 1;
+      int hole = slot;
+      int next = (hole + 1) & mask;
+      while (ids[next] != 0) {
+        int home = home(ids[next]);
+        // Entry may fill the hole only if the hole lies between its home slot and its slot.
+        if (((next - home) & mask) >= ((next - hole) & mask)) {
+          ids[hole] = ids[next];
+          deadlines[hole] = deadlines[next];
+          messages[hole] = messages[next];
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      ids[hole] = 0;
+      messages[hole] = null;
+      size--;
+      return result;
+    }
+
+    private int remove(long now, boolean all, Collection<? super T> removed) {
+      int result = 0;
+      int slot = 0;
+      while (slot < ids.length) {
+        if (ids[slot] != 0 && (all || deadlines[slot] - now <= 0)) {
+          // Entry shifted into the slot by deletion is checked on the next iteration.
+          removed.add(delete(slot));
+          result++;
+        } else {
+          slot++;
+        }
+      }
+      return result;
+    }
+
+    private void grow() {
+      long[] oldIds = ids;
+      long[] oldDeadlines = deadlines;
+      Object[] oldMessages = messages;
+      allocate(oldIds.length * 2);
+      for (int i = 0; i < oldIds.length; i++) {
+        if (oldIds[i] != 0) {
+          insert(oldIds[i], oldMessages[i], oldDeadlines[i]);
+        }
+      }
+    }
+  }
+}
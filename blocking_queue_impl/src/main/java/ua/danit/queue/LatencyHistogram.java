@@ -0,0 +1,124 @@
+package ua.danit.queue;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds with bounded relative error.
+ *
+ * <p>Values below 128 are counted exactly. Larger values share bucket with others having the
+ * same 8 most significant bits, so reported percentile is within 1% of recorded value.
+ *
+ * @author Andrey Minov
+ */
+public class LatencyHistogram {
+  private static final int SUB_BITS = 7;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_COUNT;
+  private static final double[] REPORTED = {50, 90, 99, 99.9, 99.99};
+
+  private final AtomicLongArray counts;
+  private final AtomicLong total;
+  private final AtomicLong max;
+
+  /**
+   * Instantiates a new empty histogram.
+   */
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Record single value. Negative values are recorded as zero.
+   *
+   * @param nanos the latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    total.incrementAndGet();
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Number of recorded values.
+   *
+   * @return value count.
+   */
+  public long getCount() {
+    return total.get();
+  }
+
+  /**
+   * Max recorded value.
+   *
+   * @return max value in nanoseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Value below or equal to which given percent of recorded values fall.
+   *
+   * @param percentile the percentile between 0 and 100.
+   * @return the value in nanoseconds, zero when nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long count = total.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Print percentile table in microseconds.
+   *
+   * @param out the stream to print to.
+   */
+  public void print(PrintStream out) {
+    out.printf("%10s %14s%n", "percentile", "latency (us)");
+    for (double percentile : REPORTED) {
+      out.printf("%10s %14.1f%n", percentile, toMicros(getValueAtPercentile(percentile)));
+    }
+    out.printf("%10s %14.1f%n", "max", toMicros(getMax()));
+    out.printf("%10s %14d%n", "count", getCount());
+  }
+
+  private static double toMicros(long nanos) {
+    return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  private static int index(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - SUB_BITS - 1 - Long.numberOfLeadingZeros(value);
+    return (shift << SUB_BITS) + (int) (value >>> shift);
+  }
+
+  private static long highestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int shift = (index >>> SUB_BITS) - 1;
+    long base = index - ((long) shift << SUB_BITS);
+    return ((base + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,229 @@
+package ua.danit.queue;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Open-loop load generator for {@link QueuePubSubApplication}.
+ *
+ * <p>Usage: {@code LoadGenerator [--rate N] [--duration SEC] [--warmup SEC] [--publishers N]
+ * [--consumers N] [--queue NAME] [--capacity N] [--find-max] [--sla-ms N]}.
+ *
+ * <p>Publishers send at fixed target rate. Every message carries the time it was scheduled to be
+ * sent, and end-to-end latency is measured from that time, not from the moment publisher
+ * managed to send it. When the system stalls, messages which should have been sent meanwhile
+ * are still accounted with the whole stall, so latency is corrected for coordinated omission.
+ * Publishers put messages into bounded queue waiting for space, so messages are never dropped
+ * and time spent waiting is part of their latency as well.
+ *
+ * <p>With {@code --find-max} the rate is raised by half after every run, until consumers fall
+ * behind the target or 99th percentile exceeds SLA. Last rate which passed is reported as max
+ * sustainable throughput.
+ *
+ * @author Andrey Minov
+ */
+public class LoadGenerator {
+  private static final long PARK_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final double RATE_STEP = 1.5;
+  private static final double MIN_ACHIEVED_RATIO = 0.95;
+  private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(10);
+
+  private final long rate;
+  private final long durationNanos;
+  private final long warmupNanos;
+  private final int publishers;
+  private final int consumers;
+  private final String queueName;
+  private final int capacity;
+  private final PrintStream out;
+
+  /**
+   * Instantiates a new load generator.
+   *
+   * @param options the options parsed from command line.
+   * @param out     the stream to print reports to.
+   */
+  LoadGenerator(Map<String, String> options, PrintStream out) {
+    this.rate = Long.parseLong(options.getOrDefault("rate", "100000"));
+    this.durationNanos = TimeUnit.SECONDS.toNanos(
+        Long.parseLong(options.getOrDefault("duration", "10")));
+    this.warmupNanos = TimeUnit.SECONDS.toNanos(
+        Long.parseLong(options.getOrDefault("warmup", "2")));
+    this.publishers = Integer.parseInt(options.getOrDefault("publishers", "1"));
+    this.consumers = Integer.parseInt(options.getOrDefault("consumers", "4"));
+    this.queueName = options.getOrDefault("queue", "two-way");
+    this.capacity = Integer.parseInt(
+        options.getOrDefault("capacity", String.valueOf(Integer.MAX_VALUE)));
+    this.out = out;
+  }
+
+  /**
+   * The entry point of load generator.
+   *
+   * @param args the input arguments
+   * @throws InterruptedException if interrupted while running.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    // Message level logging of the application would dominate every measurement.
+    Logger.getGlobal().setLevel(Level.WARNING);
+    Map<String, String> options = parse(args);
+    LoadGenerator generator = new LoadGenerator(options, System.out);
+    if (options.containsKey("find-max")) {
+      long sla = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
+          options.getOrDefault("sla-ms", "10")));
+      generator.findMax(sla);
+    } else {
+      generator.run(generator.rate);
+    }
+  }
+
+  /**
+   * Run single load test at given rate and print its report.
+   *
+   * @param targetRate the messages per second to publish.
+   * @return the result of the run.
+   * @throws InterruptedException if interrupted while running.
+   */
+  Result run(long targetRate) throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    LongAdder inWindow = new LongAdder();
+    BlockingQueue<String> queue = BlockingQueues.create(queueName, capacity);
+    QueuePubSubApplication application = new QueuePubSubApplication(consumers, queue);
+    long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    long measureFrom = start + warmupNanos;
+    long end = measureFrom + durationNanos;
+    for (int i = 0; i < consumers; i++) {
+      application.registerConsumer(m -> {
+        long received = System.nanoTime();
+        long intended = Long.parseLong(m);
+        if (intended >= measureFrom) {
+          histogram.record(received - intended);
+          // Messages consumed during the drain after the window were not sustained at rate.
+          if (received < end) {
+            inWindow.increment();
+          }
+        }
+      });
+    }
+
+    // Publishers interleave their schedules so that together they produce even stream.
+    long interval = Math.max(1, TimeUnit.SECONDS.toNanos(1) * publishers / targetRate);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < publishers; i++) {
+      long first = start + interval * i / publishers;
+      Thread thread = new Thread(() -> publish(queue, first, interval, end),
+          "load-publisher-" + i);
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    List<String> remaining = application.close(DRAIN_TIMEOUT);
+
+    double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    Result result = new Result(targetRate, inWindow.sum() / seconds, histogram);
+    out.printf("%nqueue=%s publishers=%d consumers=%d target=%d msg/s achieved=%.0f msg/s"
+            + " undelivered=%d%n", queueName, publishers, consumers, targetRate,
+        result.achievedRate, remaining.size());
+    histogram.print(out);
+    return result;
+  }
+
+  /**
+   * Raise rate until latency SLA or target rate is missed.
+   *
+   * @param slaNanos the max allowed 99th percentile latency.
+   * @throws InterruptedException if interrupted while running.
+   */
+  void findMax(long slaNanos) throws InterruptedException {
+    long targetRate = rate;
+    long sustainable = 0;
+    while (true) {
+      Result result = run(targetRate);
+      if (result.achievedRate < targetRate * MIN_ACHIEVED_RATIO
+          || result.histogram.getValueAtPercentile(99) > slaNanos) {
+        break;
+      }
+      sustainable = targetRate;
+      targetRate = (long) (targetRate * RATE_STEP);
+    }
+    out.printf("%nMax sustainable throughput: %d msg/s (p99 <= %d ms)%n", sustainable,
+        TimeUnit.NANOSECONDS.toMillis(slaNanos));
+  }
+
+  private static void publish(BlockingQueue<String> queue, long first, long interval,
+                              long end) {
+    try {
+      for (long intended = first; intended < end; intended += interval) {
+        long wait;
+        while ((wait = intended - System.nanoTime()) > 0) {
+          if (wait > PARK_THRESHOLD_NANOS) {
+            LockSupport.parkNanos(wait - PARK_THRESHOLD_NANOS);
+          }
+        }
+        // Sending late does not move the schedule: the delay is part of measured latency.
+        // Offer of application would drop message on full queue and hide the stall.
+        queue.put(Long.toString(intended));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Parse command line options of form {@code --name value} or {@code --flag}.
+   *
+   * @param args the command line arguments.
+   * @return option values by name, flags have value "true".
+   */
+  static Map<String, String> parse(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+      }
+      String name = args[i].substring(2);
+      if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+        options.put(name, args[++i]);
+      } else {
+        options.put(name, "true");
+      }
+    }
+    return options;
+  }
+
+  static final class Result {
+    private final long targetRate;
+    private final double achievedRate;
+    private final LatencyHistogram histogram;
+
+    private Result(long targetRate, double achievedRate, LatencyHistogram histogram) {
+      this.targetRate = targetRate;
+      this.achievedRate = achievedRate;
+      this.histogram = histogram;
+    }
+
+    long getTargetRate() {
+      return targetRate;
+    }
+
+    double getAchievedRate() {
+      return achievedRate;
+    }
+
+    LatencyHistogram getHistogram() {
+      return histogram;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package ua.danit.queue;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Benchmark of {@link AdaptiveSpinLock} against {@link ReentrantLock} and monitor lock
+ * guarding short critical sections.
+ *
+ * <p>Usage: {@code LockBenchmark [--locks NAME,...] [--threads N,...] [--operations N]
+ * [--work N]}, where lock names are {@code adaptive}, {@code adaptive-fair}, {@code reentrant},
+ * {@code reentrant-fair} and {@code synchronized}.
+ *
+ * <p>Every thread enters the critical section {@code operations} times, critical section
+ * spins for {@code work} iterations, as few instructions of queue put or take. Reported are
+ * throughput and percentiles of time from lock request to entering the critical section.
+ * Run it on machine with at least as many cores as threads, on a single core adaptive lock
+ * does not spin at all.
+ *
+ * @author Andrey Minov
+ */
+public class LockBenchmark {
+  private final List<String> locks;
+  private final int[] threads;
+  private final int operations;
+  private final int work;
+  private final PrintStream out;
+
+  /**
+   * Instantiates a new lock benchmark.
+   *
+   * @param options the options parsed from command line.
+   * @param out     the stream to print reports to.
+   */
+  LockBenchmark(Map<String, String> options, PrintStream out) {
+    this.locks = Arrays.asList(options.getOrDefault("locks",
+        "adaptive,adaptive-fair,reentrant,reentrant-fair,synchronized").split(","));
+    this.threads = Arrays.stream(options.getOrDefault("threads", "1,2,4,8").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    this.operations = Integer.parseInt(options.getOrDefault("operations", "1000000"));
+    this.work = Integer.parseInt(options.getOrDefault("work", "10"));
+    this.out = out;
+  }
+
+  /**
+   * The entry point of benchmark.
+   *
+   * @param args the input arguments
+   * @throws InterruptedException if interrupted while running.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    new LockBenchmark(LoadGenerator.parse(args), System.out).run();
+  }
+
+  /**
+   * Run benchmark for all locks and thread counts and print the table of results.
+   *
+   * @throws InterruptedException if interrupted while running.
+   */
+  void run() throws InterruptedException {
+    out.printf("%-15s %8s %14s %10s %10s %10s %10s%n", "lock", "threads", "ops/s",
+        "p50 us", "p99 us", "p99.9 us", "max us");
+    for (String lock : locks) {
+      // First run warms up the code and is not reported.
+      run(lock, threads[0], new LatencyHistogram());
+      for (int threadCount : threads) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        double throughput = run(lock, threadCount, histogram);
+        out.printf("%-15s %8d %14.0f %10.2f %10.2f %10.2f %10.2f%n", lock, threadCount,
+            throughput, toMicros(histogram.getValueAtPercentile(50)),
+            toMicros(histogram.getValueAtPercentile(99)),
+            toMicros(histogram.getValueAtPercentile(99.9)), toMicros(histogram.getMax()));
+      }
+    }
+  }
+
+  private double run(String name, int threadCount, LatencyHistogram histogram)
+      throws InterruptedException {
+    Section section = create(name);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      workers.add(new Thread(() -> {
+        try {
+          start.await();
+          for (int j = 0; j < operations; j++) {
+            histogram.record(section.enter(work));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, "lock-benchmark-" + i));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    return (long) operations * threadCount / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private static double toMicros(long nanos) {
+    return nanos / 1000.0;
+  }
+
+  private static Section create(String name) {
+    switch (name) {
+      case "adaptive":
+        return new LockSection(new AdaptiveSpinLock());
+      case "adaptive-fair":
+        return new LockSection(new AdaptiveSpinLock(true));
+      case "reentrant":
+        return new LockSection(new ReentrantLock());
+      case "reentrant-fair":
+        return new LockSection(new ReentrantLock(true));
+      case "synchronized":
+        return new MonitorSection();
+      default:
+        throw new IllegalArgumentException("Unknown lock " + name);
+    }
+  }
+
+  /**
+   * Critical section guarded by one of the locks.
+   */
+  private abstract static class Section {
+    private long value;
+
+    /**
+     * Enter critical section and do given amount of work in it.
+     *
+     * @param work the number of iterations to spin in critical section.
+     * @return time waited for the lock in nanoseconds.
+     */
+    abstract long enter(int work);
+
+    void work(int work) {
+      for (int i = 0; i < work; i++) {
+        value = value * 31 + i;
+      }
+    }
+  }
+
+  private static final class LockSection extends Section {
+    private final Lock lock;
+
+    private LockSection(Lock lock) {
+      this.lock = lock;
+    }
+
+    @Override
+    long enter(int work) {
+      long begin = System.nanoTime();
+      lock.lock();
+      try {
+        long waited = System.nanoTime() - begin;
+        work(work);
+        return waited;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static final class MonitorSection extends Section {
+
+    @Override
+    long enter(int work) {
+      long begin = System.nanoTime();
+      synchronized (this) {
+        long waited = System.nanoTime() - begin;
+        work(work);
+        return waited;
+      }
+    }
+  }
+}
@@ -4,7 +4,6 @@ import java.util.AbstractQueue;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implementation of thread safe {@link java.util.Queue},
@@ -21,7 +20,16 @@ public class LockQueue<T> extends AbstractQueue<T> {
   private final LinkedList<T> queue;
 
   public LockQueue() {
-    this.lock = new ReentrantLock();
+    this(false);
+  }
+
+  /**
+   * Instantiates a new lock queue.
+   *
+   * @param fair true to give the lock to threads in order of arrival.
+   */
+  public LockQueue(boolean fair) {
+    this.lock = new AdaptiveSpinLock(fair);
     this.queue = new LinkedList<>();
   }
 
@@ -0,0 +1,139 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queue of messages for single handler, processed by threads of shared executor only while it
+ * has messages.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+final class Mailbox<T> implements Runnable {
+
+  /*
+   * No thread waits on a mailbox. Whoever makes mailbox runnable submits the mailbox itself to
+   * the executor, where it handles up to throughput messages and submits itself again if more
+   * are left, so busy mailbox does not starve the others. Scheduled flag keeps at most one run
+   * of mailbox at a time, which preserves order of its messages and lets handler keep its state
+   * without synchronization. Producer sets the flag after it has enqueued the message and the
+   * run clears it before it checks the queue once more, so message is never left behind
+   * without a run.
+   *
+   * Executor which is shut down does not accept mailbox again, so the run in progress handles
+   * all remaining messages at once.
+   */
+  private final String name;
+  private final BlockingQueue<T> queue;
+  private final Consumer<? super T> handler;
+  private final ExecutorService executor;
+  private final int throughput;
+  private final AtomicBoolean scheduled;
+
+  /**
+   * Instantiates a new mailbox.
+   *
+   * @param name       the name of mailbox for the log.
+   * @param queue      the queue of mailbox messages.
+   * @param handler    the handler of messages.
+   * @param executor   the executor running mailboxes.
+   * @param throughput the max number of messages handled before mailbox yields the thread.
+   */
+  Mailbox(String name, BlockingQueue<T> queue, Consumer<? super T> handler,
+          ExecutorService executor, int throughput) {
+    if (throughput <= 0) {
+      throw new IllegalArgumentException("Throughput must be positive!");
+    }
+    this.name = name;
+    this.queue = queue;
+    this.handler = handler;
+    this.executor = executor;
+    this.throughput = throughput;
+    this.scheduled = new AtomicBoolean();
+  }
+
+  /**
+   * Add message if mailbox has space for it.
+   *
+   * @param message the message.
+   * @return true if message was added.
+   */
+  boolean offer(T message) {
+    if (!queue.offer(message)) {
+      return false;
+    }
+    schedule();
+    return true;
+  }
+
+  /**
+   * Add message, waiting for space if mailbox is full.
+   *
+   * @param message the message.
+   * @param nanos   the max time to wait in nanoseconds.
+   * @return true if message was added.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  boolean offer(T message, long nanos) throws InterruptedException {
+    if (!queue.offer(message, nanos, TimeUnit.NANOSECONDS)) {
+      return false;
+    }
+    schedule();
+    return true;
+  }
+
+  int size() {
+    return queue.size();
+  }
+
+  @Override
+  public void run() {
+    List<T> batch = new ArrayList<>(Math.min(throughput, 1024));
+    do {
+      batch.clear();
+      queue.drainTo(batch, throughput);
+      for (T message : batch) {
+        handle(message);
+      }
+    } while (executor.isShutdown() && !queue.isEmpty());
+    scheduled.set(false);
+    if (!queue.isEmpty() && scheduled.compareAndSet(false, true) && !submit()) {
+      // Executor was shut down after the check above, so this run is the last one.
+      run();
+    }
+  }
+
+  private void schedule() {
+    if (!scheduled.get() && scheduled.compareAndSet(false, true) && !submit()) {
+      // Executor is terminated, messages left in the mailbox are not handled.
+      scheduled.set(false);
+    }
+  }
+
+  private boolean submit() {
+    try {
+      executor.execute(this);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  private void handle(T message) {
+    try {
+      handler.accept(message);
+    } catch (RuntimeException e) {
+      Logger.getGlobal().log(Level.SEVERE, e, () -> String
+          .format("Handler of %s failed to process message.", name));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package ua.danit.queue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publisher-subscriber application where every consumer owns bounded mailbox, instead of all
+ * consumers competing for one queue. Mailboxes holding messages are run by small pool of
+ * threads shared by all consumers.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public class MailboxPubSubApplication<T> implements PubSubApplication<T> {
+  private static final long TIMEOUT_SEC = 2;
+  private static final int DEFAULT_THROUGHPUT = 64;
+  private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /*
+   * Publisher puts message into one mailbox, choosing the less loaded of the next mailbox in
+   * turn and random one. So slow consumer, whose mailbox is deeper, gets fewer messages, and
+   * once its mailbox is full messages go to the others, instead of it holding back the whole
+   * queue. When all mailboxes are full, publisher waits for space in every mailbox in turn for
+   * a short time, so it gets into whichever consumer frees space first.
+   *
+   * Pool thread handles up to throughput messages of one mailbox and moves to the next one,
+   * so consumer runs in batches on one thread with its own data warm in cache, while busy
+   * consumer cannot take the thread away from others. Idle consumers cost no thread at all.
+   */
+  private final ExecutorService executor;
+  private final List<Mailbox<T>> mailboxes;
+  private final int mailboxCapacity;
+  private final int throughput;
+  private final AtomicInteger next;
+  private final AtomicBoolean open;
+
+  /**
+   * Instantiates a new mailbox application.
+   *
+   * @param threadNumber    the number of threads running all consumers.
+   * @param mailboxCapacity the capacity of mailbox of every consumer.
+   */
+  public MailboxPubSubApplication(int threadNumber, int mailboxCapacity) {
+    this(threadNumber, mailboxCapacity, DEFAULT_THROUGHPUT);
+  }
+
+  /**
+   * Instantiates a new mailbox application.
+   *
+   * @param threadNumber    the number of threads running all consumers.
+   * @param mailboxCapacity the capacity of mailbox of every consumer.
+   * @param throughput      the max number of messages consumer handles before it yields thread
+   *                        to other consumers.
+   */
+  public MailboxPubSubApplication(int threadNumber, int mailboxCapacity, int throughput) {
+    if (throughput <= 0) {
+      throw new IllegalArgumentException("Throughput must be positive!");
+    }
+    this.executor = new ThreadPoolExecutor(threadNumber, threadNumber, 0, TimeUnit.MILLISECONDS,
+        new TwoWayLockingQueue<>());
+    this.mailboxes = new CopyOnWriteArrayList<>();
+    this.mailboxCapacity = mailboxCapacity;
+    this.throughput = throughput;
+    this.next = new AtomicInteger();
+    this.open = new AtomicBoolean(true);
+  }
+
+  @Override
+  public void registerConsumer(Consumer<T> messageConsumer) {
+    checkOpen();
+    mailboxes.add(new Mailbox<>("consumer " + mailboxes.size(),
+        new TwoWayLockingQueue<>(mailboxCapacity), messageConsumer, executor, throughput));
+  }
+
+  /**
+   * Publish message into mailbox of one of consumers, waiting for space if all mailboxes are
+   * full.
+   *
+   * @param message the message to publish.
+   * @throws IllegalStateException if no consumer is registered, application is closed or thread
+   *                               is interrupted while waiting for space.
+   */
+  @Override
+  public void publish(T message) {
+    checkOpen();
+    List<Mailbox<T>> targets = mailboxes;
+    int count = targets.size();
+    if (count == 0) {
+      throw new IllegalStateException("No consumers registered!");
+    }
+    Mailbox<T> target = targets.get(Math.floorMod(next.getAndIncrement(), count));
+    if (count > 1) {
+      Mailbox<T> other = targets.get(ThreadLocalRandom.current().nextInt(count));
+      if (other.size() < target.size()) {
+        target = other;
+      }
+    }
+    if (target.offer(message)) {
+      return;
+    }
+    try {
+      for (int i = 0; ; i = (i + 1) % count) {
+        // Consumers stop once closed, so their mailboxes may never free space again.
+        checkOpen();
+        if (targets.get(i).offer(message, FULL_WAIT_NANOS)) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while mailboxes are full!", e);
+    }
+  }
+
+  /**
+   * Number of messages waiting in mailboxes of all consumers.
+   *
+   * @return the pending message count.
+   */
+  public int getPendingCount() {
+    int pending = 0;
+    for (Mailbox<T> mailbox : mailboxes) {
+      pending += mailbox.size();
+    }
+    return pending;
+  }
+
+  /**
+   * Stop accepting messages, let consumers handle messages already in mailboxes and stop
+   * threads.
+   */
+  @Override
+  public void close() {
+    if (!open.compareAndSet(true, false)) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(TIMEOUT_SEC, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    int pending = getPendingCount();
+    if (pending > 0) {
+      Logger.getGlobal().log(Level.WARNING, () -> String
+          .format("Closed with %d undelivered messages", pending));
+    }
+  }
+
+  private void checkOpen() {
+    if (!open.get()) {
+      throw new IllegalStateException("Application is closed!");
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package ua.danit.queue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Built-in message codecs.
+ *
+ * @author Andrey Minov
+ */
+public final class MessageCodecs {
+  private static final MessageCodec<byte[]> BYTES = new BytesCodec();
+  private static final MessageCodec<String> UTF8 = new Utf8Codec();
+
+  private MessageCodecs() {
+  }
+
+  /**
+   * Codec passing raw bytes as they are.
+   *
+   * @return the codec of byte arrays.
+   */
+  public static MessageCodec<byte[]> bytes() {
+    return BYTES;
+  }
+
+  /**
+   * Codec of strings in UTF-8. Unpaired surrogates are encoded as '?' and malformed input is
+   * decoded into replacement characters, same as {@link String#getBytes(java.nio.charset.Charset)}
+   * and {@link String#String(byte[], java.nio.charset.Charset)} do.
+   *
+   * @return the codec of strings.
+   */
+  public static MessageCodec<String> utf8() {
+    return UTF8;
+  }
+
+  private static byte[] remaining(ByteBuffer source) {
+    byte[] result = new byte[source.remaining()];
+    source.get(result);
+    return result;
+  }
+
+  private static final class BytesCodec implements MessageCodec<byte[]> {
+
+    @Override
+    public void encode(byte[] message, ByteBuffer target) {
+      target.put(message);
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer source) {
+      return remaining(source);
+    }
+  }
+
+  private static final class Utf8Codec implements MessageCodec<String> {
+
+    @Override
+    public void encode(String message, ByteBuffer target) {
+      // Encode straight into the buffer, charset encoder is neither thread safe nor free to
+      // create for every message.
+      int length = message.length();
+      for (int i = 0; i < length; i++) {
+        char c = message.charAt(i);
+        if (c < 0x80) {
+          target.put((byte) c);
+        } else if (c < 0x800) {
+          put(target, 0xC0 | c >> 6, 0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(message.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, message.charAt(++i));
+          if (target.remaining() < 4) {
+            throw new BufferOverflowException();
+          }
+          target.put((byte) (0xF0 | codePoint >> 18));
+          target.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+          target.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+          target.put((byte) (0x80 | codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          target.put((byte) '?');
+        } else {
+          if (target.remaining() < 3) {
+            throw new BufferOverflowException();
+          }
+          target.put((byte) (0xE0 | c >> 12));
+          put(target, 0x80 | c >> 6 & 0x3F, 0x80 | c & 0x3F);
+        }
+      }
+    }
+
+    @Override
+    public String decode(ByteBuffer source) {
+      if (source.hasArray()) {
+        String result = new String(source.array(), source.arrayOffset() + source.position(),
+            source.remaining(), StandardCharsets.UTF_8);
+        source.position(source.limit());
+        return result;
+      }
+      return new String(remaining(source), StandardCharsets.UTF_8);
+    }
+
+    private static void put(ByteBuffer target, int first, int second) {
+      if (target.remaining() < 2) {
+        throw new BufferOverflowException();
+      }
+      target.put((byte) first);
+      target.put((byte) second);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package ua.danit.queue;
+
+/**
+ * Internals of a project queue used by bulk transfers and by {@link QueueSelector}, so that
+ * both find them through one check instead of listing every queue class.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+interface ProjectQueue<T> {
+
+  /**
+   * Side of the queue for single bulk transfer, see {@link Transfers}.
+   *
+   * @return the new transfer side.
+   */
+  TransferSide<T> transferSide();
+
+  /**
+   * Callbacks run when the queue turns from empty to non empty.
+   *
+   * @return the watchers of the queue.
+   */
+  Watchers watchers();
+}
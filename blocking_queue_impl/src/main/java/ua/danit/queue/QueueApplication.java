@@ -1,5 +1,9 @@
 package ua.danit.queue;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -7,27 +11,61 @@ import java.util.logging.Logger;
 /**
  * Queue application for processing.
  *
+ * <p>Messages are read from console until "exit". When started as {@code tcp <port>}, messages
+ * are also accepted as length-prefixed frames by {@link TcpIngestionServer} on loopback port.
+ * When started as {@code bulk <file>} (or {@code bulk -} for standard input), new line
+ * delimited messages are published by {@link BulkIngestion} and application exits once they
+ * are consumed.
+ *
  * @author Andrey Minov
  */
 public class QueueApplication {
+  private static final int IO_THREADS = 2;
+  private static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(1);
+
   /**
    * The entry point of application.
    *
    * @param args the input arguments
    */
   public static void main(String[] args) {
-    try (PubSubApplication application = new QueuePubSubApplication()) {
-      Scanner scanner = new Scanner(System.in);
-      String message;
-
+    try (QueuePubSubApplication application = new QueuePubSubApplication()) {
       application.registerConsumer(m -> System.out.println("Message received in consumer 1: " + m));
       application.registerConsumer(m -> System.out.println("Message received in consumer 2: " + m));
 
-      while (!"exit".equals(message = scanner.next())) {
-        application.publish(message);
+      if (args.length == 2 && "tcp".equals(args[0])) {
+        try (TcpIngestionServer server = new TcpIngestionServer(application,
+            Integer.parseInt(args[1]), IO_THREADS)) {
+          server.start();
+          Logger.getGlobal().log(Level.INFO, () -> "Listening on " + args[1]);
+          readConsole(application);
+        }
+      } else if (args.length == 2 && "bulk".equals(args[0])) {
+        BulkIngestion.Report report = readBulk(application, args[1]);
+        application.close(DRAIN_TIMEOUT);
+        System.out.println(report);
+      } else {
+        readConsole(application);
       }
     } catch (Exception e) {
       Logger.getGlobal().log(Level.SEVERE, e, e::getMessage);
     }
   }
+
+  private static void readConsole(PubSubApplication<String> application) {
+    Scanner scanner = new Scanner(System.in);
+    String message;
+    while (!"exit".equals(message = scanner.next())) {
+      application.publish(message);
+    }
+  }
+
+  private static BulkIngestion.Report readBulk(PubSubApplication<String> application, String source)
+      throws IOException {
+    BulkIngestion ingestion = new BulkIngestion(application);
+    if ("-".equals(source)) {
+      return ingestion.ingest(Channels.newChannel(System.in));
+    }
+    return ingestion.ingest(Paths.get(source));
+  }
 }
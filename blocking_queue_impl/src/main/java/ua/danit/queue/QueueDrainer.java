@@ -0,0 +1,182 @@
+package ua.danit.queue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates shutdown of consumer threads polling the same queue.
+ *
+ * <p>Workers take messages using {@link #poll(long, TimeUnit)} until {@link #isDraining()} and
+ * then switch to {@link #drainBatch(List, Consumer)}, taking remaining messages in batches until
+ * the queue is empty or the drain is abandoned.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+final class QueueDrainer<T> {
+  private static final int DRAIN_BATCH = 64;
+  private static final long ABANDON_GRACE_MILLIS = 100;
+  private static final int WAITING = 0;
+  private static final int LEFT = 1;
+  private static final int INTERRUPTING = 2;
+  private static final int INTERRUPTED = 3;
+
+  /*
+   * Workers blocked in timed poll are woken up by interrupt. Poison pills would need an instance
+   * of message type, which generic workers cannot make, and interrupting the whole pool would
+   * also hit consumers in the middle of processing. So each worker registers itself for the
+   * time it waits on the queue: it either sees draining flag before waiting, or it is already
+   * registered when close comes and receives the interrupt. Registration holds state of the wait
+   * switched by CAS, so either worker leaves or drain interrupts it, never both: worker which
+   * loses waits until the interrupt is delivered and clears it, so late interrupt cannot hit
+   * consumer. Woken worker keeps taking batches as any other, so the queue is drained by all
+   * workers in parallel.
+   *
+   * Workers of the same executor may poll queues of their own, linked to this drainer. Linked
+   * drainers start and are abandoned together with it, as they share executor termination.
+   */
+  private final BlockingQueue<T> queue;
+  private final Map<Thread, AtomicInteger> waiting;
+  private final Queue<T> abandoned;
+  private final List<QueueDrainer<T>> linked;
+  private volatile boolean draining;
+  private volatile boolean abandon;
+
+  QueueDrainer(BlockingQueue<T> queue) {
+    this.queue = queue;
+    this.waiting = new ConcurrentHashMap<>();
+    this.abandoned = new ConcurrentLinkedQueue<>();
+    this.linked = new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * Drain queue of the other drainer together with this one.
+   *
+   * @param other the drainer of workers running on the same executor.
+   */
+  void link(QueueDrainer<T> other) {
+    linked.add(other);
+  }
+
+  boolean isDraining() {
+    return draining;
+  }
+
+  /**
+   * Wait for the next message until drain starts.
+   *
+   * @param timeout how long to wait before giving up.
+   * @param unit    the unit of timeout.
+   * @return the message or null if timeout elapsed or drain started.
+   * @throws InterruptedException if interrupted not because of drain.
+   */
+  T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    Thread current = Thread.currentThread();
+    AtomicInteger state = new AtomicInteger(WAITING);
+    waiting.put(current, state);
+    try {
+      return draining ? null : queue.poll(timeout, unit);
+    } catch (InterruptedException e) {
+      if (draining) {
+        return null;
+      }
+      throw e;
+    } finally {
+      waiting.remove(current);
+      if (!state.compareAndSet(WAITING, LEFT)) {
+        // Drain has chosen to interrupt this thread, wake-up must not leak into consumer.
+        while (state.get() != INTERRUPTED) {
+          Thread.yield();
+        }
+        Thread.interrupted();
+      }
+    }
+  }
+
+  /**
+   * Switch workers into draining mode and wake up those blocked on the queue.
+   */
+  void start() {
+    draining = true;
+    for (Map.Entry<Thread, AtomicInteger> entry : waiting.entrySet()) {
+      AtomicInteger state = entry.getValue();
+      if (state.compareAndSet(WAITING, INTERRUPTING)) {
+        entry.getKey().interrupt();
+        state.set(INTERRUPTED);
+      }
+    }
+    linked.forEach(QueueDrainer::start);
+  }
+
+  /**
+   * Deliver next batch of remaining messages.
+   *
+   * @param batch    reusable buffer, empty on call and on return.
+   * @param delivery the delivery of single message.
+   * @return false when the queue is exhausted or drain was abandoned.
+   */
+  boolean drainBatch(List<T> batch, Consumer<T> delivery) {
+    if (abandon || queue.drainTo(batch, DRAIN_BATCH) == 0) {
+      return false;
+    }
+    try {
+      for (T message : batch) {
+        if (abandon) {
+          abandoned.add(message);
+          continue;
+        }
+        delivery.accept(message);
+      }
+    } finally {
+      batch.clear();
+    }
+    return !abandon;
+  }
+
+  /**
+   * Wait for executor to finish draining. When timeout elapses, workers are told to stop after
+   * current message and interrupted.
+   *
+   * @param executor the executor running workers, already shut down.
+   * @param timeout  the max time to drain.
+   * @return messages which were not delivered.
+   */
+  List<T> await(ExecutorService executor, Duration timeout) {
+    try {
+      if (!executor.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        abandon();
+        executor.shutdownNow();
+        executor.awaitTermination(ABANDON_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      abandon();
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    List<T> remaining = new ArrayList<>();
+    collect(remaining);
+    return remaining;
+  }
+
+  private void abandon() {
+    abandon = true;
+    linked.forEach(QueueDrainer::abandon);
+  }
+
+  private void collect(List<T> remaining) {
+    remaining.addAll(abandoned);
+    queue.drainTo(remaining);
+    linked.forEach(other -> other.collect(remaining));
+  }
+}
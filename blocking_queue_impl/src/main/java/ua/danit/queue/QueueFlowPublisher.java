@@ -0,0 +1,335 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Flow.Publisher} facade over a {@link BlockingQueue}.
+ *
+ * <p>Subscribers compete for queued items in the same way registered consumers of
+ * {@link QueuePubSubApplication} do: every item is delivered to exactly one subscriber. Each
+ * subscriber receives at most as many items as it has requested, delivered in batches taken
+ * with a single {@link BlockingQueue#drainTo(java.util.Collection, int)} call.
+ *
+ * @param <T> the published item type
+ * @author Andrey Minov
+ */
+public class QueueFlowPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+  private static final int DEFAULT_BATCH_SIZE = 64;
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  /*
+   * No thread is ever parked on behalf of a subscriber. Delivery runs as a short task on the
+   * executor and only when a subscription has both demand and queued items. The wip counter
+   * serializes the delivery task per subscription (signals coming from publishers and from
+   * request() calls are merged into a single run), so onNext calls are never concurrent.
+   *
+   * Backpressure towards publishers comes from the bounded queue: items leave the queue only
+   * when some subscriber requested them, so once it is full publish() blocks and
+   * offer() fails until demand shows up again.
+   *
+   * Items taken by subscriber which failed in the middle of a batch are returned into separate
+   * unbounded queue, which subscribers take from before the main one, so returning them never
+   * blocks delivery thread on the full queue.
+   *
+   * Publisher counts itself in before it checks the closed flag and out after its item is
+   * enqueued, and subscription completes only when nobody is counted in. So item of publisher
+   * which passed the check is always delivered before completion, and the last publisher
+   * leaving closed publisher signals subscriptions to complete.
+   */
+  private final BlockingQueue<T> queue;
+  private final Queue<T> returned;
+  private final AtomicInteger publishers;
+  private final Executor executor;
+  private final int batchSize;
+  private final List<QueueSubscription> subscriptions;
+  private volatile boolean closed;
+
+  /**
+   * Instantiates a new publisher on top of bounded {@link TwoWayLockingQueue}, delivering items
+   * using common fork-join pool.
+   */
+  public QueueFlowPublisher() {
+    this(new TwoWayLockingQueue<>(DEFAULT_CAPACITY), ForkJoinPool.commonPool(),
+        DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Instantiates a new publisher.
+   *
+   * @param queue     the queue holding items not yet delivered to subscribers.
+   * @param executor  the executor running delivery tasks.
+   * @param batchSize the max number of items delivered to subscriber by single queue access.
+   */
+  public QueueFlowPublisher(BlockingQueue<T> queue, Executor executor, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive!");
+    }
+    this.queue = queue;
+    this.returned = new ConcurrentLinkedQueue<>();
+    this.publishers = new AtomicInteger();
+    this.executor = executor;
+    this.batchSize = batchSize;
+    this.subscriptions = new CopyOnWriteArrayList<>();
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null!");
+    }
+    QueueSubscription subscription = new QueueSubscription(subscriber);
+    subscriptions.add(subscription);
+    subscriber.onSubscribe(subscription);
+    if (closed) {
+      subscription.signal();
+    }
+  }
+
+  /**
+   * Publish item, waiting for space in the queue if subscribers have not requested enough items
+   * to keep up with publishing.
+   *
+   * @param item the item to publish.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void publish(T item) throws InterruptedException {
+    enter();
+    try {
+      queue.put(item);
+    } finally {
+      leave();
+    }
+    signalSubscribers();
+  }
+
+  /**
+   * Publish item if there is space in the queue.
+   *
+   * @param item the item to publish.
+   * @return true if item was published, false if queue is full.
+   */
+  public boolean offer(T item) {
+    enter();
+    boolean result;
+    try {
+      result = queue.offer(item);
+    } finally {
+      leave();
+    }
+    if (result) {
+      signalSubscribers();
+    }
+    return result;
+  }
+
+  /**
+   * Publish item, waiting up to given time for space in the queue.
+   *
+   * @param item    the item to publish.
+   * @param timeout how long to wait before giving up.
+   * @param unit    the unit of timeout.
+   * @return true if item was published, false if timeout elapsed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+    enter();
+    boolean result;
+    try {
+      result = queue.offer(item, timeout, unit);
+    } finally {
+      leave();
+    }
+    if (result) {
+      signalSubscribers();
+    }
+    return result;
+  }
+
+  /**
+   * Total number of items requested but not yet delivered, summed over active subscriptions.
+   * Publishers may use it to throttle production before the queue fills up.
+   *
+   * @return outstanding demand, saturated at {@code Long.MAX_VALUE}.
+   */
+  public long outstandingDemand() {
+    long total = 0;
+    for (QueueSubscription subscription : subscriptions) {
+      total += subscription.demand.get();
+      if (total < 0) {
+        return Long.MAX_VALUE;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Number of active subscriptions.
+   *
+   * @return subscriber count.
+   */
+  public int subscriberCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Stop accepting new items. Subscribers receive everything already queued followed by
+   * {@link Flow.Subscriber#onComplete()}.
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      for (QueueSubscription subscription : subscriptions) {
+        subscription.signal();
+      }
+    }
+  }
+
+  private void enter() {
+    publishers.incrementAndGet();
+    if (closed) {
+      leave();
+      throw new IllegalStateException("Publisher is closed!");
+    }
+  }
+
+  private void leave() {
+    if (publishers.decrementAndGet() == 0 && closed) {
+      for (QueueSubscription subscription : subscriptions) {
+        subscription.signal();
+      }
+    }
+  }
+
+  private boolean isExhausted() {
+    return closed && publishers.get() == 0 && returned.isEmpty() && queue.isEmpty();
+  }
+
+  private void signalSubscribers() {
+    for (QueueSubscription subscription : subscriptions) {
+      if (subscription.demand.get() > 0) {
+        subscription.signal();
+      }
+    }
+  }
+
+  private final class QueueSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final AtomicLong demand;
+    private final AtomicInteger wip;
+    private final List<T> batch;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    private QueueSubscription(Flow.Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+      this.demand = new AtomicLong();
+      this.wip = new AtomicInteger();
+      this.batch = new ArrayList<>();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Requested number of items must be positive!");
+      } else {
+        long current;
+        long next;
+        do {
+          current = demand.get();
+          next = current + n;
+          // Overflow means effectively unbounded demand.
+          if (next < 0) {
+            next = Long.MAX_VALUE;
+          }
+        } while (!demand.compareAndSet(current, next));
+      }
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+    }
+
+    private void signal() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      while (!cancelled) {
+        Throwable failure = error;
+        if (failure != null) {
+          cancel();
+          subscriber.onError(failure);
+          return;
+        }
+        long requested = demand.get();
+        if (requested == 0) {
+          break;
+        }
+        int limit = (int) Math.min(requested, batchSize);
+        int number = 0;
+        T item;
+        while (number < limit && (item = returned.poll()) != null) {
+          batch.add(item);
+          number++;
+        }
+        if (number < limit) {
+          number += queue.drainTo(batch, limit - number);
+        }
+        if (number == 0) {
+          break;
+        }
+        int delivered = 0;
+        try {
+          while (delivered < number) {
+            subscriber.onNext(batch.get(delivered++));
+          }
+        } catch (RuntimeException e) {
+          // Subscriber broke the contract, stop the subscription and give the rest of the
+          // batch to other subscribers.
+          Logger.getGlobal().log(Level.SEVERE, e, () -> "Subscriber failed on next item.");
+          returned.addAll(batch.subList(delivered, number));
+          cancel();
+          subscriber.onError(e);
+          signalSubscribers();
+          return;
+        } finally {
+          batch.clear();
+        }
+        if (requested != Long.MAX_VALUE) {
+          demand.addAndGet(-number);
+        }
+      }
+      if (!cancelled && isExhausted()) {
+        cancel();
+        subscriber.onComplete();
+      }
+    }
+  }
+}
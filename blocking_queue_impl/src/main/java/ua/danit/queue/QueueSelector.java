@@ -0,0 +1,298 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits on several project queues at once and returns the first one which has elements, so
+ * that consumer serving several queues (for example control and data queue) does not have to
+ * poll them in turns.
+ *
+ * <p>Queues with higher priority are always checked first. Among queues with equal priority
+ * selector checks them in registration order, or, when fair, starting after the queue
+ * selected last time, so that a busy queue does not starve others.
+ *
+ * @param <T> the element type
+ * @author Andrey Minov
+ */
+public class QueueSelector<T> implements AutoCloseable {
+
+  /*
+   * Selector registers one callback in watchers of every queue. Queue runs it when it turns
+   * from empty to non empty and callback wakes one selecting thread, parked in waiter stack
+   * the same way as in TwoWayParkingQueue: register, check all queues once more, park.
+   *
+   * Queue which becomes non empty wakes a single thread, and it may have more elements than
+   * that thread takes, so thread which was woken and found a ready queue wakes the next
+   * waiting one. The next one checks queues and parks again if there is nothing left.
+   *
+   * Registered queues are kept in groups of equal priority, in copy-on-write array, so
+   * select reads them without any lock.
+   */
+  private final boolean fair;
+  private final WaiterStack waiters;
+  private final Runnable callback;
+  private volatile Group[] groups;
+
+  /**
+   * Instantiates a new unfair selector.
+   */
+  public QueueSelector() {
+    this(false);
+  }
+
+  /**
+   * Instantiates a new selector.
+   *
+   * @param fair true to rotate between ready queues of the same priority.
+   */
+  public QueueSelector(boolean fair) {
+    this.fair = fair;
+    this.waiters = new WaiterStack();
+    this.callback = waiters::wakeOne;
+    this.groups = new Group[0];
+  }
+
+  /**
+   * Register queue with default priority 0.
+   *
+   * @param queue the project queue to wait on.
+   */
+  public void register(BlockingQueue<? extends T> queue) {
+    register(queue, 0);
+  }
+
+  /**
+   * Register queue with given priority.
+   *
+   * @param queue    the project queue to wait on.
+   * @param priority the priority of queue, queues with higher priority are selected first.
+   */
+  public synchronized void register(BlockingQueue<? extends T> queue, int priority) {
+    final Watchers watchers = watchersOf(queue);
+    List<Entry> entries = entries();
+    for (Entry entry : entries) {
+      if (entry.queue == queue) {
+        throw new IllegalArgumentException("Queue is already registered!");
+      }
+    }
+    entries.add(new Entry(queue, priority));
+    update(entries);
+    watchers.add(callback);
+    // Queue may have become non empty before callback was added.
+    waiters.wakeOne();
+  }
+
+  /**
+   * Unregister queue.
+   *
+   * @param queue the queue registered before.
+   * @return true if queue was registered.
+   */
+  public synchronized boolean unregister(BlockingQueue<?> queue) {
+    List<Entry> entries = entries();
+    boolean removed = entries.removeIf(entry -> entry.queue == queue);
+    if (removed) {
+      update(entries);
+      watchersOf(queue).remove(callback);
+    }
+    return removed;
+  }
+
+  /**
+   * Unregister all queues.
+   */
+  @Override
+  public synchronized void close() {
+    for (Entry entry : entries()) {
+      watchersOf(entry.queue).remove(callback);
+    }
+    groups = new Group[0];
+  }
+
+  /**
+   * Return ready queue without waiting.
+   *
+   * @return the queue which has elements or null if all queues are empty.
+   */
+  @SuppressWarnings("unchecked")
+  public BlockingQueue<? extends T> selectNow() {
+    for (Group group : groups) {
+      BlockingQueue<?> result = group.select(fair);
+      if (result != null) {
+        return (BlockingQueue<? extends T>) result;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Wait until some of queues has elements. Element may be taken by other consumer before
+   * it is polled from returned queue.
+   *
+   * @return the queue which has elements.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public BlockingQueue<? extends T> select() throws InterruptedException {
+    return select(0, true);
+  }
+
+  /**
+   * Wait up to given time until some of queues has elements.
+   *
+   * @param timeout how long to wait before giving up.
+   * @param unit    the unit of timeout.
+   * @return the queue which has elements or null if timeout elapsed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public BlockingQueue<? extends T> select(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return select(unit.toNanos(timeout), false);
+  }
+
+  private BlockingQueue<? extends T> select(long nanos, boolean infinite)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + nanos;
+    boolean woken = false;
+    while (true) {
+      if (Thread.interrupted()) {
+        if (woken) {
+          waiters.wakeOne();
+        }
+        throw new InterruptedException();
+      }
+      BlockingQueue<? extends T> result = selectNow();
+      if (result != null) {
+        if (woken) {
+          waiters.wakeOne();
+        }
+        return result;
+      }
+      long left = deadline - System.nanoTime();
+      if (!infinite && left <= 0) {
+        if (woken) {
+          waiters.wakeOne();
+        }
+        return null;
+      }
+      WaiterStack.Waiter waiter = waiters.push();
+      if (selectNow() != null) {
+        woken = !waiter.cancel();
+        continue;
+      }
+      if (infinite) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, left);
+      }
+      woken = !waiter.cancel();
+    }
+  }
+
+  /**
+   * Take element from the first ready queue, waiting if all queues are empty.
+   *
+   * @return the element.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public T take() throws InterruptedException {
+    while (true) {
+      T result = select().poll();
+      if (result != null) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Take element from the first ready queue, waiting up to given time if all queues are empty.
+   *
+   * @param timeout how long to wait before giving up.
+   * @param unit    the unit of timeout.
+   * @return the element or null if timeout elapsed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      BlockingQueue<? extends T> queue = select(deadline - System.nanoTime(), false);
+      if (queue == null) {
+        return null;
+      }
+      T result = queue.poll();
+      if (result != null) {
+        return result;
+      }
+    }
+  }
+
+  private List<Entry> entries() {
+    List<Entry> result = new ArrayList<>();
+    for (Group group : groups) {
+      result.addAll(Arrays.asList(group.entries));
+    }
+    return result;
+  }
+
+  private void update(List<Entry> entries) {
+    // Sort is stable, so queues of the same priority keep registration order.
+    entries.sort(Comparator.comparingInt((Entry entry) -> entry.priority).reversed());
+    List<Group> result = new ArrayList<>();
+    int from = 0;
+    for (int i = 1; i <= entries.size(); i++) {
+      if (i == entries.size() || entries.get(i).priority != entries.get(from).priority) {
+        result.add(new Group(entries.subList(from, i).toArray(new Entry[0])));
+        from = i;
+      }
+    }
+    groups = result.toArray(new Group[0]);
+  }
+
+  private static Watchers watchersOf(BlockingQueue<?> queue) {
+    if (queue instanceof ProjectQueue) {
+      return ((ProjectQueue<?>) queue).watchers();
+    }
+    throw new IllegalArgumentException("Queue does not support selection!");
+  }
+
+  private static final class Entry {
+    private final BlockingQueue<?> queue;
+    private final int priority;
+
+    private Entry(BlockingQueue<?> queue, int priority) {
+      this.queue = queue;
+      this.priority = priority;
+    }
+  }
+
+  private static final class Group {
+    private final Entry[] entries;
+    private final AtomicInteger cursor;
+
+    private Group(Entry[] entries) {
+      this.entries = entries;
+      this.cursor = new AtomicInteger();
+    }
+
+    private BlockingQueue<?> select(boolean fair) {
+      int start = fair ? cursor.get() : 0;
+      for (int i = 0; i < entries.length; i++) {
+        int index = (start + i) % entries.length;
+        BlockingQueue<?> queue = entries[index].queue;
+        if (!queue.isEmpty()) {
+          if (fair) {
+            cursor.set((index + 1) % entries.length);
+          }
+          return queue;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publisher-subscriber application with named topics, where every topic has own queue and
+ * subscribers, served by threads shared by all topics. Subscription to pattern such as
+ * {@code orders.*.eu} or {@code orders.#} receives messages of every topic matching it.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+public class QueueTopicApplication<T> implements TopicPubSubApplication<T> {
+  private static final long TIMEOUT_SEC = 2;
+  private static final int BATCH_SIZE = 64;
+  private static final int MATCH_CACHE_SIZE = 4096;
+
+  /*
+   * Topics are kept in concurrent hash map, so publisher finds topic with single lock-free
+   * lookup however many topics exist. Topic is created by its first subscriber and stays in
+   * the map afterwards, as removing it would race with publishers holding it.
+   *
+   * Every topic queues messages in mailbox, run by shared pool only while it has messages and
+   * for up to BATCH_SIZE messages at a time, so busy topic does not starve the others and
+   * thousands of idle topics cost no thread. Mailbox is never run by two threads at once, which
+   * preserves order of topic messages.
+   *
+   * Every pattern has topic of its own, kept in subscription trie, so message is enqueued once
+   * per matching pattern and its subscribers get messages of all matching topics in order.
+   * Patterns matching published topic are cached per topic. Every change of pattern
+   * subscribers advances the generation and cached match of older generation is found again,
+   * so match which raced with subscription is never used afterwards. Cache is cleared on
+   * subscription and when it grows too large, as published topics may be unbounded.
+   */
+  private final ConcurrentMap<String, Topic> topics;
+  private final SubscriptionTrie<Topic> patterns;
+  private final ConcurrentMap<String, Matches> matchCache;
+  private final AtomicLong generation;
+  private final ExecutorService executor;
+  private final AtomicBoolean open;
+  private final AtomicLong dropped;
+
+  /**
+   * Instantiates a new topic application.
+   *
+   * @param threadNumber the number of threads delivering messages of all topics.
+   */
+  public QueueTopicApplication(int threadNumber) {
+    this.topics = new ConcurrentHashMap<>();
+    this.patterns = new SubscriptionTrie<>();
+    this.matchCache = new ConcurrentHashMap<>();
+    this.generation = new AtomicLong();
+    this.executor = new ThreadPoolExecutor(threadNumber, threadNumber, 0, TimeUnit.MILLISECONDS,
+        new TwoWayLockingQueue<>());
+    this.open = new AtomicBoolean(true);
+    this.dropped = new AtomicLong();
+  }
+
+  @Override
+  public Subscription subscribe(String topic, Consumer<T> messageConsumer) {
+    checkOpen();
+    boolean pattern = SubscriptionTrie.isPattern(topic);
+    TopicSubscription subscription = new TopicSubscription(pattern
+        ? patterns.computeIfAbsent(topic, name -> new Topic(name, true))
+        : topics.computeIfAbsent(topic, name -> new Topic(name, false)), messageConsumer);
+    subscription.topic.subscribers.add(subscription);
+    if (pattern) {
+      invalidateMatches();
+    }
+    return subscription;
+  }
+
+  @Override
+  public void publish(String topic, T message) {
+    checkOpen();
+    if (message == null) {
+      throw new NullPointerException("Message cannot be null!");
+    }
+    Topic target = topics.get(topic);
+    boolean delivered = target != null && target.offer(message);
+    for (Topic matching : matches(topic)) {
+      delivered |= matching.offer(message);
+    }
+    if (!delivered) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Number of exact topics which had subscribers.
+   *
+   * @return the topic count.
+   */
+  public int getTopicCount() {
+    return topics.size();
+  }
+
+  /**
+   * Number of messages dropped as neither their topic nor any pattern matching it had
+   * subscribers.
+   *
+   * @return the dropped message count.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Stop accepting messages, deliver messages already published and stop delivery threads.
+   */
+  @Override
+  public void close() {
+    if (!open.compareAndSet(true, false)) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(TIMEOUT_SEC, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private List<Topic> matches(String topic) {
+    long current = generation.get();
+    if (current == 0) {
+      return Collections.emptyList();
+    }
+    Matches cached = matchCache.get(topic);
+    if (cached != null && cached.generation == current) {
+      return cached.topics;
+    }
+    List<Topic> found = new ArrayList<>();
+    patterns.match(topic, pattern -> {
+      if (!pattern.subscribers.isEmpty()) {
+        found.add(pattern);
+      }
+    });
+    if (matchCache.size() >= MATCH_CACHE_SIZE) {
+      matchCache.clear();
+    }
+    matchCache.put(topic, new Matches(current, found));
+    return found;
+  }
+
+  private void invalidateMatches() {
+    generation.incrementAndGet();
+    matchCache.clear();
+  }
+
+  private void checkOpen() {
+    if (!open.get()) {
+      throw new IllegalStateException("Application is closed!");
+    }
+  }
+
+  private final class Topic {
+    private final String name;
+    private final boolean pattern;
+    private final List<TopicSubscription> subscribers;
+    private final Mailbox<T> mailbox;
+
+    private Topic(String name, boolean pattern) {
+      this.name = name;
+      this.pattern = pattern;
+      this.subscribers = new CopyOnWriteArrayList<>();
+      this.mailbox = new Mailbox<>(name, new TwoWayLockingQueue<>(), this::deliver, executor,
+          BATCH_SIZE);
+    }
+
+    private boolean offer(T message) {
+      if (subscribers.isEmpty()) {
+        return false;
+      }
+      return mailbox.offer(message);
+    }
+
+    private void deliver(T message) {
+      for (TopicSubscription subscription : subscribers) {
+        subscription.deliver(message);
+      }
+    }
+  }
+
+  private final class Matches {
+    private final long generation;
+    private final List<Topic> topics;
+
+    private Matches(long generation, List<Topic> topics) {
+      this.generation = generation;
+      this.topics = topics;
+    }
+  }
+
+  private final class TopicSubscription implements Subscription {
+    private final Topic topic;
+    private final Consumer<T> consumer;
+
+    private TopicSubscription(Topic topic, Consumer<T> consumer) {
+      this.topic = topic;
+      this.consumer = consumer;
+    }
+
+    @Override
+    public String getTopic() {
+      return topic.name;
+    }
+
+    @Override
+    public void cancel() {
+      if (topic.subscribers.remove(this) && topic.pattern) {
+        invalidateMatches();
+      }
+    }
+
+    private void deliver(T message) {
+      try {
+        consumer.accept(message);
+      } catch (RuntimeException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> String
+            .format("Subscriber of %s failed to process message.", topic.name));
+      }
+    }
+  }
+}
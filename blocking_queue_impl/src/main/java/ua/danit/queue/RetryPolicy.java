@@ -0,0 +1,54 @@
+package ua.danit.queue;
+
+import java.time.Duration;
+
+/**
+ * Retries of messages failed by consumer in {@link CodecPubSubApplication}.
+ *
+ * <p>Message is delivered at most {@code maxAttempts} times. Failed message waits before the
+ * next attempt for {@code initialBackoff}, doubled after every further failure up to
+ * {@code maxBackoff}. Message failed on the last attempt goes to the dead-letter queue.
+ *
+ * @author Andrey Minov
+ */
+public final class RetryPolicy {
+  private final int maxAttempts;
+  private final long initialBackoffNanos;
+  private final long maxBackoffNanos;
+
+  /**
+   * Instantiates a new policy.
+   *
+   * @param maxAttempts    the max number of deliveries of message, at least one.
+   * @param initialBackoff the delay before the second delivery.
+   * @param maxBackoff     the max delay between deliveries.
+   */
+  public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("Attempts must be positive!");
+    }
+    if (initialBackoff.isNegative() || initialBackoff.compareTo(maxBackoff) > 0) {
+      throw new IllegalArgumentException("Incorrect backoff bounds!");
+    }
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffNanos = initialBackoff.toNanos();
+    this.maxBackoffNanos = maxBackoff.toNanos();
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Delay before the next delivery of message.
+   *
+   * @param failedAttempts the number of deliveries failed so far, at least one.
+   * @return the delay in nanoseconds.
+   */
+  public long backoffNanos(int failedAttempts) {
+    // Shift stops before the sign bit, beyond that delay is capped anyway.
+    int doublings = Math.min(failedAttempts - 1,
+        Long.numberOfLeadingZeros(initialBackoffNanos) - 1);
+    return Math.min(maxBackoffNanos, initialBackoffNanos << doublings);
+  }
+}
@@ -0,0 +1,178 @@
+package ua.danit.queue;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules failed messages for another delivery following {@link RetryPolicy} and moves
+ * messages failed on the last attempt to {@link DeadLetterQueue}.
+ *
+ * @param <T> the message type
+ * @author Andrey Minov
+ */
+final class RetryScheduler<T> {
+  private static final long FULL_QUEUE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /*
+   * Message waiting for retry does not hold consumer thread: it is put into delay queue, heap
+   * ordered by due time, and scheduler task fired at its due time moves every due message
+   * back into the application queue. Tasks are scheduled per failure, task finding nothing due
+   * because earlier one took its message is harmless.
+   *
+   * Attempts are counted per message instance, as messages carry no identifier of their own.
+   * Count is kept only while message has failures, so successful delivery of message which
+   * never failed costs a single emptiness check.
+   */
+  private final RetryPolicy policy;
+  private final ScheduledExecutorService scheduler;
+  private final Predicate<T> target;
+  private final DeadLetterQueue<T> deadLetters;
+  private final ConcurrentMap<Identity, Integer> failures;
+  private final DelayQueue<Retry<T>> pending;
+  private final AtomicLong retried;
+
+  /**
+   * Instantiates a new retry scheduler.
+   *
+   * @param policy      the retry policy.
+   * @param scheduler   the executor firing due retries.
+   * @param target      the queue offer of messages to deliver again.
+   * @param deadLetters the destination of messages failed on the last attempt.
+   */
+  RetryScheduler(RetryPolicy policy, ScheduledExecutorService scheduler, Predicate<T> target,
+                 DeadLetterQueue<T> deadLetters) {
+    this.policy = policy;
+    this.scheduler = scheduler;
+    this.target = target;
+    this.deadLetters = deadLetters;
+    this.failures = new ConcurrentHashMap<>();
+    this.pending = new DelayQueue<>();
+    this.retried = new AtomicLong();
+  }
+
+  /**
+   * Forget failures of message processed successfully.
+   *
+   * @param message the message.
+   */
+  void succeeded(T message) {
+    if (!failures.isEmpty()) {
+      failures.remove(new Identity(message));
+    }
+  }
+
+  /**
+   * Schedule failed message for another delivery or move it to dead-letter queue.
+   *
+   * @param message the message.
+   * @param cause   the failure of consumer.
+   */
+  void failed(T message, RuntimeException cause) {
+    Identity key = new Identity(message);
+    int attempts = failures.merge(key, 1, Integer::sum);
+    if (attempts >= policy.getMaxAttempts()) {
+      failures.remove(key);
+      deadLetters.add(new DeadLetterQueue.DeadLetter<>(message, attempts, cause,
+          System.currentTimeMillis()));
+      Logger.getGlobal().log(Level.SEVERE, cause, () -> String
+          .format("Message %s failed %d times, moved to dead letters", message, attempts));
+      return;
+    }
+    long delay = policy.backoffNanos(attempts);
+    Logger.getGlobal().log(Level.WARNING, cause, () -> String
+        .format("Message %s failed, retry in %d ms", message,
+            TimeUnit.NANOSECONDS.toMillis(delay)));
+    schedule(message, delay);
+  }
+
+  /**
+   * Remove messages waiting for retry.
+   *
+   * @param removed the collection to add messages to.
+   */
+  void drainPending(Collection<? super T> removed) {
+    Iterator<Retry<T>> iterator = pending.iterator();
+    while (iterator.hasNext()) {
+      removed.add(iterator.next().message);
+      iterator.remove();
+    }
+    failures.clear();
+  }
+
+  int getPendingCount() {
+    return pending.size();
+  }
+
+  long getRetryCount() {
+    return retried.get();
+  }
+
+  private void schedule(T message, long delay) {
+    pending.add(new Retry<>(message, System.nanoTime() + delay));
+    try {
+      scheduler.schedule(this::release, delay, TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      // Application is closing, message is reported as undelivered.
+    }
+  }
+
+  private void release() {
+    Retry<T> retry;
+    while ((retry = pending.poll()) != null) {
+      if (!target.test(retry.message)) {
+        schedule(retry.message, FULL_QUEUE_DELAY_NANOS);
+        return;
+      }
+      retried.incrementAndGet();
+    }
+  }
+
+  private static final class Retry<T> implements Delayed {
+    private final T message;
+    private final long dueNanos;
+
+    private Retry(T message, long dueNanos) {
+      this.message = message;
+      this.dueNanos = dueNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+
+  private static final class Identity {
+    private final Object ref;
+
+    private Identity(Object ref) {
+      this.ref = ref;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Identity && ((Identity) o).ref == ref;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(ref);
+    }
+  }
+}
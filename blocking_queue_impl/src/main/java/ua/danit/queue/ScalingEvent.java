@@ -0,0 +1,77 @@
+package ua.danit.queue;
+
+/**
+ * Change of worker count made by {@link ElasticConsumerPool}.
+ *
+ * @author Andrey Minov
+ */
+public final class ScalingEvent {
+
+  /**
+   * Reason of worker count change.
+   */
+  public enum Reason {
+    /**
+     * Queue depth exceeded grow threshold.
+     */
+    QUEUE_DEPTH,
+    /**
+     * Estimated message age exceeded grow threshold.
+     */
+    MESSAGE_AGE,
+    /**
+     * Worker has been idle for too long.
+     */
+    IDLE
+  }
+
+  private final Reason reason;
+  private final int previousWorkers;
+  private final int currentWorkers;
+  private final int queueDepth;
+  private final long estimatedAgeMillis;
+
+  /**
+   * Instantiates a new scaling event.
+   *
+   * @param reason             the reason of change.
+   * @param previousWorkers    the worker count before change.
+   * @param currentWorkers     the worker count after change.
+   * @param queueDepth         the queue depth observed.
+   * @param estimatedAgeMillis the estimated message age observed.
+   */
+  public ScalingEvent(Reason reason, int previousWorkers, int currentWorkers, int queueDepth,
+                      long estimatedAgeMillis) {
+    this.reason = reason;
+    this.previousWorkers = previousWorkers;
+    this.currentWorkers = currentWorkers;
+    this.queueDepth = queueDepth;
+    this.estimatedAgeMillis = estimatedAgeMillis;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+
+  public int getPreviousWorkers() {
+    return previousWorkers;
+  }
+
+  public int getCurrentWorkers() {
+    return currentWorkers;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public long getEstimatedAgeMillis() {
+    return estimatedAgeMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Scaling %d -> %d workers due to %s (depth=%d, age=%dms)",
+        previousWorkers, currentWorkers, reason, queueDepth, estimatedAgeMillis);
+  }
+}
@@ -0,0 +1,106 @@
+package ua.danit.queue;
+
+/**
+ * Thresholds driving {@link ElasticConsumerPool} worker count.
+ *
+ * <p>Pool grows when queue depth exceeds {@code growDepth} or estimated message age (sojourn
+ * time) exceeds {@code growAgeMillis}. Idle worker retires only after it received nothing for
+ * {@code shrinkIdleMillis}, queue depth fell below half of {@code growDepth} and no growth
+ * happened during the same period. The gap between grow and shrink conditions keeps the pool
+ * from flapping on bursty traffic.
+ *
+ * @author Andrey Minov
+ */
+public final class ScalingPolicy {
+  private static final int DEFAULT_MIN_WORKERS = 1;
+  private static final int DEFAULT_MAX_WORKERS = 10;
+  private static final int DEFAULT_GROW_DEPTH = 100;
+  private static final long DEFAULT_GROW_AGE_MILLIS = 200;
+  private static final long DEFAULT_SHRINK_IDLE_MILLIS = 30_000;
+  private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 100;
+
+  private final int minWorkers;
+  private final int maxWorkers;
+  private final int growDepth;
+  private final long growAgeMillis;
+  private final long shrinkIdleMillis;
+  private final long checkIntervalMillis;
+
+  /**
+   * Instantiates a new policy with default thresholds and given bounds.
+   *
+   * @param minWorkers the min number of workers kept alive.
+   * @param maxWorkers the max number of workers.
+   */
+  public ScalingPolicy(int minWorkers, int maxWorkers) {
+    this(minWorkers, maxWorkers, DEFAULT_GROW_DEPTH, DEFAULT_GROW_AGE_MILLIS,
+        DEFAULT_SHRINK_IDLE_MILLIS, DEFAULT_CHECK_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Instantiates a new policy.
+   *
+   * @param minWorkers          the min number of workers kept alive, at least one.
+   * @param maxWorkers          the max number of workers.
+   * @param growDepth           the queue depth above which workers are added.
+   * @param growAgeMillis       the estimated message age above which workers are added.
+   * @param shrinkIdleMillis    the idle time after which worker may retire.
+   * @param checkIntervalMillis the period of depth and age sampling.
+   */
+  public ScalingPolicy(int minWorkers, int maxWorkers, int growDepth, long growAgeMillis,
+                       long shrinkIdleMillis, long checkIntervalMillis) {
+    if (minWorkers <= 0 || minWorkers > maxWorkers) {
+      throw new IllegalArgumentException("Incorrect worker bounds!");
+    }
+    if (growDepth <= 0 || growAgeMillis <= 0 || shrinkIdleMillis <= 0
+        || checkIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Thresholds must be positive!");
+    }
+    this.minWorkers = minWorkers;
+    this.maxWorkers = maxWorkers;
+    this.growDepth = growDepth;
+    this.growAgeMillis = growAgeMillis;
+    this.shrinkIdleMillis = shrinkIdleMillis;
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  /**
+   * Instantiates a new policy with default thresholds.
+   *
+   * @return default policy.
+   */
+  public static ScalingPolicy defaultPolicy() {
+    return new ScalingPolicy(DEFAULT_MIN_WORKERS, DEFAULT_MAX_WORKERS);
+  }
+
+  public int getMinWorkers() {
+    return minWorkers;
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  public int getGrowDepth() {
+    return growDepth;
+  }
+
+  public long getGrowAgeMillis() {
+    return growAgeMillis;
+  }
+
+  public long getShrinkIdleMillis() {
+    return shrinkIdleMillis;
+  }
+
+  public long getCheckIntervalMillis() {
+    return checkIntervalMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ScalingPolicy{workers=[%d, %d], growDepth=%d, growAge=%dms, "
+            + "shrinkIdle=%dms, checkInterval=%dms}", minWorkers, maxWorkers, growDepth,
+        growAgeMillis, shrinkIdleMillis, checkIntervalMillis);
+  }
+}
@@ -3,13 +3,10 @@ package ua.danit.queue;
 import java.util.AbstractQueue;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implementation of thread safe {@link java.util.Queue}, using single lock for marking conditions.
@@ -17,18 +14,28 @@ import java.util.concurrent.locks.ReentrantLock;
  * @param <T> the type parameter
  * @author Andrey Minov
  */
-public class SingleBlockingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+public class SingleBlockingQueue<T> extends AbstractQueue<T>
+    implements BlockingQueue<T>, ProjectQueue<T> {
+  private static final int OPTIMISTIC_ATTEMPTS = 3;
 
   /**
    * We using single lock and single condition to sychronize this queue.
    * This is simple possibility to put waiters in the queue when
-   * lock cannot be aquired. Note that readers blocks writers as
+   * lock cannot be aquired. Note that consumers block producers as
    * they both share lock for purposes of sharing same data.
+   * With finite capacity elements are kept in preallocated circular array,
+   * so put and take do not allocate anything.
+   *
+   * <p>Storage is versioned, so observers like size, remainingCapacity, peek and contains first
+   * try to read it optimistically without the lock and validate the version afterwards. Only
+   * if storage keeps changing under them they fall back to the lock, so polling them does not
+   * contend with producers and consumers.
    */
   private final int capacity;
   private final Lock lock;
   private final Condition sychCondition;
-  private final Queue<T> queue;
+  private final CircularArrayQueue<T> queue;
+  private final Watchers watchers;
 
   /**
    * Instantiates a new Single blocking queue.
@@ -43,10 +50,21 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
    * @param capacity the max queue capacity
    */
   public SingleBlockingQueue(int capacity) {
+    this(capacity, false);
+  }
+
+  /**
+   * Instantiates a new Single blocking queue.
+   *
+   * @param capacity the max queue capacity
+   * @param fair     true to give the lock to threads in order of arrival
+   */
+  public SingleBlockingQueue(int capacity, boolean fair) {
     this.capacity = capacity;
-    this.lock = new ReentrantLock();
+    this.lock = new AdaptiveSpinLock(fair);
     this.sychCondition = lock.newCondition();
-    this.queue = new LinkedList<>();
+    this.queue = new CircularArrayQueue<>(capacity, true);
+    this.watchers = new Watchers();
   }
 
   @Override
@@ -63,6 +81,7 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         sychCondition.signalAll();
+        watchers.signal();
       }
       return result;
     } finally {
@@ -92,6 +111,7 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         sychCondition.signalAll();
+        watchers.signal();
       }
       return result;
     } finally {
@@ -116,6 +136,7 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         sychCondition.signalAll();
+        watchers.signal();
       }
     } finally {
       lock.unlock();
@@ -190,7 +211,7 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
       // Avoid useless signalling we do this in case when queue for previously full.
       // Also here used signalAll instead of signal when waking up the thread in order
       // some thread not to wait forever for new entry to receive.
-      if (size == queue.size()) {
+      if (size == capacity) {
         sychCondition.signalAll();
       }
       return result;
@@ -201,6 +222,13 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
 
   @Override
   public int remainingCapacity() {
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = queue.tryOptimisticRead();
+      int result = capacity - queue.size();
+      if (queue.validate(stamp)) {
+        return result;
+      }
+    }
     lock.lock();
     try {
       return capacity - queue.size();
@@ -248,6 +276,13 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
 
   @Override
   public T peek() {
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = queue.tryOptimisticRead();
+      T result = queue.optimisticPeek();
+      if (queue.validate(stamp)) {
+        return result;
+      }
+    }
     lock.lock();
     try {
       return queue.peek();
@@ -258,6 +293,13 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
 
   @Override
   public int size() {
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = queue.tryOptimisticRead();
+      int result = queue.size();
+      if (queue.validate(stamp)) {
+        return result;
+      }
+    }
     lock.lock();
     try {
       return queue.size();
@@ -268,11 +310,135 @@ public class SingleBlockingQueue<T> extends AbstractQueue<T> implements Blocking
 
   @Override
   public Iterator<T> iterator() {
+    return new WeakIterator<>(queue, this::locked, this::removed);
+  }
+
+  private void locked(Runnable action) {
+    lock.lock();
+    try {
+      action.run();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = queue.tryOptimisticRead();
+      try {
+        boolean result = queue.optimisticContains(o);
+        if (queue.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // Element seen in inconsistent state, equals may fail on it. Retry.
+        if (queue.validate(stamp)) {
+          throw e;
+        }
+      }
+    }
+    lock.lock();
+    try {
+      return queue.contains(o);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
     lock.lock();
     try {
-      return new LinkedList<>(queue).iterator();
+      boolean result = queue.remove(o);
+      if (result) {
+        removed();
+      }
+      return result;
     } finally {
       lock.unlock();
     }
   }
+
+  private void removed() {
+    if (queue.size() == capacity - 1) {
+      sychCondition.signalAll();
+    }
+  }
+
+  /**
+   * Move up to given number of elements from the head of this queue to the tail of target,
+   * see {@link TwoWayLockingQueue#transferTo(BlockingQueue, int)}.
+   *
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @return the number of moved elements.
+   */
+  public int transferTo(BlockingQueue<? super T> target, int maxElements) {
+    return Transfers.transfer(this, transferSide(), target, maxElements);
+  }
+
+  @Override
+  public TransferSide<T> transferSide() {
+    return new Side();
+  }
+
+  @Override
+  public Watchers watchers() {
+    return watchers;
+  }
+
+  private final class Side implements TransferSide<T> {
+
+    @Override
+    public void locked(boolean source, Runnable action) {
+      SingleBlockingQueue.this.locked(action);
+    }
+
+    @Override
+    public int available() {
+      return queue.size();
+    }
+
+    @Override
+    public T peekFirst() {
+      return queue.peek();
+    }
+
+    @Override
+    public T removeFirst() {
+      return queue.poll();
+    }
+
+    @Override
+    public void removed(int count) {
+      // Same as for poll, producers are waiting only if queue was full.
+      if (count > 0 && queue.size() + count == capacity) {
+        sychCondition.signalAll();
+      }
+    }
+
+    @Override
+    public int room() {
+      return capacity - queue.size();
+    }
+
+    @Override
+    public void addLast(T element) {
+      queue.offer(element);
+    }
+
+    @Override
+    public void added(int count) {
+      if (count > 0 && queue.size() == count) {
+        sychCondition.signalAll();
+        watchers.signal();
+      }
+    }
+
+    @Override
+    public void signal() {
+      // Waiting threads are already signalled holding the lock.
+    }
+  }
 }
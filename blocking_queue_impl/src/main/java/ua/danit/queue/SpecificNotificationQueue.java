@@ -0,0 +1,381 @@
+package ua.danit.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of thread safe {@link java.util.concurrent.BlockingQueue}, using monitor
+ * synchronization with specific notification of waiting threads.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+public class SpecificNotificationQueue<T> extends AbstractQueue<T>
+    implements BlockingQueue<T>, ProjectQueue<T> {
+
+  /*
+   * Monitor has only one wait set, so notify() may wake producer when consumer was needed and
+   * SynchronizedBlockingQueue has to wake everyone with notifyAll(). Here every waiting thread
+   * waits on its own waiter object instead, kept in FIFO list of producers or consumers under
+   * main mutex, and is notified only by the thread which completed its operation for it:
+   * producer gives element directly to the first waiting consumer, consumer moves element of
+   * the first waiting producer into the slot it just freed. Woken thread has nothing to retry,
+   * it only picks up the result.
+   *
+   * Waiters are completed holding both main mutex and waiter monitor, waiter itself never holds
+   * both, so lock order is always mutex then waiter. Waiter which gives up (timeout or
+   * interrupt) removes itself under main mutex, unless it was completed before.
+   *
+   * Storage is preallocated circular array when capacity is finite, see CircularArrayQueue.
+   *
+   * Consumers wait only while queue is empty and producers only while it is full, so at most
+   * one of lists is non empty.
+   */
+  private final int capacity;
+  private final Object mu;
+  private final CircularArrayQueue<T> queue;
+  private final Watchers watchers;
+  private final Deque<Waiter<T>> producers;
+  private final Deque<Waiter<T>> consumers;
+
+  /**
+   * Instantiates a new specific notification queue with Integer.MAX_VALUE capacity.
+   */
+  public SpecificNotificationQueue() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Instantiates a new specific notification queue.
+   *
+   * @param capacity the capacity of the queue
+   */
+  public SpecificNotificationQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive!");
+    }
+    this.capacity = capacity;
+    this.mu = new Object();
+    this.queue = new CircularArrayQueue<>(capacity);
+    this.watchers = new Watchers();
+    this.producers = new ArrayDeque<>();
+    this.consumers = new ArrayDeque<>();
+  }
+
+  @Override
+  public void put(T t) throws InterruptedException {
+    offer(t, 0, true);
+  }
+
+  @Override
+  public boolean offer(T t) {
+    checkNotNull(t);
+    synchronized (mu) {
+      return tryEnqueue(t);
+    }
+  }
+
+  @Override
+  public boolean offer(T t, long timeout, TimeUnit unit) throws InterruptedException {
+    return offer(t, unit.toNanos(timeout), false);
+  }
+
+  private boolean offer(T t, long nanos, boolean infinite) throws InterruptedException {
+    checkNotNull(t);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Waiter<T> waiter;
+    synchronized (mu) {
+      if (tryEnqueue(t)) {
+        return true;
+      }
+      if (!infinite && nanos <= 0) {
+        return false;
+      }
+      waiter = new Waiter<>(t);
+      producers.addLast(waiter);
+    }
+    return await(waiter, producers, nanos, infinite);
+  }
+
+  @Override
+  public T take() throws InterruptedException {
+    return poll(0, true);
+  }
+
+  @Override
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return poll(unit.toNanos(timeout), false);
+  }
+
+  @Override
+  public T poll() {
+    synchronized (mu) {
+      return dequeue();
+    }
+  }
+
+  private T poll(long nanos, boolean infinite) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Waiter<T> waiter;
+    synchronized (mu) {
+      T result = dequeue();
+      if (result != null || !infinite && nanos <= 0) {
+        return result;
+      }
+      waiter = new Waiter<>(null);
+      consumers.addLast(waiter);
+    }
+    return await(waiter, consumers, nanos, infinite) ? waiter.item : null;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    synchronized (mu) {
+      return capacity - queue.size();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException("Queue cannot be drain to itself!");
+    }
+    synchronized (mu) {
+      int number = 0;
+      try {
+        while (number < maxElements && !queue.isEmpty()) {
+          c.add(queue.poll());
+          number++;
+        }
+      } finally {
+        refill();
+      }
+      return number;
+    }
+  }
+
+  @Override
+  public T peek() {
+    synchronized (mu) {
+      return queue.peek();
+    }
+  }
+
+  @Override
+  public int size() {
+    synchronized (mu) {
+      return queue.size();
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    synchronized (mu) {
+      return queue.contains(o);
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    synchronized (mu) {
+      boolean result = queue.remove(o);
+      if (result) {
+        refill();
+      }
+      return result;
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new WeakIterator<>(queue, this::locked, this::refill);
+  }
+
+  private void locked(Runnable action) {
+    synchronized (mu) {
+      action.run();
+    }
+  }
+
+  /**
+   * Move up to given number of elements from the head of this queue to the tail of target,
+   * see {@link TwoWayLockingQueue#transferTo(BlockingQueue, int)}. Elements moved into this
+   * queue are given directly to waiting consumers first.
+   *
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @return the number of moved elements.
+   */
+  public int transferTo(BlockingQueue<? super T> target, int maxElements) {
+    return Transfers.transfer(this, transferSide(), target, maxElements);
+  }
+
+  @Override
+  public TransferSide<T> transferSide() {
+    return new Side();
+  }
+
+  @Override
+  public Watchers watchers() {
+    return watchers;
+  }
+
+  private boolean tryEnqueue(T t) {
+    Waiter<T> consumer = consumers.pollFirst();
+    if (consumer != null) {
+      // Queue is empty, so element goes straight to the consumer waiting longest.
+      consumer.complete(t);
+      return true;
+    }
+    if (queue.size() == capacity) {
+      return false;
+    }
+    queue.offer(t);
+    if (queue.size() == 1) {
+      watchers.signal();
+    }
+    return true;
+  }
+
+  private T dequeue() {
+    T result = queue.poll();
+    if (result != null) {
+      refill();
+    }
+    return result;
+  }
+
+  private void refill() {
+    // Move elements of waiting producers into the slots just freed.
+    Waiter<T> producer;
+    while (queue.size() < capacity && (producer = producers.pollFirst()) != null) {
+      queue.offer(producer.item);
+      producer.complete(null);
+    }
+  }
+
+  private boolean await(Waiter<T> waiter, Deque<Waiter<T>> waiters, long nanos,
+                        boolean infinite) throws InterruptedException {
+    long deadline = System.nanoTime() + nanos;
+    try {
+      synchronized (waiter) {
+        while (!waiter.done) {
+          if (infinite) {
+            waiter.wait();
+          } else {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+              break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(waiter, left);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      if (cancel(waiter, waiters)) {
+        throw e;
+      }
+      // Operation was completed before interruption, keep the result and the interrupt.
+      Thread.currentThread().interrupt();
+      return true;
+    }
+    return waiter.done || !cancel(waiter, waiters);
+  }
+
+  private boolean cancel(Waiter<T> waiter, Deque<Waiter<T>> waiters) {
+    synchronized (mu) {
+      if (waiter.done) {
+        return false;
+      }
+      waiters.remove(waiter);
+      return true;
+    }
+  }
+
+  private static void checkNotNull(Object o) {
+    if (o == null) {
+      throw new NullPointerException("Queue does not permit null elements!");
+    }
+  }
+
+  private final class Side implements TransferSide<T> {
+
+    @Override
+    public void locked(boolean source, Runnable action) {
+      SpecificNotificationQueue.this.locked(action);
+    }
+
+    @Override
+    public int available() {
+      return queue.size();
+    }
+
+    @Override
+    public T peekFirst() {
+      return queue.peek();
+    }
+
+    @Override
+    public T removeFirst() {
+      return queue.poll();
+    }
+
+    @Override
+    public void removed(int count) {
+      if (count > 0) {
+        refill();
+      }
+    }
+
+    @Override
+    public int room() {
+      return capacity - queue.size();
+    }
+
+    @Override
+    public void addLast(T element) {
+      tryEnqueue(element);
+    }
+
+    @Override
+    public void added(int count) {
+      // Waiting consumers have already got their elements from addLast.
+    }
+
+    @Override
+    public void signal() {
+      // Waiters are completed holding the mutex.
+    }
+  }
+
+  private static final class Waiter<T> {
+    private T item;
+    private volatile boolean done;
+
+    private Waiter(T item) {
+      this.item = item;
+    }
+
+    private void complete(T result) {
+      synchronized (this) {
+        item = result;
+        done = true;
+        notify();
+      }
+    }
+  }
+}
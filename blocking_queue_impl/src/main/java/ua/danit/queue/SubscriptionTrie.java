@@ -0,0 +1,123 @@
+package ua.danit.queue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Trie of hierarchical topic patterns. Topic consists of words separated by dot, pattern word
+ * {@code *} matches exactly one word and pattern word {@code #}, allowed only at the end,
+ * matches any number of words including none.
+ *
+ * @param <V> the type of value kept for every pattern
+ * @author Andrey Minov
+ */
+final class SubscriptionTrie<V> {
+  static final String ANY_WORD = "*";
+  static final String ANY_TAIL = "#";
+  private static final String SEPARATOR = "\\.";
+
+  /*
+   * Every node has concurrent map of children keyed by word, so patterns are added while
+   * topics are matched without any lock. Matching walks the trie word by word and at every
+   * node follows at most the child of the same word, the child of any word and the child of
+   * any tail, so it visits nodes along matching paths only, however many other patterns exist.
+   * Nodes are never removed, as pattern which has lost its subscribers is usually subscribed
+   * again and empty pattern costs only a lookup.
+   */
+  private final Node<V> root;
+
+  SubscriptionTrie() {
+    this.root = new Node<>();
+  }
+
+  /**
+   * Check whether topic contains wildcard words.
+   *
+   * @param topic the topic or pattern.
+   * @return true if topic is pattern.
+   */
+  static boolean isPattern(String topic) {
+    for (String word : split(topic)) {
+      if (ANY_WORD.equals(word) || ANY_TAIL.equals(word)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get value of the pattern, creating it if pattern is new.
+   *
+   * @param pattern the topic pattern.
+   * @param factory the function creating value from pattern.
+   * @return the value of the pattern.
+   */
+  V computeIfAbsent(String pattern, Function<? super String, ? extends V> factory) {
+    String[] words = split(pattern);
+    for (int i = 0; i < words.length - 1; i++) {
+      if (ANY_TAIL.equals(words[i])) {
+        throw new IllegalArgumentException("# can be only the last word of pattern!");
+      }
+    }
+    Node<V> node = root;
+    for (String word : words) {
+      node = node.children.computeIfAbsent(word, key -> new Node<>());
+    }
+    synchronized (node) {
+      if (node.value == null) {
+        node.value = factory.apply(pattern);
+      }
+      return node.value;
+    }
+  }
+
+  /**
+   * Pass value of every pattern matching the topic to consumer, once per pattern.
+   *
+   * @param topic   the published topic.
+   * @param matched the consumer of matching values.
+   */
+  void match(String topic, Consumer<? super V> matched) {
+    match(root, split(topic), 0, matched);
+  }
+
+  private void match(Node<V> node, String[] words, int index, Consumer<? super V> matched) {
+    Node<V> tail = node.children.get(ANY_TAIL);
+    if (tail != null && tail.value != null) {
+      matched.accept(tail.value);
+    }
+    if (index == words.length) {
+      if (node.value != null) {
+        matched.accept(node.value);
+      }
+      return;
+    }
+    String word = words[index];
+    // Wildcard word in topic is matched by wildcards only, or the same pattern is visited twice.
+    if (!ANY_WORD.equals(word) && !ANY_TAIL.equals(word)) {
+      Node<V> exact = node.children.get(word);
+      if (exact != null) {
+        match(exact, words, index + 1, matched);
+      }
+    }
+    Node<V> any = node.children.get(ANY_WORD);
+    if (any != null) {
+      match(any, words, index + 1, matched);
+    }
+  }
+
+  private static String[] split(String topic) {
+    return topic.split(SEPARATOR, -1);
+  }
+
+  private static final class Node<V> {
+    private final ConcurrentMap<String, Node<V>> children;
+    private volatile V value;
+
+    private Node() {
+      this.children = new ConcurrentHashMap<>();
+    }
+  }
+}
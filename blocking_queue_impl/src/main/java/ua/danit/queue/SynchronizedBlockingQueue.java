@@ -3,8 +3,6 @@ package ua.danit.queue;
 import java.util.AbstractQueue;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -15,17 +13,21 @@ import java.util.concurrent.TimeUnit;
  * @param <T> the type parameter
  * @author Andrey Minov
  */
-public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+public class SynchronizedBlockingQueue<T> extends AbstractQueue<T>
+    implements BlockingQueue<T>, ProjectQueue<T> {
 
   /**
    * We using single mutex to sychronize this queue.
    * This is simple possibility to put waiters in the queue when
    * lock cannot be aquired. Note that readers blocks writers as
    * they both share lock for purposes of sharing same data.
+   * With finite capacity elements are kept in preallocated circular array,
+   * so put and take do not allocate anything.
    */
   private final int capacity;
   private final Object mu;
-  private final Queue<T> queue;
+  private final CircularArrayQueue<T> queue;
+  private final Watchers watchers;
 
   /**
    * Instantiates a new Synchronized blocking queue with Integer.MAX_VALUE capacity.
@@ -42,7 +44,8 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
   public SynchronizedBlockingQueue(int capacity) {
     this.capacity = capacity;
     this.mu = new Object();
-    this.queue = new LinkedList<>();
+    this.queue = new CircularArrayQueue<>(capacity);
+    this.watchers = new Watchers();
   }
 
 
@@ -61,6 +64,7 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         mu.notifyAll();
+        watchers.signal();
       }
     }
   }
@@ -78,6 +82,7 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         mu.notifyAll();
+        watchers.signal();
       }
       return result;
     }
@@ -105,6 +110,7 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
       // some thread not to wait forever for new entry to receive.
       if (empty) {
         mu.notifyAll();
+        watchers.signal();
       }
       return result;
     }
@@ -171,7 +177,7 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
       // Avoid useless signalling we do this in case when queue for previously full.
       // Also here used signalAll instead of signal when waking up the thread in order
       // some thread not to wait forever for new entry to receive.
-      if (size == queue.size()) {
+      if (size == capacity) {
         mu.notifyAll();
       }
       return result;
@@ -233,9 +239,112 @@ public class SynchronizedBlockingQueue<T> extends AbstractQueue<T> implements Bl
 
   @Override
   public Iterator<T> iterator() {
+    return new WeakIterator<>(queue, this::locked, this::removed);
+  }
+
+  private void locked(Runnable action) {
+    synchronized (mu) {
+      action.run();
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
     synchronized (mu) {
-      return new LinkedList<>(queue).iterator();
+      return queue.contains(o);
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    synchronized (mu) {
+      boolean result = queue.remove(o);
+      if (result) {
+        removed();
+      }
+      return result;
     }
   }
 
+  private void removed() {
+    if (queue.size() == capacity - 1) {
+      mu.notifyAll();
+    }
+  }
+
+  /**
+   * Move up to given number of elements from the head of this queue to the tail of target,
+   * see {@link TwoWayLockingQueue#transferTo(BlockingQueue, int)}.
+   *
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @return the number of moved elements.
+   */
+  public int transferTo(BlockingQueue<? super T> target, int maxElements) {
+    return Transfers.transfer(this, transferSide(), target, maxElements);
+  }
+
+  @Override
+  public TransferSide<T> transferSide() {
+    return new Side();
+  }
+
+  @Override
+  public Watchers watchers() {
+    return watchers;
+  }
+
+  private final class Side implements TransferSide<T> {
+
+    @Override
+    public void locked(boolean source, Runnable action) {
+      SynchronizedBlockingQueue.this.locked(action);
+    }
+
+    @Override
+    public int available() {
+      return queue.size();
+    }
+
+    @Override
+    public T peekFirst() {
+      return queue.peek();
+    }
+
+    @Override
+    public T removeFirst() {
+      return queue.poll();
+    }
+
+    @Override
+    public void removed(int count) {
+      // Same as for poll, producers are waiting only if queue was full.
+      if (count > 0 && queue.size() + count == capacity) {
+        mu.notifyAll();
+      }
+    }
+
+    @Override
+    public int room() {
+      return capacity - queue.size();
+    }
+
+    @Override
+    public void addLast(T element) {
+      queue.offer(element);
+    }
+
+    @Override
+    public void added(int count) {
+      if (count > 0 && queue.size() == count) {
+        mu.notifyAll();
+        watchers.signal();
+      }
+    }
+
+    @Override
+    public void signal() {
+      // Waiting threads are already signalled holding the lock.
+    }
+  }
 }
@@ -0,0 +1,300 @@
+package ua.danit.queue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking TCP front end publishing messages received from many clients.
+ *
+ * <p>Every message is sent as a frame: 4 bytes big-endian payload length followed by the
+ * payload in UTF-8. Server listens on loopback interface only.
+ *
+ * @author Andrey Minov
+ */
+public class TcpIngestionServer implements AutoCloseable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_FRAME_SIZE = BUFFER_SIZE - Integer.BYTES;
+  private static final int BUFFER_POOL_CAPACITY = 256;
+  private static final int MAX_BATCH = 1024;
+  private static final long CLOSE_TIMEOUT_SEC = 5;
+
+  /*
+   * Each I/O thread owns a selector and the connections registered with it, so connection state
+   * is never shared between threads. First loop also accepts connections and hands them to loops
+   * in round-robin order through their pending queues.
+   *
+   * Connection reads straight into a pooled direct buffer and frames are decoded from it in
+   * place into a reusable char buffer. Frames decoded during one select round are published
+   * with a single publishAll call, so the queue lock is taken once per round, not per message.
+   */
+  private final PubSubApplication<String> application;
+  private final int port;
+  private final DirectBufferPool bufferPool;
+  private final IoLoop[] loops;
+  private final AtomicInteger nextLoop;
+  private final AtomicLong received;
+  private ServerSocketChannel server;
+  private ExecutorService threads;
+  private volatile boolean running;
+
+  /**
+   * Instantiates a new TCP ingestion server.
+   *
+   * @param application the application to publish messages into.
+   * @param port        the loopback port to listen on, 0 to pick free one.
+   * @param ioThreads   the number of threads serving connections.
+   */
+  public TcpIngestionServer(PubSubApplication<String> application, int port, int ioThreads) {
+    if (ioThreads <= 0) {
+      throw new IllegalArgumentException("Number of I/O threads must be positive!");
+    }
+    this.application = application;
+    this.port = port;
+    this.bufferPool = new DirectBufferPool(BUFFER_SIZE, BUFFER_POOL_CAPACITY);
+    this.loops = new IoLoop[ioThreads];
+    this.nextLoop = new AtomicInteger();
+    this.received = new AtomicLong();
+  }
+
+  /**
+   * Bind server socket and start I/O threads.
+   *
+   * @throws IOException if server socket cannot be opened.
+   */
+  public synchronized void start() throws IOException {
+    if (running) {
+      throw new IllegalStateException("Server is already started!");
+    }
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    server.configureBlocking(false);
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new IoLoop(Selector.open());
+    }
+    server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    running = true;
+    threads = Executors.newFixedThreadPool(loops.length);
+    for (IoLoop loop : loops) {
+      threads.execute(loop);
+    }
+  }
+
+  /**
+   * Address server listens on.
+   *
+   * @return the local address.
+   * @throws IOException if address cannot be obtained.
+   */
+  public InetSocketAddress getLocalAddress() throws IOException {
+    return (InetSocketAddress) server.getLocalAddress();
+  }
+
+  /**
+   * Number of messages published so far.
+   *
+   * @return received message count.
+   */
+  public long getReceivedCount() {
+    return received.get();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    for (IoLoop loop : loops) {
+      loop.selector.wakeup();
+    }
+    threads.shutdown();
+    try {
+      threads.awaitTermination(CLOSE_TIMEOUT_SEC, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server.close();
+    for (IoLoop loop : loops) {
+      // Connection may be handed to the loop after it has exited.
+      loop.closePending();
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+      loop.pending.add(channel);
+      loop.selector.wakeup();
+    }
+  }
+
+  private final class IoLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<SocketChannel> pending;
+    private final List<String> batch;
+    private final CharsetDecoder decoder;
+    private final CharBuffer chars;
+
+    private IoLoop(Selector selector) {
+      this.selector = selector;
+      this.pending = new ConcurrentLinkedQueue<>();
+      this.batch = new ArrayList<>();
+      this.decoder = StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.chars = CharBuffer.allocate(MAX_FRAME_SIZE);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select();
+          registerPending();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            } else if (key.isReadable()) {
+              read(key);
+            }
+          }
+          flush();
+        }
+      } catch (IOException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> "Selector failure.");
+      } finally {
+        for (SelectionKey key : selector.keys()) {
+          if (key.attachment() != null) {
+            disconnect(key);
+          }
+        }
+        closePending();
+        closeQuietly(selector);
+      }
+    }
+
+    private void closePending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        closeQuietly(channel);
+      }
+    }
+
+    private void registerPending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        try {
+          channel.register(selector, SelectionKey.OP_READ, bufferPool.acquire());
+        } catch (IOException e) {
+          Logger.getGlobal().log(Level.WARNING, e, () -> "Cannot register connection.");
+          closeQuietly(channel);
+        }
+      }
+    }
+
+    private void read(SelectionKey key) {
+      ByteBuffer buffer = (ByteBuffer) key.attachment();
+      try {
+        int read = ((SocketChannel) key.channel()).read(buffer);
+        decodeFrames(buffer);
+        if (read < 0) {
+          disconnect(key);
+        }
+      } catch (IOException e) {
+        Logger.getGlobal().log(Level.WARNING, e, () -> "Closing connection.");
+        disconnect(key);
+      }
+    }
+
+    private void decodeFrames(ByteBuffer buffer) throws IOException {
+      buffer.flip();
+      while (buffer.remaining() >= Integer.BYTES) {
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+          throw new IOException("Incorrect frame length " + length);
+        }
+        if (buffer.remaining() < Integer.BYTES + length) {
+          break;
+        }
+        buffer.position(buffer.position() + Integer.BYTES);
+        decode(buffer, length);
+      }
+      buffer.compact();
+    }
+
+    private void decode(ByteBuffer buffer, int length) {
+      int limit = buffer.limit();
+      buffer.limit(buffer.position() + length);
+      chars.clear();
+      decoder.reset();
+      decoder.decode(buffer, chars, true);
+      decoder.flush(chars);
+      chars.flip();
+      buffer.limit(limit);
+      batch.add(chars.toString());
+      if (batch.size() >= MAX_BATCH) {
+        flush();
+      }
+    }
+
+    private void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      try {
+        application.publishAll(batch);
+        received.addAndGet(batch.size());
+      } catch (RuntimeException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> String
+            .format("Cannot publish %d messages", batch.size()));
+      }
+      batch.clear();
+    }
+
+    private void disconnect(SelectionKey key) {
+      key.cancel();
+      closeQuietly(key.channel());
+      ByteBuffer buffer = (ByteBuffer) key.attachment();
+      key.attach(null);
+      bufferPool.release(buffer);
+    }
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    try {
+      closeable.close();
+    } catch (Exception e) {
+      Logger.getGlobal().log(Level.FINE, e, () -> "Error on close.");
+    }
+  }
+}
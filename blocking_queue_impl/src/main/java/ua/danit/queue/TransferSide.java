@@ -0,0 +1,88 @@
+package ua.danit.queue;
+
+/**
+ * One side of a bulk transfer between project queues, created for single transfer. Source side
+ * gives elements from the head of its queue, target side appends them to its queue.
+ *
+ * <p>Methods other than {@link #locked(boolean, Runnable)} and {@link #signal()} are called
+ * holding the lock of the corresponding side. Queue state is updated (size, waiters) once per
+ * transfer in {@link #removed(int)} or {@link #added(int)}, waiting threads are woken after
+ * all locks are released in {@link #signal()}, if queue can not wake them holding the lock.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+interface TransferSide<T> {
+
+  /**
+   * Run action holding the lock of dequeue (source) or enqueue (target) side of the queue.
+   *
+   * @param source true to take lock for removal, false to take lock for insertion.
+   * @param action the action to run.
+   */
+  void locked(boolean source, Runnable action);
+
+  /**
+   * Number of elements which can be removed.
+   *
+   * @return the number of elements.
+   */
+  int available();
+
+  /**
+   * Drop head element if its time to live has elapsed. Dropped element is not given to the
+   * target, but counts as removed.
+   *
+   * @return true if head element was dropped.
+   */
+  default boolean dropExpired() {
+    return false;
+  }
+
+  /**
+   * Head element which is going to be removed next.
+   *
+   * @return the head element.
+   */
+  T peekFirst();
+
+  /**
+   * Remove head element.
+   *
+   * @return the head element.
+   */
+  T removeFirst();
+
+  /**
+   * Finish removal of given number of elements.
+   *
+   * @param count the number of removed elements, including dropped ones.
+   */
+  void removed(int count);
+
+  /**
+   * Number of elements which can be added.
+   *
+   * @return the free space of the queue.
+   */
+  int room();
+
+  /**
+   * Append element to the queue.
+   *
+   * @param element the element.
+   */
+  void addLast(T element);
+
+  /**
+   * Finish insertion of given number of elements.
+   *
+   * @param count the number of added elements.
+   */
+  void added(int count);
+
+  /**
+   * Wake threads waiting for the queue after transfer is finished.
+   */
+  void signal();
+}
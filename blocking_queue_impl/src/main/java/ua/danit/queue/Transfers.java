@@ -0,0 +1,128 @@
+package ua.danit.queue;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bulk transfer of elements between blocking queues.
+ *
+ * @author Andrey Minov
+ */
+final class Transfers {
+  private static final Object TIE_LOCK = new Object();
+
+  private Transfers() {
+  }
+
+  /*
+   * Transfer holds dequeue lock of source and enqueue lock of target at the same time, taking
+   * each of them once, so that exactly as many elements as fit into the target are moved and
+   * nothing has to be returned into the source. Locks of two queues are always taken in the
+   * same order (by identity hash of the queues), so that transfers in opposite directions can
+   * not deadlock. Each queue takes at most one of own locks during transfer, and never
+   * holds lock of another queue while waiting for its own.
+   *
+   * Target which is not project queue is filled with offer while source lock is held, and
+   * element is removed from source only if target accepted it.
+   */
+
+  /**
+   * Move up to given number of elements from the head of source queue to the tail of target.
+   *
+   * @param source      the queue to take elements from.
+   * @param sourceSide  the transfer side of source queue.
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @param <T>         the element type.
+   * @return the number of moved elements.
+   */
+  static <T> int transfer(BlockingQueue<T> source, TransferSide<T> sourceSide,
+                          BlockingQueue<? super T> target, int maxElements) {
+    if (target == null) {
+      throw new NullPointerException("Target queue cannot be null!");
+    }
+    if (target == source) {
+      throw new IllegalArgumentException("Queue cannot be transferred to itself!");
+    }
+    if (maxElements <= 0) {
+      return 0;
+    }
+    TransferSide<? super T> targetSide = sideOf(target);
+    int[] moved = new int[1];
+    if (targetSide == null) {
+      sourceSide.locked(true, () -> moved[0] = offerAll(sourceSide, target, maxElements));
+    } else {
+      Runnable move = () -> moved[0] = move(sourceSide, targetSide, maxElements);
+      int sourceHash = System.identityHashCode(source);
+      int targetHash = System.identityHashCode(target);
+      if (sourceHash < targetHash) {
+        sourceSide.locked(true, () -> targetSide.locked(false, move));
+      } else if (sourceHash > targetHash) {
+        targetSide.locked(false, () -> sourceSide.locked(true, move));
+      } else {
+        synchronized (TIE_LOCK) {
+          sourceSide.locked(true, () -> targetSide.locked(false, move));
+        }
+      }
+      targetSide.signal();
+    }
+    sourceSide.signal();
+    return moved[0];
+  }
+
+  private static <T> int move(TransferSide<T> source, TransferSide<? super T> target,
+                              int maxElements) {
+    int available = source.available();
+    int limit = Math.min(maxElements, target.room());
+    int removed = 0;
+    int number = 0;
+    while (number < limit && removed < available) {
+      removed++;
+      if (!source.dropExpired()) {
+        target.addLast(source.removeFirst());
+        number++;
+      }
+    }
+    source.removed(removed);
+    target.added(number);
+    return number;
+  }
+
+  private static <T> int offerAll(TransferSide<T> source, BlockingQueue<? super T> target,
+                                  int maxElements) {
+    int number = 0;
+    int removed = 0;
+    int available = source.available();
+    try {
+      while (number < maxElements && removed < available) {
+        if (source.dropExpired()) {
+          removed++;
+          continue;
+        }
+        if (!target.offer(source.peekFirst())) {
+          break;
+        }
+        source.removeFirst();
+        removed++;
+        number++;
+      }
+    } finally {
+      source.removed(removed);
+    }
+    return number;
+  }
+
+  /**
+   * Transfer side of project queue.
+   *
+   * @param queue the queue.
+   * @param <T>   the element type.
+   * @return the new transfer side or null if queue is not one of project queues.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> TransferSide<T> sideOf(BlockingQueue<T> queue) {
+    if (queue instanceof ProjectQueue) {
+      return ((ProjectQueue<T>) queue).transferSide();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,350 @@
+package ua.danit.queue;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implementation of thread safe {@link java.util.concurrent.BlockingQueue}, using single lock
+ * and separate conditions for waiting producers and consumers.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+public class TwoConditionBlockingQueue<T> extends AbstractQueue<T>
+    implements BlockingQueue<T>, ProjectQueue<T> {
+
+  /*
+   * Same single lock as in SingleBlockingQueue, but consumers wait on not empty condition and
+   * producers on not full one. Each inserted element signals exactly one consumer and each
+   * removed element exactly one producer, so a thread is woken only when there is work for it
+   * and never goes straight back to sleep because other side was woken instead.
+   *
+   * Storage is preallocated circular array when capacity is finite, see CircularArrayQueue.
+   *
+   * Signal is never lost: thread signalled and then interrupted or timed out still returns
+   * normally from await, so it consumes the signal it got.
+   */
+  private final int capacity;
+  private final Lock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final CircularArrayQueue<T> queue;
+  private final Watchers watchers;
+
+  /**
+   * Instantiates a new two condition blocking queue with unlimited capacity.
+   */
+  public TwoConditionBlockingQueue() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Instantiates a new two condition blocking queue.
+   *
+   * @param capacity the max queue capacity
+   */
+  public TwoConditionBlockingQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive!");
+    }
+    this.capacity = capacity;
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.notFull = lock.newCondition();
+    this.queue = new CircularArrayQueue<>(capacity);
+    this.watchers = new Watchers();
+  }
+
+  @Override
+  public boolean offer(T t) {
+    checkNotNull(t);
+    lock.lock();
+    try {
+      if (queue.size() == capacity) {
+        return false;
+      }
+      enqueue(t);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(T t, long timeout, TimeUnit unit) throws InterruptedException {
+    checkNotNull(t);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (queue.size() == capacity) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(t);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(T t) throws InterruptedException {
+    checkNotNull(t);
+    lock.lockInterruptibly();
+    try {
+      while (queue.size() == capacity) {
+        notFull.await();
+      }
+      enqueue(t);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T poll() {
+    lock.lock();
+    try {
+      return queue.isEmpty() ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return capacity - queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException("Queue cannot be drain to itself!");
+    }
+    lock.lock();
+    try {
+      int number = 0;
+      try {
+        while (number < maxElements && !queue.isEmpty()) {
+          c.add(queue.poll());
+          number++;
+        }
+      } finally {
+        // One producer per freed slot, signal without waiters costs nothing.
+        for (int i = 0; i < number; i++) {
+          notFull.signal();
+        }
+      }
+      return number;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T peek() {
+    lock.lock();
+    try {
+      return queue.peek();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    lock.lock();
+    try {
+      return queue.contains(o);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    lock.lock();
+    try {
+      boolean result = queue.remove(o);
+      if (result) {
+        removed();
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void removed() {
+    notFull.signal();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new WeakIterator<>(queue, this::locked, this::removed);
+  }
+
+  private void locked(Runnable action) {
+    lock.lock();
+    try {
+      action.run();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Move up to given number of elements from the head of this queue to the tail of target,
+   * see {@link TwoWayLockingQueue#transferTo(BlockingQueue, int)}.
+   *
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @return the number of moved elements.
+   */
+  public int transferTo(BlockingQueue<? super T> target, int maxElements) {
+    return Transfers.transfer(this, transferSide(), target, maxElements);
+  }
+
+  @Override
+  public TransferSide<T> transferSide() {
+    return new Side();
+  }
+
+  @Override
+  public Watchers watchers() {
+    return watchers;
+  }
+
+  private void enqueue(T t) {
+    queue.offer(t);
+    notEmpty.signal();
+    if (queue.size() == 1) {
+      watchers.signal();
+    }
+  }
+
+  private T dequeue() {
+    T result = queue.poll();
+    notFull.signal();
+    return result;
+  }
+
+  private static void checkNotNull(Object o) {
+    if (o == null) {
+      throw new NullPointerException("Queue does not permit null elements!");
+    }
+  }
+
+  private final class Side implements TransferSide<T> {
+
+    @Override
+    public void locked(boolean source, Runnable action) {
+      TwoConditionBlockingQueue.this.locked(action);
+    }
+
+    @Override
+    public int available() {
+      return queue.size();
+    }
+
+    @Override
+    public T peekFirst() {
+      return queue.peek();
+    }
+
+    @Override
+    public T removeFirst() {
+      return queue.poll();
+    }
+
+    @Override
+    public void removed(int count) {
+      for (int i = 0; i < count; i++) {
+        notFull.signal();
+      }
+    }
+
+    @Override
+    public int room() {
+      return capacity - queue.size();
+    }
+
+    @Override
+    public void addLast(T element) {
+      queue.offer(element);
+    }
+
+    @Override
+    public void added(int count) {
+      for (int i = 0; i < count; i++) {
+        notEmpty.signal();
+      }
+      if (count > 0 && queue.size() == count) {
+        watchers.signal();
+      }
+    }
+
+    @Override
+    public void signal() {
+      // Waiting threads are already signalled holding the lock.
+    }
+  }
+}
@@ -1,15 +1,19 @@
 package ua.danit.queue;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 /**
  * Implementation of thread safe {@link java.util.concurrent.BlockingQueue},
@@ -18,7 +22,9 @@ import java.util.concurrent.locks.ReentrantLock;
  * @param <T> the type parameter
  * @author Andrey Minov
  */
-public class TwoWayLockingQueue<T> implements BlockingQueue<T> {
+public class TwoWayLockingQueue<T> implements BlockingQueue<T>, ProjectQueue<T> {
+  private static final long MAX_TTL_NANOS = Long.MAX_VALUE >> 1;
+
   /*
    * Two conditions and locks are using for synchronization purposes.
    * One lock is responsible to enqueing and one for dequeing. This make
@@ -26,15 +32,55 @@ public class TwoWayLockingQueue<T> implements BlockingQueue<T> {
    * Only one possible way it was block each other is then queue is full or empty.
    * For this purpose atomic size variable is used, and also it will be linearization
    * point for queue process.
-   * */
+   *
+   * Elements are kept in own singly linked list which starts with dummy node. Enqueuers only
+   * touch the last node and dequeuers only the head, so, unlike shared java.util.LinkedList,
+   * both sides never modify the same node while the queue is not empty. Atomic size publishes
+   * the node from enqueuer to dequeuer. Operations touching the middle of the list take both
+   * locks, always enqueue lock first.
+   *
+   * With finite capacity all nodes are preallocated and linked into a ring: dummy head,
+   * elements up to last node, then free nodes leading back to head. Enqueuer fills the node
+   * following last and dequeuer turns the head it leaves into a free one, so next links never
+   * change during put and take and nothing is allocated. Size below capacity guarantees that
+   * node following last is free. Node removed from the middle is moved behind last.
+   *
+   * Iterator walks nodes without any lock. Node fields and head are volatile, and every node
+   * is stamped with sequence number of its enqueue. Iterator trusts link of node it stands on
+   * only while the node still holds the same element with the same sequence: dequeued node
+   * loses its element (and in unlimited queue links to itself), removed one loses element
+   * before it is relinked, reused one gets new sequence. Otherwise iterator restarts from
+   * head and skips sequences it has passed already, which are increasing along the list.
+   *
+   * Size and remaining capacity come from atomic size, peek and contains are validated
+   * against nodes and head the same way, so none of observers take any lock.
+   *
+   * Critical sections are only few instructions long, so locks spin for a while before parking
+   * contending thread, see AdaptiveSpinLock.
+   *
+   * Waiters are woken one at a time. Whoever wakes up and sees more elements (or more space)
+   * wakes the next one, so no thread is woken for nothing.
+   *
+   * Element with time to live gets its deadline in the node, so expiry allocates nothing.
+   * Nobody scans the list for expired elements: consumer drops them when they reach the head,
+   * and drainTo and transferTo drop all expired elements they pass reading the clock once, so
+   * expired element never gets a fresh deadline in another queue. Dropped elements free space
+   * same as taken ones. Until then they count in size and are seen by peek and iterator.
+   */
 
   private final int capacity;
   private final Lock enqLock;
   private final Condition fullCondition;
   private final Lock deqLock;
   private final Condition emptyCondition;
-  private final Queue<T> queue;
   private final AtomicInteger size;
+  private final Watchers watchers;
+  private final boolean ring;
+  private final ToLongFunction<? super T> ttl;
+  private final AtomicLong expired;
+  private volatile Node<T> head;
+  private Node<T> last;
+  private long enqueued;
 
   /**
    * Instantiates a new blocking queue bases on two way locking algorithm and unlimited capacity.
@@ -44,72 +90,129 @@ public class TwoWayLockingQueue<T> implements BlockingQueue<T> {
   }
 
   /**
-   * Instantiates a new blocking queue bases on two way locking algorithm.
+   * Instantiates a new blocking queue bases on two way locking algorithm. When capacity is
+   * finite (not Integer.MAX_VALUE), nodes for all elements are allocated upfront.
    *
    * @param capacity the capacity of the queue.
    */
   public TwoWayLockingQueue(int capacity) {
+    this(capacity, false);
+  }
+
+  /**
+   * Instantiates a new blocking queue bases on two way locking algorithm.
+   *
+   * @param capacity the capacity of the queue.
+   * @param fair     true to give locks to producers and consumers in order of arrival.
+   */
+  public TwoWayLockingQueue(int capacity, boolean fair) {
+    this(capacity, fair, null);
+  }
+
+  /**
+   * Instantiates a new blocking queue, where every element expires after the same time since
+   * it was added. Consumers skip expired elements.
+   *
+   * @param capacity the capacity of the queue.
+   * @param ttl      the time to live of elements.
+   */
+  public TwoWayLockingQueue(int capacity, Duration ttl) {
+    this(capacity, false, fixedTtl(ttl));
+  }
+
+  /**
+   * Instantiates a new blocking queue, where every element expires after its own time since it
+   * was added. Consumers skip expired elements.
+   *
+   * @param capacity the capacity of the queue.
+   * @param fair     true to give locks to producers and consumers in order of arrival.
+   * @param ttlNanos the time to live of element in nanoseconds, or null if elements never
+   *                 expire.
+   */
+  public TwoWayLockingQueue(int capacity, boolean fair, ToLongFunction<? super T> ttlNanos) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive!");
+    }
     this.capacity = capacity;
-    this.queue = new LinkedList<>();
+    this.ring = capacity != Integer.MAX_VALUE;
+    this.head = new Node<>(null, -1);
+    this.last = head;
+    if (ring) {
+      Node<T> node = head;
+      for (int i = 0; i < capacity; i++) {
+        node.next = new Node<>(null, -1);
+        node = node.next;
+      }
+      node.next = head;
+    }
 
-    this.enqLock = new ReentrantLock();
-    this.deqLock = new ReentrantLock();
+    this.enqLock = new AdaptiveSpinLock(fair);
+    this.deqLock = new AdaptiveSpinLock(fair);
 
     this.fullCondition = enqLock.newCondition();
     this.emptyCondition = deqLock.newCondition();
 
     this.size = new AtomicInteger();
+    this.watchers = new Watchers();
+    this.ttl = ttlNanos;
+    this.expired = new AtomicLong();
   }
 
   @Override
   public void put(T t) throws InterruptedException {
+    checkNotNull(t);
     int oldSize;
-    // When we put element into then queue, we lock only deq. lock.
+    // When we put element into then queue, we lock only enq. lock.
     // If size is bigger then capacity we wait is space become free on await full condition.
     // We do this in the queue, because application can abandon lock before capacity requiments
     // wont fit.
-    enqLock.lock();
+    enqLock.lockInterruptibly();
     try {
       while (size.get() == capacity) {
         fullCondition.await();
       }
+      enqueue(t);
       oldSize = size.getAndIncrement();
-      queue.offer(t);
+      if (oldSize + 1 < capacity) {
+        fullCondition.signal();
+      }
     } finally {
       enqLock.unlock();
     }
-    signalEmpty(oldSize);
+    notEmpty(oldSize, 1);
   }
 
   @Override
   public boolean offer(T t) {
+    checkNotNull(t);
     int oldSize;
-    boolean result;
     enqLock.lock();
     try {
       if (size.get() == capacity) {
         return false;
       }
+      enqueue(t);
       oldSize = size.getAndIncrement();
-      result = queue.offer(t);
+      if (oldSize + 1 < capacity) {
+        fullCondition.signal();
+      }
     } finally {
       enqLock.unlock();
     }
-    signalEmpty(oldSize);
-    return result;
-
+    notEmpty(oldSize, 1);
+    return true;
   }
 
   @Override
   public boolean offer(T t, long timeout, TimeUnit unit) throws InterruptedException {
+    checkNotNull(t);
     int oldSize;
-    boolean result;
     long nanos = unit.toNanos(timeout);
-    // When we put element into then queue, we lock only deq. lock.
+    // When we put element into then queue, we lock only enq. lock.
     // If size is bigger then capacity we wait is space become free on await full condition.
     // We do this in the queue, because application can abandon lock before capacity requiments
     // wont fit.
-    enqLock.lock();
+    enqLock.lockInterruptibly();
     try {
       while (size.get() == capacity) {
         if (nanos <= 0) {
@@ -117,82 +220,122 @@ public class TwoWayLockingQueue<T> implements BlockingQueue<T> {
         }
         nanos = fullCondition.awaitNanos(nanos);
       }
+      enqueue(t);
       oldSize = size.getAndIncrement();
-      result = queue.offer(t);
+      if (oldSize + 1 < capacity) {
+        fullCondition.signal();
+      }
     } finally {
       enqLock.unlock();
     }
-    signalEmpty(oldSize);
-    return result;
+    notEmpty(oldSize, 1);
+    return true;
   }
 
   @Override
   public T take() throws InterruptedException {
-    // During take we lock enq. lock and await for queue to have more elements
+    // During take we lock deq. lock and await for queue to have more elements
     // on empty conditions. We do this in the queue, because application
     // can abandon lock before capacity requiments
     // wont fit.
-    int oldSize;
-    T result;
-    deqLock.lock();
+    int oldSize = 0;
+    int removed = 0;
+    T result = null;
+    deqLock.lockInterruptibly();
     try {
-      while (size.get() == 0) {
-        emptyCondition.await();
+      while (result == null) {
+        while (size.get() == 0) {
+          emptyCondition.await();
+        }
+        result = dequeueLive();
+        int current = size.getAndDecrement();
+        oldSize = Math.max(oldSize, current);
+        removed++;
+        if (result != null && current > 1) {
+          emptyCondition.signal();
+        }
       }
-      oldSize = size.getAndDecrement();
-      result = queue.poll();
     } finally {
       deqLock.unlock();
+      // Expired elements dropped before interruption have freed space as well.
+      if (removed > 0) {
+        signalNotFull(oldSize, removed);
+      }
     }
-    signalFull(oldSize);
     return result;
   }
 
   @Override
   public T poll() {
-    int oldSize;
-    T result;
+    int oldSize = 0;
+    int removed = 0;
+    T result = null;
     deqLock.lock();
     try {
-      if (size.get() == 0) {
-        return null;
+      while (result == null && size.get() > 0) {
+        result = dequeueLive();
+        int current = size.getAndDecrement();
+        oldSize = Math.max(oldSize, current);
+        removed++;
+        if (result != null && current > 1) {
+          emptyCondition.signal();
+        }
       }
-      oldSize = size.getAndDecrement();
-      result = queue.poll();
     } finally {
       deqLock.unlock();
     }
-    signalFull(oldSize);
+    if (removed > 0) {
+      signalNotFull(oldSize, removed);
+    }
     return result;
   }
 
   @Override
   public T poll(long timeout, TimeUnit unit) throws InterruptedException {
-    // During take we lock enq. lock and await for queue to have more elements
+    // During take we lock deq. lock and await for queue to have more elements
     // on empty conditions.
     // We do this in the queue, because application can abandon lock before capacity requiments
     // wont fit.
-    int oldSize;
-    T result;
+    int oldSize = 0;
+    int removed = 0;
+    T result = null;
     long nanos = unit.toNanos(timeout);
-    deqLock.lock();
+    deqLock.lockInterruptibly();
     try {
-      while (size.get() == 0) {
-        if (nanos <= 0) {
-          return null;
+      while (result == null) {
+        while (size.get() == 0) {
+          if (nanos <= 0) {
+            return null;
+          }
+          nanos = emptyCondition.awaitNanos(nanos);
+        }
+        result = dequeueLive();
+        int current = size.getAndDecrement();
+        oldSize = Math.max(oldSize, current);
+        removed++;
+        if (result != null && current > 1) {
+          emptyCondition.signal();
         }
-        nanos = emptyCondition.awaitNanos(nanos);
       }
-      oldSize = size.decrementAndGet();
-      result = queue.poll();
     } finally {
       deqLock.unlock();
+      if (removed > 0) {
+        signalNotFull(oldSize, removed);
+      }
     }
-    signalFull(oldSize);
     return result;
   }
 
 
+  /**
+   * Number of elements dropped by consumers because their time to live has passed.
+   *
+   * @return the expired element count.
+   */
+  public long getExpiredCount() {
+    return expired.get();
+  }
+
   @Override
   public int remainingCapacity() {
     return capacity - size.get();
@@ -210,270 +353,606 @@ public class TwoWayLockingQueue<T> implements BlockingQueue<T> {
 
   @Override
   public boolean add(T t) {
-    int oldSize;
-    boolean result;
-    enqLock.lock();
-    try {
-      if (size.get() == capacity) {
-        throw new RuntimeException("Queue is full!");
-      }
-      oldSize = size.getAndIncrement();
-      result = queue.offer(t);
-    } finally {
-      enqLock.unlock();
+    if (!offer(t)) {
+      throw new IllegalStateException("Queue is full!");
     }
-    signalEmpty(oldSize);
-    return result;
+    return true;
   }
 
   @Override
   public T remove() {
-    int oldSize;
-    T result;
-    deqLock.lock();
-    try {
-      if (size.get() == 0) {
-        throw new RuntimeException("Queue is full!");
-      }
-      oldSize = size.getAndDecrement();
-      result = queue.poll();
-    } finally {
-      deqLock.unlock();
+    T result = poll();
+    if (result == null) {
+      throw new NoSuchElementException("Queue is empty!");
     }
-    signalFull(oldSize);
     return result;
   }
 
   @Override
   public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
     int oldSize = -1;
-    boolean result;
-    deqLock.lock();
+    fullyLock();
     try {
-      result = queue.remove(o);
-      if (result) {
-        oldSize = size.getAndDecrement();
+      for (Node<T> previous = head; previous != last; previous = previous.next) {
+        if (o.equals(previous.next.item)) {
+          unlink(previous.next, previous);
+          oldSize = size.getAndDecrement();
+          break;
+        }
       }
     } finally {
-      deqLock.unlock();
+      fullyUnlock();
     }
-    if (result) {
-      signalFull(oldSize);
+    if (oldSize < 0) {
+      return false;
     }
-    return result;
+    signalNotFull(oldSize, 1);
+    return true;
   }
 
   @Override
   public T element() {
-    enqLock.lock();
-    try {
-      return queue.element();
-    } finally {
-      enqLock.unlock();
+    T result = peek();
+    if (result == null) {
+      throw new NoSuchElementException("Queue is empty!");
     }
+    return result;
   }
 
   @Override
   public T peek() {
-    enqLock.lock();
-    try {
-      return queue.peek();
-    } finally {
-      enqLock.unlock();
+    // No lock is taken, head with its sequence is the version read is validated against.
+    while (true) {
+      Node<T> dummy = head;
+      long seq = dummy.seq;
+      Node<T> first = dummy.next;
+      T item = first == null ? null : first.item;
+      // Node following head may be already filled by enqueuer which has not yet published it
+      // by size increment, so queue is empty unless size says otherwise.
+      if (size.get() == 0) {
+        return null;
+      }
+      if (item != null && head == dummy && dummy.seq == seq && dummy.next == first) {
+        return item;
+      }
     }
   }
 
   @Override
   public boolean contains(Object o) {
-    enqLock.lock();
-    try {
-      return queue.contains(o);
-    } finally {
-      enqLock.unlock();
+    if (o == null) {
+      return false;
     }
+    // Weakly consistent iterator validates every node it reads and sees all elements present
+    // in the queue at the moment it reaches the end, so the answer is exact at that moment.
+    for (T element : this) {
+      if (o.equals(element)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
   public int drainTo(Collection<? super T> c) {
-    int oldSize;
-    deqLock.lock();
-    try {
-      if (c == queue) {
-        throw new IllegalArgumentException("Queue cannot be drain to itself!");
-      }
-      c.addAll(queue);
-      queue.clear();
-      oldSize = size.getAndSet(0);
-    } finally {
-      deqLock.unlock();
-    }
-    signalEmpty(oldSize);
-    return oldSize;
+    return drainTo(c, Integer.MAX_VALUE);
   }
 
   @Override
   public int drainTo(Collection<? super T> c, int maxElements) {
-    int number;
-    int oldSize;
+    if (c == this) {
+      throw new IllegalArgumentException("Queue cannot be drain to itself!");
+    }
+    if (maxElements <= 0) {
+      return 0;
+    }
+    int number = 0;
+    int removed = 0;
+    int oldSize = 0;
     deqLock.lock();
     try {
-      if (c == queue) {
-        throw new IllegalArgumentException("Queue cannot be drain to itself!");
-      }
-      number = 0;
-      T element;
-      while (number < maxElements && (element = queue.poll()) != null) {
-        c.add(element);
-        number++;
+      int available = size.get();
+      long now = ttl == null ? 0 : System.nanoTime();
+      try {
+        while (number < maxElements && removed < available) {
+          if (ttl != null && now - head.next.deadline >= 0) {
+            dequeue();
+            removed++;
+            expired.incrementAndGet();
+            continue;
+          }
+          // Element leaves the queue only once collection has taken it.
+          c.add(head.next.item);
+          dequeue();
+          removed++;
+          number++;
+        }
+      } finally {
+        // Collection may throw on element, still account those which were moved.
+        if (removed > 0) {
+          oldSize = size.getAndAdd(-removed);
+        }
       }
-      oldSize = size.getAndAdd(-number);
     } finally {
       deqLock.unlock();
     }
-    signalEmpty(oldSize);
+    if (removed > 0) {
+      signalNotFull(oldSize, removed);
+    }
     return number;
   }
 
 
+  /**
+   * Move up to given number of elements from the head of this queue to the tail of target.
+   * Elements which do not fit into target are left in this queue.
+   *
+   * <p>When target is one of the project queues, the whole segment is moved holding dequeue
+   * lock of this queue and enqueue lock of target, each taken once, and waiting consumers of
+   * target and producers of this queue are woken once per transfer instead of once per
+   * element. Any other target is filled with {@link BlockingQueue#offer(Object)}.
+   *
+   * @param target      the queue to add elements to.
+   * @param maxElements the max number of elements to move.
+   * @return the number of moved elements.
+   */
+  public int transferTo(BlockingQueue<? super T> target, int maxElements) {
+    return Transfers.transfer(this, transferSide(), target, maxElements);
+  }
+
+  @Override
+  public TransferSide<T> transferSide() {
+    return new Side();
+  }
+
+  @Override
+  public Watchers watchers() {
+    return watchers;
+  }
+
   @Override
   public Iterator<T> iterator() {
-    enqLock.lock();
-    deqLock.lock();
-    try {
-      return new LinkedList<>(queue).iterator();
-    } finally {
-      deqLock.unlock();
-      enqLock.unlock();
-    }
+    return new Itr();
   }
 
   @Override
   public Object[] toArray() {
-    enqLock.lock();
-    deqLock.lock();
-    try {
-      return queue.toArray();
-    } finally {
-      deqLock.unlock();
-      enqLock.unlock();
-    }
+    return toList().toArray();
   }
 
   @Override
   public <T1> T1[] toArray(T1[] a) {
-    enqLock.lock();
-    deqLock.lock();
-    try {
-      return queue.toArray(a);
-    } finally {
-      deqLock.unlock();
-      enqLock.unlock();
-    }
+    return toList().toArray(a);
   }
 
   @Override
   public boolean containsAll(Collection<?> c) {
-    enqLock.lock();
-    try {
-      return queue.containsAll(c);
-    } finally {
-      enqLock.unlock();
+    for (Object element : c) {
+      if (!contains(element)) {
+        return false;
+      }
     }
+    return true;
   }
 
   @Override
   public boolean addAll(Collection<? extends T> c) {
-    int oldSize = -1;
-    boolean result;
+    if (c == this) {
+      throw new IllegalArgumentException("Queue cannot be added to itself!");
+    }
+    for (T element : c) {
+      checkNotNull(element);
+    }
+    int oldSize;
+    int number = c.size();
+    if (number == 0) {
+      return false;
+    }
     enqLock.lock();
     try {
-      if (c == null || size.get() + c.size() > capacity) {
+      if (size.get() + number > capacity) {
         return false;
       }
-      result = queue.addAll(c);
-      if (result) {
-        oldSize = size.getAndAdd(c.size());
+      for (T element : c) {
+        enqueue(element);
+      }
+      oldSize = size.getAndAdd(number);
+      if (oldSize + number < capacity) {
+        fullCondition.signal();
       }
     } finally {
       enqLock.unlock();
     }
-    if (result) {
-      signalEmpty(oldSize);
-    }
-    return result;
+    notEmpty(oldSize, number);
+    return true;
   }
 
   @Override
   public boolean removeAll(Collection<?> c) {
-    int oldSize = -1;
-    boolean result;
-    deqLock.lock();
+    return removeMatching(c::contains, true);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    return removeMatching(c::contains, false);
+  }
+
+  @Override
+  public void clear() {
+    int oldSize;
+    fullyLock();
     try {
-      result = queue.removeAll(c);
-      if (result) {
-        oldSize = size.getAndSet(queue.size());
+      for (Node<T> node = head; node != last; ) {
+        node = node.next;
+        node.item = null;
       }
+      if (!ring) {
+        head.next = null;
+      }
+      last = head;
+      oldSize = size.getAndSet(0);
     } finally {
-      deqLock.unlock();
+      fullyUnlock();
     }
-    if (result) {
-      signalEmpty(oldSize);
+    if (oldSize > 0) {
+      signalNotFull(oldSize, oldSize);
     }
-    return result;
   }
 
-  @Override
-  public boolean retainAll(Collection<?> c) {
+  private boolean removeMatching(Predicate<Object> predicate, boolean matching) {
     int oldSize = -1;
-    boolean result;
-    deqLock.lock();
+    int removed = 0;
+    fullyLock();
     try {
-      result = queue.retainAll(c);
-      if (result) {
-        oldSize = size.getAndSet(queue.size());
+      Node<T> previous = head;
+      while (previous != last) {
+        Node<T> node = previous.next;
+        if (predicate.test(node.item) == matching) {
+          unlink(node, previous);
+          removed++;
+        } else {
+          previous = node;
+        }
+      }
+      if (removed > 0) {
+        oldSize = size.getAndAdd(-removed);
       }
     } finally {
-      deqLock.unlock();
+      fullyUnlock();
     }
-    if (result) {
-      signalEmpty(oldSize);
+    if (removed > 0) {
+      signalNotFull(oldSize, removed);
+    }
+    return removed > 0;
+  }
+
+  private List<T> toList() {
+    List<T> result = new ArrayList<>(size.get());
+    for (T element : this) {
+      result.add(element);
     }
     return result;
   }
 
-  @Override
-  public void clear() {
-    int oldSize;
+  private void enqueue(T t) {
+    Node<T> node;
+    if (ring) {
+      node = last.next;
+      node.seq = enqueued++;
+      node.item = t;
+    } else {
+      node = new Node<>(t, enqueued++);
+    }
+    if (ttl != null) {
+      node.deadline = System.nanoTime() + Math.min(ttl.applyAsLong(t), MAX_TTL_NANOS);
+    }
+    if (!ring) {
+      last.next = node;
+    }
+    last = node;
+  }
+
+  private T dequeue() {
+    // Old dummy head is dropped (or becomes free node of the ring), first node becomes new dummy.
+    Node<T> oldHead = head;
+    Node<T> first = oldHead.next;
+    head = first;
+    if (!ring) {
+      oldHead.next = oldHead;
+    }
+    T result = first.item;
+    first.item = null;
+    return result;
+  }
+
+  private T dequeueLive() {
+    // Deadline is read before dequeue turns the node into the new dummy head.
+    long deadline = head.next.deadline;
+    T result = dequeue();
+    if (ttl != null && System.nanoTime() - deadline >= 0) {
+      expired.incrementAndGet();
+      return null;
+    }
+    return result;
+  }
+
+  private void unlink(Node<T> node, Node<T> previous) {
+    node.item = null;
+    previous.next = node.next;
+    if (last == node) {
+      last = previous;
+    }
+    if (ring) {
+      node.next = last.next;
+      last.next = node;
+    }
+  }
+
+  private void fullyLock() {
+    enqLock.lock();
     deqLock.lock();
-    try {
-      queue.clear();
-      oldSize = size.getAndSet(0);
-    } finally {
-      deqLock.unlock();
+  }
+
+  private void fullyUnlock() {
+    deqLock.unlock();
+    enqLock.unlock();
+  }
+
+  private void notEmpty(int oldSize, int added) {
+    signalNotEmpty(oldSize, added);
+    if (oldSize == 0) {
+      watchers.signal();
     }
-    signalEmpty(oldSize);
   }
 
-  private void signalEmpty(int oldSize) {
-    // Check is queue was empty at time we insert entry. Signal empty wait condition.
+  /**
+   * Wake consumers after elements were added, called without holding any lock.
+   *
+   * @param oldSize the size of the queue before elements were added.
+   * @param added   the number of added elements.
+   */
+  void signalNotEmpty(int oldSize, int added) {
+    // Check is queue was empty at time we insert entry. Signal empty wait condition,
+    // woken consumer wakes the next one if there are more elements.
     if (oldSize == 0) {
       deqLock.lock();
       try {
-        emptyCondition.signalAll();
+        emptyCondition.signal();
       } finally {
         deqLock.unlock();
       }
     }
   }
 
-  private void signalFull(int oldSize) {
-    if (oldSize == capacity - 1) {
+  /**
+   * Wake producers after elements were removed, called without holding any lock.
+   *
+   * @param oldSize the size of the queue before elements were removed.
+   * @param removed the number of removed elements.
+   */
+  void signalNotFull(int oldSize, int removed) {
+    // Check is queue was full at time we remove entry. Signal full wait condition,
+    // woken producer wakes the next one if there is more space.
+    if (oldSize == capacity) {
       enqLock.lock();
       try {
-        fullCondition.signalAll();
+        fullCondition.signal();
       } finally {
         enqLock.unlock();
       }
     }
   }
+
+  private static <T> ToLongFunction<T> fixedTtl(Duration ttl) {
+    if (ttl.isNegative() || ttl.isZero()) {
+      throw new IllegalArgumentException("Time to live must be positive!");
+    }
+    long nanos = ttl.toNanos();
+    return element -> nanos;
+  }
+
+  private static void checkNotNull(Object o) {
+    if (o == null) {
+      throw new NullPointerException("Queue does not permit null elements!");
+    }
+  }
+
+  private boolean removeNode(Node<T> target, long seq) {
+    int oldSize = -1;
+    fullyLock();
+    try {
+      for (Node<T> previous = head; previous != last; previous = previous.next) {
+        Node<T> node = previous.next;
+        if (node == target) {
+          if (node.seq == seq && node.item != null) {
+            unlink(node, previous);
+            oldSize = size.getAndDecrement();
+          }
+          break;
+        }
+      }
+    } finally {
+      fullyUnlock();
+    }
+    if (oldSize < 0) {
+      return false;
+    }
+    signalNotFull(oldSize, 1);
+    return true;
+  }
+
+  private final class Side implements TransferSide<T> {
+    private final long now = ttl == null ? 0 : System.nanoTime();
+    private int oldSize;
+    private int count;
+    private boolean removal;
+
+    @Override
+    public void locked(boolean source, Runnable action) {
+      Lock lock = source ? deqLock : enqLock;
+      lock.lock();
+      try {
+        action.run();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public int available() {
+      return size.get();
+    }
+
+    @Override
+    public boolean dropExpired() {
+      if (ttl == null || now - head.next.deadline < 0) {
+        return false;
+      }
+      dequeue();
+      expired.incrementAndGet();
+      return true;
+    }
+
+    @Override
+    public T peekFirst() {
+      return head.next.item;
+    }
+
+    @Override
+    public T removeFirst() {
+      return dequeue();
+    }
+
+    @Override
+    public void removed(int count) {
+      // Size is updated once for the whole segment, same as in drainTo.
+      if (count > 0) {
+        this.oldSize = size.getAndAdd(-count);
+        this.count = count;
+        this.removal = true;
+      }
+    }
+
+    @Override
+    public int room() {
+      return capacity - size.get();
+    }
+
+    @Override
+    public void addLast(T element) {
+      enqueue(element);
+    }
+
+    @Override
+    public void added(int count) {
+      if (count > 0) {
+        this.oldSize = size.getAndAdd(count);
+        this.count = count;
+      }
+    }
+
+    @Override
+    public void signal() {
+      if (count == 0) {
+        return;
+      }
+      if (removal) {
+        signalNotFull(oldSize, count);
+      } else {
+        notEmpty(oldSize, count);
+      }
+    }
+  }
+
+  private static final class Node<T> {
+    private volatile T item;
+    private volatile Node<T> next;
+    private volatile long seq;
+    // Written before the node is published by size increment, read only by dequeuers.
+    private long deadline;
+
+    private Node(T item, long seq) {
+      this.seq = seq;
+      this.item = item;
+    }
+  }
+
+  /**
+   * Weakly consistent iterator: returns elements in queue order, each at most once, sees every
+   * element present during whole iteration and never blocks producers or consumers.
+   */
+  private final class Itr implements Iterator<T> {
+    private Node<T> lastNode;
+    private long lastSeq = -1;
+    private Node<T> nextNode;
+    private T nextItem;
+    private long nextSeq;
+
+    @Override
+    public boolean hasNext() {
+      if (nextItem == null) {
+        advance();
+      }
+      return nextItem != null;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      lastNode = nextNode;
+      lastSeq = nextSeq;
+      nextNode = null;
+      T result = nextItem;
+      nextItem = null;
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      if (lastNode == null) {
+        throw new IllegalStateException("Next was not called!");
+      }
+      removeNode(lastNode, lastSeq);
+      lastNode = null;
+    }
+
+    private void advance() {
+      Node<T> node = lastNode;
+      long seq = lastSeq;
+      if (node == null) {
+        node = head;
+      }
+      while (true) {
+        Node<T> candidate = node.next;
+        T item = candidate == null ? null : candidate.item;
+        long candidateSeq = candidate == null ? -1 : candidate.seq;
+        // Link and candidate are trusted only if the node still stands where it was, checked
+        // after reading them: then candidate could not have been dequeued before the node.
+        boolean valid = node.next == candidate
+            && (node.item == null ? node == head : node.seq == seq);
+        if (!valid) {
+          node = head;
+          continue;
+        }
+        if (item == null) {
+          // Free node of the ring or no node after the last one.
+          return;
+        }
+        if (candidateSeq > lastSeq) {
+          nextNode = candidate;
+          nextItem = item;
+          nextSeq = candidateSeq;
+          return;
+        }
+        // Restarted from head, skip elements returned already.
+        node = candidate;
+        seq = candidateSeq;
+      }
+    }
+  }
 }
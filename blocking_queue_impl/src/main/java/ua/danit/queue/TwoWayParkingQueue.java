@@ -0,0 +1,157 @@
+package ua.danit.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+
+/**
+ * Two way locking queue, where waiting threads park in own lock-free waiter stacks instead of
+ * waiting on lock conditions.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+public class TwoWayParkingQueue<T> extends TwoWayLockingQueue<T> {
+
+  /*
+   * Elements are kept and locked exactly as in TwoWayLockingQueue, only waiting differs.
+   * Thread which finds queue empty (or full) does not wait holding the lock: it registers in
+   * consumers (or producers) stack, checks the queue once more and parks. Thread which adds
+   * elements pops and unparks one consumer per element, thread which removes them one producer
+   * per freed slot. No lock is taken to wake somebody, and woken thread does not have to
+   * reacquire the lock it waited on before it can retry, so hand-off costs a single unpark.
+   *
+   * Woken thread may find its element taken by a thread which never parked, then it simply
+   * registers again. Thread which was woken but gives up because of interruption passes the
+   * wake-up on, so it is never lost.
+   */
+  private final WaiterStack consumers;
+  private final WaiterStack producers;
+
+  /**
+   * Instantiates a new parking queue with unlimited capacity.
+   */
+  public TwoWayParkingQueue() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Instantiates a new parking queue.
+   *
+   * @param capacity the capacity of the queue.
+   */
+  public TwoWayParkingQueue(int capacity) {
+    this(capacity, null);
+  }
+
+  /**
+   * Instantiates a new parking queue, where every element expires after its own time since it
+   * was added. Consumers skip expired elements.
+   *
+   * @param capacity the capacity of the queue.
+   * @param ttlNanos the time to live of element in nanoseconds, or null if elements never
+   *                 expire.
+   */
+  public TwoWayParkingQueue(int capacity, ToLongFunction<? super T> ttlNanos) {
+    super(capacity, false, ttlNanos);
+    this.consumers = new WaiterStack();
+    this.producers = new WaiterStack();
+  }
+
+  @Override
+  public void put(T t) throws InterruptedException {
+    offer(t, 0, true);
+  }
+
+  @Override
+  public boolean offer(T t, long timeout, TimeUnit unit) throws InterruptedException {
+    return offer(t, unit.toNanos(timeout), false);
+  }
+
+  private boolean offer(T t, long nanos, boolean infinite) throws InterruptedException {
+    long deadline = System.nanoTime() + nanos;
+    while (true) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (offer(t)) {
+        return true;
+      }
+      long left = deadline - System.nanoTime();
+      if (!infinite && left <= 0) {
+        return false;
+      }
+      WaiterStack.Waiter waiter = producers.push();
+      if (remainingCapacity() > 0) {
+        // Space freed before registration was seen, retry. If woken meanwhile the wake-up is
+        // not wasted, as this thread retries anyway.
+        waiter.cancel();
+        continue;
+      }
+      park(left, infinite);
+      if (!waiter.cancel() && Thread.currentThread().isInterrupted()) {
+        // Woken and interrupted, give the slot to another producer.
+        signalNotFull(0, 1);
+      }
+    }
+  }
+
+  @Override
+  public T take() throws InterruptedException {
+    return poll(0, true);
+  }
+
+  @Override
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return poll(unit.toNanos(timeout), false);
+  }
+
+  private T poll(long nanos, boolean infinite) throws InterruptedException {
+    long deadline = System.nanoTime() + nanos;
+    while (true) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      T result = poll();
+      if (result != null) {
+        return result;
+      }
+      long left = deadline - System.nanoTime();
+      if (!infinite && left <= 0) {
+        return null;
+      }
+      WaiterStack.Waiter waiter = consumers.push();
+      if (!isEmpty()) {
+        waiter.cancel();
+        continue;
+      }
+      park(left, infinite);
+      if (!waiter.cancel() && Thread.currentThread().isInterrupted()) {
+        // Woken and interrupted, give the element to another consumer.
+        signalNotEmpty(0, 1);
+      }
+    }
+  }
+
+  @Override
+  void signalNotEmpty(int oldSize, int added) {
+    if (!consumers.isEmpty()) {
+      consumers.wake(added);
+    }
+  }
+
+  @Override
+  void signalNotFull(int oldSize, int removed) {
+    if (!producers.isEmpty()) {
+      producers.wake(removed);
+    }
+  }
+
+  private void park(long nanos, boolean infinite) {
+    if (infinite) {
+      LockSupport.park(this);
+    } else {
+      LockSupport.parkNanos(this, nanos);
+    }
+  }
+}
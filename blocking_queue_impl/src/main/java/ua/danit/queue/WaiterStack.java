@@ -0,0 +1,119 @@
+package ua.danit.queue;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free stack of parked threads. Waiter pushes itself, re-checks the state it waits for
+ * and parks, waker pops a waiter and unparks it. Since both push and state change are full
+ * fences, either waiter sees the new state or waker sees the waiter, so wake-up is never lost.
+ *
+ * <p>Waiter which gives up (timeout, interrupt or state changed before it parked) cancels
+ * itself. Exactly one of cancel and wake succeeds, so waker skips cancelled waiters and
+ * waiter knows whether it consumed a wake-up it has to pass on.
+ *
+ * @author Andrey Minov
+ */
+final class WaiterStack {
+  private final AtomicReference<Waiter> top;
+
+  WaiterStack() {
+    this.top = new AtomicReference<>();
+  }
+
+  /**
+   * Register current thread as waiter.
+   *
+   * @return the waiter to park on.
+   */
+  Waiter push() {
+    Waiter waiter = new Waiter(Thread.currentThread());
+    while (true) {
+      Waiter current = top.get();
+      // Drop cancelled waiters on top while at it, so that waiters which time out
+      // repeatedly on idle queue do not pile up.
+      Waiter below = current;
+      while (below != null && below.state == Waiter.CANCELLED) {
+        below = below.next;
+      }
+      waiter.next = below;
+      if (top.compareAndSet(current, waiter)) {
+        return waiter;
+      }
+    }
+  }
+
+  /**
+   * Check if there are threads possibly waiting.
+   *
+   * @return true if stack is empty.
+   */
+  boolean isEmpty() {
+    return top.get() == null;
+  }
+
+  /**
+   * Wake one waiting thread.
+   *
+   * @return true if some thread was woken.
+   */
+  boolean wakeOne() {
+    while (true) {
+      Waiter waiter = top.get();
+      if (waiter == null) {
+        return false;
+      }
+      if (top.compareAndSet(waiter, waiter.next) && waiter.wake()) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Wake up to given number of waiting threads.
+   *
+   * @param number the max number of threads to wake.
+   */
+  void wake(int number) {
+    for (int i = 0; i < number && wakeOne(); i++) {
+      // Every iteration wakes one thread.
+    }
+  }
+
+  /**
+   * Parked thread registered in the stack.
+   */
+  static final class Waiter {
+    private static final int WAITING = 0;
+    private static final int WOKEN = 1;
+    private static final int CANCELLED = 2;
+    private static final AtomicIntegerFieldUpdater<Waiter> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "state");
+
+    private final Thread thread;
+    private volatile int state;
+    private Waiter next;
+
+    private Waiter(Thread thread) {
+      this.thread = thread;
+    }
+
+    /**
+     * Give up waiting.
+     *
+     * @return true if cancelled, false if thread was woken before.
+     */
+    boolean cancel() {
+      return STATE.compareAndSet(this, WAITING, CANCELLED);
+    }
+
+    private boolean wake() {
+      if (STATE.compareAndSet(this, WAITING, WOKEN)) {
+        LockSupport.unpark(thread);
+        return true;
+      }
+      return false;
+    }
+  }
+}
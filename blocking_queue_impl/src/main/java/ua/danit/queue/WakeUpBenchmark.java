@@ -0,0 +1,171 @@
+package ua.danit.queue;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of wake-up strategies of blocking queues.
+ *
+ * <p>Usage: {@code WakeUpBenchmark [--queues NAME,...] [--threads N,...] [--messages N]
+ * [--capacity N]}.
+ *
+ * <p>For every queue and thread count the same number of producers and consumers pass messages
+ * through small bounded queue, so threads wait on both full and empty queue all the time.
+ * Reported are throughput and context switches per message, summed over worker threads. On
+ * Linux switches are read from {@code /proc/thread-self/status}, elsewhere they are not
+ * available and reported as -1. Queues waking all waiters on every transition are expected to
+ * show switches growing with number of threads, queues with targeted wake-ups to stay close to
+ * one switch per blocked operation. Run it on machine with at least as many cores as threads,
+ * on a single core every hand-off is a switch anyway.
+ *
+ * @author Andrey Minov
+ */
+public class WakeUpBenchmark {
+  private static final Path THREAD_STATUS = Paths.get("/proc/thread-self/status");
+  private static final String VOLUNTARY = "voluntary_ctxt_switches:";
+  private static final String NON_VOLUNTARY = "nonvoluntary_ctxt_switches:";
+
+  private final List<String> queues;
+  private final int[] threads;
+  private final int messages;
+  private final int capacity;
+  private final PrintStream out;
+
+  /**
+   * Instantiates a new wake up benchmark.
+   *
+   * @param options the options parsed from command line.
+   * @param out     the stream to print reports to.
+   */
+  WakeUpBenchmark(Map<String, String> options, PrintStream out) {
+    this.queues = Arrays.asList(options.getOrDefault("queues",
+        "single,two-condition,synchronized,specific-notification").split(","));
+    this.threads = Arrays.stream(options.getOrDefault("threads", "1,2,4,8,16").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    this.messages = Integer.parseInt(options.getOrDefault("messages", "1000000"));
+    this.capacity = Integer.parseInt(options.getOrDefault("capacity", "16"));
+    this.out = out;
+  }
+
+  /**
+   * The entry point of benchmark.
+   *
+   * @param args the input arguments
+   * @throws InterruptedException if interrupted while running.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    new WakeUpBenchmark(LoadGenerator.parse(args), System.out).run();
+  }
+
+  /**
+   * Run benchmark for all queues and thread counts and print the table of results.
+   *
+   * @throws InterruptedException if interrupted while running.
+   */
+  void run() throws InterruptedException {
+    out.printf("%-22s %8s %14s %16s%n", "queue", "threads", "msg/s", "switches/msg");
+    for (String queue : queues) {
+      // First run warms up the code and is not reported.
+      run(queue, threads[0]);
+      for (int threadCount : threads) {
+        Result result = run(queue, threadCount);
+        out.printf("%-22s %8d %14.0f %16.3f%n", queue, threadCount, result.throughput,
+            result.switchesPerMessage);
+      }
+    }
+  }
+
+  private Result run(String name, int threadCount) throws InterruptedException {
+    BlockingQueue<Integer> queue = BlockingQueues.create(name, capacity);
+    int share = messages / threadCount;
+    AtomicLong switches = new AtomicLong();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      workers.add(new Thread(measured(start, switches, () -> {
+        for (int j = 0; j < share; j++) {
+          queue.put(j);
+        }
+      }), "wake-up-producer-" + i));
+      workers.add(new Thread(measured(start, switches, () -> {
+        for (int j = 0; j < share; j++) {
+          queue.take();
+        }
+      }), "wake-up-consumer-" + i));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    long total = (long) share * threadCount;
+    double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+    return new Result(total / seconds,
+        switches.get() < 0 ? -1 : switches.get() / (double) total);
+  }
+
+  private static Runnable measured(CountDownLatch start, AtomicLong switches, Task task) {
+    return () -> {
+      try {
+        start.await();
+        long before = contextSwitches();
+        task.run();
+        long after = contextSwitches();
+        if (before < 0 || after < 0) {
+          switches.set(Long.MIN_VALUE);
+        } else {
+          switches.addAndGet(after - before);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+
+  private static long contextSwitches() {
+    try {
+      long result = 0;
+      for (String line : Files.readAllLines(THREAD_STATUS, StandardCharsets.US_ASCII)) {
+        if (line.startsWith(VOLUNTARY)) {
+          result += Long.parseLong(line.substring(VOLUNTARY.length()).trim());
+        } else if (line.startsWith(NON_VOLUNTARY)) {
+          result += Long.parseLong(line.substring(NON_VOLUNTARY.length()).trim());
+        }
+      }
+      return result;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  @FunctionalInterface
+  private interface Task {
+    void run() throws InterruptedException;
+  }
+
+  private static final class Result {
+    private final double throughput;
+    private final double switchesPerMessage;
+
+    private Result(double throughput, double switchesPerMessage) {
+      this.throughput = throughput;
+      this.switchesPerMessage = switchesPerMessage;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package ua.danit.queue;
+
+import java.util.Arrays;
+
+/**
+ * Callbacks of a queue run when the queue turns from empty to non empty, used by threads
+ * waiting for several queues at once, see {@link QueueSelector}.
+ *
+ * <p>Queue runs callbacks after size change of its add is visible, and watcher checks the queue
+ * after its callback is registered, so either callback runs or watcher sees the element. Array
+ * is copied on change, as watchers change rarely and queue reads it on every transition.
+ *
+ * @author Andrey Minov
+ */
+final class Watchers {
+  private static final Runnable[] EMPTY = new Runnable[0];
+
+  private volatile Runnable[] callbacks = EMPTY;
+
+  /**
+   * Register callback.
+   *
+   * @param callback the callback to run when queue becomes non empty.
+   */
+  synchronized void add(Runnable callback) {
+    Runnable[] current = callbacks;
+    Runnable[] result = Arrays.copyOf(current, current.length + 1);
+    result[current.length] = callback;
+    callbacks = result;
+  }
+
+  /**
+   * Unregister callback.
+   *
+   * @param callback the callback registered before.
+   */
+  synchronized void remove(Runnable callback) {
+    Runnable[] current = callbacks;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == callback) {
+        Runnable[] result = new Runnable[current.length - 1];
+        System.arraycopy(current, 0, result, 0, i);
+        System.arraycopy(current, i + 1, result, i, result.length - i);
+        callbacks = result;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Run registered callbacks. Callbacks must be short and must not block, as queue may call
+   * them holding its lock.
+   */
+  void signal() {
+    for (Runnable callback : callbacks) {
+      callback.run();
+    }
+  }
+}
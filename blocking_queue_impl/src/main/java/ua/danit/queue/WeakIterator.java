@@ -0,0 +1,90 @@
+package ua.danit.queue;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Weakly consistent iterator over {@link CircularArrayQueue} storage of a blocking queue.
+ *
+ * <p>Iterator does not copy the queue and does not hold its lock between calls. Every step
+ * takes the lock just to find the first element inserted after the one returned last, so it
+ * returns elements in queue order, each at most once, never throws
+ * {@link java.util.ConcurrentModificationException}, and sees every element present in the
+ * queue during the whole iteration. Removal finds the returned element by its sequence, so
+ * equal element elsewhere in the queue is never removed instead of it.
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+class WeakIterator<T> implements Iterator<T> {
+  private final CircularArrayQueue<T> storage;
+  private final Consumer<Runnable> guard;
+  private final Runnable removed;
+  private final Runnable fetch;
+  private final Runnable remove;
+  private long lastSeq;
+  private T last;
+  private T next;
+  private long nextSeq;
+
+  /**
+   * Instantiates a new weakly consistent iterator.
+   *
+   * @param storage the storage of the queue.
+   * @param guard   runs given action holding the queue lock.
+   * @param removed runs holding the queue lock after element is removed.
+   */
+  WeakIterator(CircularArrayQueue<T> storage, Consumer<Runnable> guard, Runnable removed) {
+    this.storage = storage;
+    this.guard = guard;
+    this.removed = removed;
+    this.fetch = this::fetch;
+    this.remove = this::removeLast;
+    this.lastSeq = -1;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      guard.accept(fetch);
+    }
+    return next != null;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    last = next;
+    lastSeq = nextSeq;
+    next = null;
+    return last;
+  }
+
+  @Override
+  public void remove() {
+    if (last == null) {
+      throw new IllegalStateException("Next was not called!");
+    }
+    guard.accept(remove);
+    last = null;
+  }
+
+  private void removeLast() {
+    int offset = storage.offsetAfter(lastSeq - 1);
+    if (offset < storage.size() && storage.seqAt(offset) == lastSeq) {
+      storage.removeElementAt(offset);
+      removed.run();
+    }
+  }
+
+  private void fetch() {
+    int offset = storage.offsetAfter(lastSeq);
+    if (offset < storage.size()) {
+      next = storage.elementAt(offset);
+      nextSeq = storage.seqAt(offset);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package ua.danit.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free deque of single owner thread, which pushes and pops elements at the bottom, while
+ * other threads steal them from the top (Chase-Lev deque).
+ *
+ * @param <T> the type parameter
+ * @author Andrey Minov
+ */
+final class WorkStealingDeque<T> {
+  private static final int INITIAL_CAPACITY = 64;
+
+  /*
+   * Elements live in circular array between top (inclusive) and bottom (exclusive). Only owner
+   * moves bottom, so push needs no atomic operation and pop only competes with thieves for the
+   * last element. Thieves move top with compare-and-set, loser of the race gets nothing and
+   * looks elsewhere.
+   *
+   * Array grows when full, owner copies live elements into a new array before publishing it.
+   * Old array is never modified afterwards, so thief which read element from it before the
+   * switch still gets correct element, if its compare-and-set succeeds.
+   *
+   * Popped slots are cleared by owner, stolen ones stay referenced until overwritten, as
+   * thief can not tell whether owner has already reused the slot.
+   */
+  private final AtomicLong top;
+  private volatile long bottom;
+  private volatile AtomicReferenceArray<T> array;
+
+  WorkStealingDeque() {
+    this.top = new AtomicLong();
+    this.array = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Push element at the bottom, called by owner only.
+   *
+   * @param element the element.
+   */
+  void push(T element) {
+    long b = bottom;
+    long t = top.get();
+    AtomicReferenceArray<T> a = array;
+    if (b - t >= a.length()) {
+      a = grow(a, t, b);
+      array = a;
+    }
+    a.set(index(a, b), element);
+    bottom = b + 1;
+  }
+
+  /**
+   * Pop element pushed last, called by owner only.
+   *
+   * @return the element or null if deque is empty.
+   */
+  T pop() {
+    long b = bottom - 1;
+    AtomicReferenceArray<T> a = array;
+    // Volatile write of bottom before read of top, so thief either sees the element gone or
+    // owner sees the thief.
+    bottom = b;
+    long t = top.get();
+    if (t > b) {
+      bottom = b + 1;
+      return null;
+    }
+    T result = a.get(index(a, b));
+    if (t == b) {
+      // Last element, whoever moves top first takes it.
+      if (!top.compareAndSet(t, t + 1)) {
+        result = null;
+      }
+      bottom = b + 1;
+    } else {
+      a.set(index(a, b), null);
+    }
+    return result;
+  }
+
+  /**
+   * Steal element pushed first, called by any thread.
+   *
+   * @return the element or null if deque is empty or other thread took it first.
+   */
+  T steal() {
+    long t = top.get();
+    long b = bottom;
+    if (t >= b) {
+      return null;
+    }
+    AtomicReferenceArray<T> a = array;
+    T result = a.get(index(a, t));
+    return top.compareAndSet(t, t + 1) ? result : null;
+  }
+
+  /**
+   * Check if deque has no elements.
+   *
+   * @return true if deque is empty.
+   */
+  boolean isEmpty() {
+    return top.get() >= bottom;
+  }
+
+  private static <T> AtomicReferenceArray<T> grow(AtomicReferenceArray<T> old, long top,
+                                                  long bottom) {
+    AtomicReferenceArray<T> result = new AtomicReferenceArray<>(old.length() * 2);
+    for (long i = top; i < bottom; i++) {
+      result.set(index(result, i), old.get(index(old, i)));
+    }
+    return result;
+  }
+
+  private static int index(AtomicReferenceArray<?> array, long position) {
+    return (int) position & (array.length() - 1);
+  }
+}
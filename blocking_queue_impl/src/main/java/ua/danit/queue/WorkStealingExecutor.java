@@ -0,0 +1,245 @@
+package ua.danit.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor service with fixed number of workers, where every worker has own deque of tasks and
+ * idle workers steal tasks from busy ones.
+ *
+ * <p>Tasks submitted from outside of the pool go to shared submission queue, one of the
+ * project queues. Tasks submitted by running task go to the deque of its worker, so short
+ * callbacks spawning further work do not touch any shared lock.
+ *
+ * @author Andrey Minov
+ */
+public class WorkStealingExecutor extends AbstractExecutorService {
+  private static final int RUNNING = 0;
+  private static final int SHUTDOWN = 1;
+  private static final int STOP = 2;
+  private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+  /*
+   * Worker looks for the next task in own deque first (newest task, which is likely still in
+   * cache), then in submission queue, then steals the oldest task of other workers, starting
+   * from random one so that thieves do not all hit the same deque.
+   *
+   * Worker which found nothing parks in idle waiter stack: it registers, checks all sources
+   * once more and parks, and every submission wakes one idle worker after the task is
+   * published, so task is never left while all workers sleep. Submission does not touch the
+   * stack when nobody is idle.
+   *
+   * After shutdown workers finish all queued tasks and exit once there is nothing left.
+   * Submission racing with shutdown takes its task back from the submission queue and rejects
+   * it, unless some worker has taken it already. Task submitted by worker's own task is run by
+   * that worker anyway, as worker exits only with empty deque.
+   */
+  private final Worker[] workers;
+  private final BlockingQueue<Runnable> submissions;
+  private final WaiterStack idle;
+  private final AtomicInteger state;
+  private final CountDownLatch terminated;
+
+  /**
+   * Instantiates a new work stealing executor with unlimited submission queue.
+   *
+   * @param parallelism the number of worker threads.
+   */
+  public WorkStealingExecutor(int parallelism) {
+    this(parallelism, new TwoWayParkingQueue<>());
+  }
+
+  /**
+   * Instantiates a new work stealing executor.
+   *
+   * @param parallelism the number of worker threads.
+   * @param submissions the queue of tasks submitted from outside of the pool, task is rejected
+   *                    if queue is full.
+   */
+  public WorkStealingExecutor(int parallelism, BlockingQueue<Runnable> submissions) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive!");
+    }
+    this.submissions = submissions;
+    this.idle = new WaiterStack();
+    this.state = new AtomicInteger(RUNNING);
+    this.terminated = new CountDownLatch(parallelism);
+    this.workers = new Worker[parallelism];
+    int pool = POOL_NUMBER.incrementAndGet();
+    for (int i = 0; i < parallelism; i++) {
+      workers[i] = new Worker("work-stealing-" + pool + "-worker-" + i);
+    }
+    for (Worker worker : workers) {
+      worker.start();
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (command == null) {
+      throw new NullPointerException("Task cannot be null!");
+    }
+    if (state.get() != RUNNING) {
+      throw new RejectedExecutionException("Executor is shut down!");
+    }
+    Thread current = Thread.currentThread();
+    if (current instanceof Worker && ((Worker) current).owner() == this) {
+      ((Worker) current).tasks.push(command);
+    } else {
+      if (!submissions.offer(command)) {
+        throw new RejectedExecutionException("Submission queue is full!");
+      }
+      if (state.get() != RUNNING && submissions.remove(command)) {
+        throw new RejectedExecutionException("Executor is shut down!");
+      }
+    }
+    if (!idle.isEmpty()) {
+      idle.wakeOne();
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    state.compareAndSet(RUNNING, SHUTDOWN);
+    idle.wake(Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    state.set(STOP);
+    for (Worker worker : workers) {
+      worker.interrupt();
+    }
+    idle.wake(Integer.MAX_VALUE);
+    List<Runnable> result = new ArrayList<>();
+    submissions.drainTo(result);
+    for (Worker worker : workers) {
+      while (!worker.tasks.isEmpty()) {
+        Runnable task = worker.tasks.steal();
+        if (task != null) {
+          result.add(task);
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return state.get() != RUNNING;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return terminated.getCount() == 0;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  private Runnable steal(Worker thief) {
+    int start = ThreadLocalRandom.current().nextInt(workers.length);
+    for (int i = 0; i < workers.length; i++) {
+      Worker victim = workers[(start + i) % workers.length];
+      if (victim != thief) {
+        Runnable task = victim.tasks.steal();
+        if (task != null) {
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  private boolean hasTasks() {
+    if (!submissions.isEmpty()) {
+      return true;
+    }
+    for (Worker worker : workers) {
+      if (!worker.tasks.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private final class Worker extends Thread {
+    private final WorkStealingDeque<Runnable> tasks;
+
+    private Worker(String name) {
+      super(name);
+      this.tasks = new WorkStealingDeque<>();
+    }
+
+    private WorkStealingExecutor owner() {
+      return WorkStealingExecutor.this;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (state.get() != STOP) {
+          Runnable task = nextTask();
+          if (task != null) {
+            runTask(task);
+          } else if (!hasTasks()) {
+            if (state.get() != RUNNING) {
+              break;
+            }
+            awaitTask();
+          }
+        }
+      } finally {
+        terminated.countDown();
+      }
+    }
+
+    private Runnable nextTask() {
+      Runnable task = tasks.pop();
+      if (task == null) {
+        task = submissions.poll();
+      }
+      if (task == null) {
+        task = steal(this);
+      }
+      return task;
+    }
+
+    private void runTask(Runnable task) {
+      // Interrupt left by previous task must not leak into the next one, unless it comes
+      // from shutdownNow.
+      if (state.get() != STOP) {
+        Thread.interrupted();
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        Logger.getGlobal().log(Level.SEVERE, e, () -> "Task failed in work stealing executor.");
+      }
+    }
+
+    private void awaitTask() {
+      // Interrupted thread does not park at all.
+      Thread.interrupted();
+      WaiterStack.Waiter waiter = idle.push();
+      if (hasTasks() || state.get() != RUNNING) {
+        waiter.cancel();
+        return;
+      }
+      LockSupport.park(this);
+      waiter.cancel();
+    }
+  }
+}
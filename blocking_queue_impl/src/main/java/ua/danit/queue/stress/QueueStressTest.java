@@ -0,0 +1,288 @@
+package ua.danit.queue.stress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Mode;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.Signal;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.LL_Result;
+import ua.danit.queue.BlockingQueues;
+
+/**
+ * Stress tests for blocking queues of implementation module. Queue under test is selected
+ * by name with system property {@code queue.impl} (see {@link BlockingQueues#names()}),
+ * two way locking queue is tested by default. To test another queue pass the property
+ * to forked VMs, e.g. {@code java -jar jcstress.jar -jvmArgs "-Dqueue.impl=single"}.
+ *
+ * @author Andrey Minov
+ */
+public class QueueStressTest {
+  private static final String QUEUE_PROPERTY = "queue.impl";
+  private static final String DEFAULT_QUEUE = "two-way";
+
+  private static BlockingQueue<Integer> createQueue(int capacity) {
+    return BlockingQueues.create(System.getProperty(QUEUE_PROPERTY, DEFAULT_QUEUE), capacity);
+  }
+
+  private static BlockingQueue<Integer> createQueue(int capacity, Integer... values) {
+    BlockingQueue<Integer> queue = createQueue(capacity);
+    queue.addAll(Arrays.asList(values));
+    return queue;
+  }
+
+  /*
+   * One actor waits for queue to be not empty, other signals element. Expect first take element
+   * and return.
+   */
+  @JCStressTest(Mode.Termination)
+  @Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "Gracefully finished.")
+  @Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "Wake-up is lost.")
+  @State
+  public static class TakeWaitTest {
+    private BlockingQueue<Integer> queue = createQueue(1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() throws InterruptedException {
+      queue.take();
+    }
+
+    @Signal
+    public void signal() throws InterruptedException {
+      queue.put(1);
+    }
+  }
+
+  /*
+   * One actor waits for queue to be not full, other frees space by draining it.
+   * Expect first put element and return.
+   */
+  @JCStressTest(Mode.Termination)
+  @Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "Gracefully finished.")
+  @Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "Wake-up is lost.")
+  @State
+  public static class PutWaitTest {
+    private BlockingQueue<Integer> queue = createQueue(1, 1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() throws InterruptedException {
+      queue.put(2);
+    }
+
+    @Signal
+    public void signal() {
+      queue.drainTo(new ArrayList<>());
+    }
+  }
+
+  /*
+   * One actor waits for queue to be not full, other frees space by removing element.
+   * Expect first put element and return.
+   */
+  @JCStressTest(Mode.Termination)
+  @Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "Gracefully finished.")
+  @Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "Wake-up is lost.")
+  @State
+  public static class PutRemoveWaitTest {
+    private BlockingQueue<Integer> queue = createQueue(1, 1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() throws InterruptedException {
+      queue.put(2);
+    }
+
+    @Signal
+    public void signal() {
+      queue.remove(1);
+    }
+  }
+
+  /*
+   * One actor puts element into empty queue, other takes it. Expect element to be taken and
+   * queue left empty.
+   */
+  @JCStressTest
+  @Outcome(id = "1, 0", expect = Expect.ACCEPTABLE, desc = "Implemented correctly!")
+  @State
+  public static class PutTakeTest {
+    private BlockingQueue<Integer> queue = createQueue(1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() {
+      try {
+        queue.put(1);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor2(LL_Result r) {
+      try {
+        r.r1 = queue.take();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Arbiter
+    public void arbiter(LL_Result r) {
+      r.r2 = queue.size();
+    }
+  }
+
+  /*
+   * One actor offers element into the queue, other drains it. Drained and left elements must
+   * sum up to all elements, and order must be kept.
+   */
+  @JCStressTest
+  @Outcome(id = "[1, 2], [3]", expect = Expect.ACCEPTABLE, desc = "Drained before offer.")
+  @Outcome(id = "[1, 2, 3], []", expect = Expect.ACCEPTABLE, desc = "Drained after offer.")
+  @State
+  public static class DrainToTest {
+    private BlockingQueue<Integer> queue = createQueue(3, 1, 2);
+    private List<Integer> drained = new ArrayList<>();
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() {
+      queue.offer(3);
+    }
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor2() {
+      queue.drainTo(drained);
+    }
+
+    @Arbiter
+    public void arbiter(LL_Result r) {
+      r.r1 = drained.toString();
+      r.r2 = remaining(queue).toString();
+    }
+  }
+
+  /*
+   * One actor removes head element by value, other polls head. Only one of them can get it.
+   */
+  @JCStressTest
+  @Outcome(id = "true, 2", expect = Expect.ACCEPTABLE, desc = "Removed before poll.")
+  @Outcome(id = "false, 1", expect = Expect.ACCEPTABLE, desc = "Polled before remove.")
+  @State
+  public static class RemovePollTest {
+    private BlockingQueue<Integer> queue = createQueue(2, 1, 2);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1(LL_Result r) {
+      r.r1 = queue.remove(1);
+    }
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor2(LL_Result r) {
+      r.r2 = queue.poll();
+    }
+  }
+
+  /*
+   * One actor removes last element by value, other appends new one. Appended element
+   * must survive removal of its predecessor.
+   */
+  @JCStressTest
+  @Outcome(id = "2, null", expect = Expect.ACCEPTABLE, desc = "Implemented correctly!")
+  @State
+  public static class RemoveOfferTest {
+    private BlockingQueue<Integer> queue = createQueue(2, 1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1() {
+      queue.remove(1);
+    }
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor2() {
+      queue.offer(2);
+    }
+
+    @Arbiter
+    public void arbiter(LL_Result r) {
+      r.r1 = queue.poll();
+      r.r2 = queue.poll();
+    }
+  }
+
+  /*
+   * One actor peeks the queue, other polls it. Peek sees the element or nothing, but never
+   * something which was not in the queue.
+   */
+  @JCStressTest
+  @Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "Peeked before poll.")
+  @Outcome(id = "null, 1", expect = Expect.ACCEPTABLE, desc = "Peeked after poll.")
+  @State
+  public static class PeekPollTest {
+    private BlockingQueue<Integer> queue = createQueue(1, 1);
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor1(LL_Result r) {
+      r.r1 = queue.peek();
+    }
+
+    /**
+     * Single actor call.
+     */
+    @Actor
+    public void actor2(LL_Result r) {
+      r.r2 = queue.poll();
+    }
+  }
+
+  private static Collection<Integer> remaining(BlockingQueue<Integer> queue) {
+    List<Integer> result = new ArrayList<>();
+    Integer element;
+    while ((element = queue.poll()) != null) {
+      result.add(element);
+    }
+    return result;
+  }
+}
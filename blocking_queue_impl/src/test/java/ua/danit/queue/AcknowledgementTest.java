@@ -0,0 +1,115 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for in-flight table and acknowledgement mode of application.
+ *
+ * @author Andrey Minov
+ */
+public class AcknowledgementTest {
+
+  @Test
+  public void testInFlightTable() {
+    InFlightTable<Integer> table = new InFlightTable<>();
+    Random random = new Random(42);
+    List<Long> ids = new ArrayList<>();
+    List<Integer> messages = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      ids.add(table.add(i, i % 2 == 0 ? 0 : Long.MAX_VALUE));
+      messages.add(i);
+      if (random.nextInt(3) == 0) {
+        int index = random.nextInt(ids.size());
+        assertEquals("Incorrent message removed!", messages.remove(index),
+            table.remove(ids.remove(index)));
+      }
+    }
+    assertEquals("Incorrent size!", messages.size(), table.size());
+    for (int i = 0; i < ids.size(); i += 7) {
+      assertEquals("Message is not found!", messages.get(i), table.remove(ids.get(i)));
+      assertNull("Message is removed twice!", table.remove(ids.get(i)));
+    }
+    List<Integer> expired = new ArrayList<>();
+    table.expire(1, expired);
+    assertTrue("Incorrent messages expired!", expired.stream().allMatch(m -> m % 2 == 0));
+    List<Integer> rest = new ArrayList<>();
+    table.clear(rest);
+    assertTrue("Incorrent messages left!", rest.stream().allMatch(m -> m % 2 != 0));
+    assertEquals("Table is not empty!", 0, table.size());
+  }
+
+  @Test
+  public void testFailedMessageIsRedelivered() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.requireAcknowledgements(Duration.ofMillis(50));
+    AtomicInteger attempts = new AtomicInteger();
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerConsumer(message -> {
+      if (attempts.incrementAndGet() == 1) {
+        throw new IllegalStateException("First attempt fails");
+      }
+      received.add(message);
+    });
+    application.publish("message");
+    awaitSize(received, 1);
+    assertEquals("Message is not redelivered!", 1, received.size());
+    assertEquals("Incorrent redelivery count!", 1, application.getRedeliveryCount());
+    assertEquals("Message is still in flight!", 0, application.getInFlightCount());
+    assertTrue("Messages left!", application.close(Duration.ofSeconds(1)).isEmpty());
+  }
+
+  @Test
+  public void testExplicitAcknowledgement() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    application.requireAcknowledgements(Duration.ofMillis(100));
+    List<Delivery<String>> unacked = new CopyOnWriteArrayList<>();
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerAckConsumer(delivery -> {
+      received.add(delivery.getMessage());
+      if (delivery.getMessage().equals("kept")) {
+        unacked.add(delivery);
+      } else {
+        assertTrue("Delivery is not acknowledged!", delivery.ack());
+        assertFalse("Delivery is acknowledged twice!", delivery.ack());
+      }
+    });
+    application.publish("acked");
+    application.publish("kept");
+    awaitSize(received, 3);
+    assertEquals("Acknowledged message is redelivered!", 1,
+        received.stream().filter("acked"::equals).count());
+    assertFalse("Late acknowledgement is accepted!", unacked.get(0).ack());
+    List<String> remaining = application.close(Duration.ofSeconds(1));
+    assertEquals("Unacknowledged message is lost!", "kept", remaining.get(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAckConsumerRequiresAcknowledgements() {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    try {
+      application.registerAckConsumer(Delivery::ack);
+    } finally {
+      application.close();
+    }
+  }
+
+  private static void awaitSize(List<?> list, int size) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (list.size() < size && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+
+import org.junit.Test;
+
+/**
+ * Tests for adaptive spin lock.
+ *
+ * @author Andrey Minov
+ */
+public class AdaptiveSpinLockTest {
+  private static final int THREADS = 4;
+  private static final int OPERATIONS = 100000;
+
+  private long counter;
+
+  @Test
+  public void testMutualExclusion() throws Exception {
+    for (boolean fair : new boolean[] {false, true}) {
+      AdaptiveSpinLock lock = new AdaptiveSpinLock(fair);
+      counter = 0;
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        threads.add(new Thread(() -> {
+          for (int j = 0; j < OPERATIONS; j++) {
+            lock.lock();
+            try {
+              counter++;
+            } finally {
+              lock.unlock();
+            }
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertEquals("Incorrent counter! fair=" + fair, (long) THREADS * OPERATIONS, counter);
+      assertEquals("Incorrent fairness!", fair, lock.isFair());
+    }
+  }
+
+  @Test
+  public void testReentrancyAndTryLock() throws Exception {
+    AdaptiveSpinLock lock = new AdaptiveSpinLock();
+    lock.lock();
+    lock.lock();
+    assertTrue("Lock must be held!", lock.isHeldByCurrentThread());
+    AtomicBoolean acquired = new AtomicBoolean(true);
+    Thread other = new Thread(() -> {
+      try {
+        acquired.set(lock.tryLock() || lock.tryLock(1, TimeUnit.MILLISECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    other.start();
+    other.join();
+    assertFalse("Held lock is acquired by other thread!", acquired.get());
+    lock.unlock();
+    assertTrue("Lock must be held!", lock.isHeldByCurrentThread());
+    lock.unlock();
+    assertFalse("Lock must be released!", lock.isHeldByCurrentThread());
+    try {
+      lock.unlock();
+      throw new AssertionError("Released not held lock!");
+    } catch (IllegalMonitorStateException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testCondition() throws Exception {
+    AdaptiveSpinLock lock = new AdaptiveSpinLock();
+    Condition condition = lock.newCondition();
+    AtomicBoolean ready = new AtomicBoolean();
+    CountDownLatch done = new CountDownLatch(1);
+    Thread waiter = new Thread(() -> {
+      lock.lock();
+      try {
+        while (!ready.get()) {
+          condition.await();
+        }
+        done.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        lock.unlock();
+      }
+    });
+    waiter.start();
+    while (waiter.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    lock.lock();
+    try {
+      ready.set(true);
+      condition.signal();
+    } finally {
+      lock.unlock();
+    }
+    assertTrue("Waiter is not signalled!", done.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testHoldEstimate() throws Exception {
+    AdaptiveSpinLock lock = new AdaptiveSpinLock();
+    for (int i = 0; i < 64; i++) {
+      lock.lock();
+      try {
+        Thread.sleep(1);
+      } finally {
+        lock.unlock();
+      }
+    }
+    assertTrue("Long holds are not noticed!",
+        lock.holdEstimateNanos() > TimeUnit.MICROSECONDS.toNanos(100));
+  }
+}
@@ -0,0 +1,85 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+/**
+ * Tests for bulk ingestion.
+ *
+ * @author Andrey Minov
+ */
+public class BulkIngestionTest {
+
+  @Test
+  public void testFile() throws Exception {
+    String content = "first\r\nsecond\n\nтретій\na\u000b\nlast";
+    Path file = Files.createTempFile("bulk", ".txt");
+    try {
+      Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+      RecordingApplication application = new RecordingApplication();
+      BulkIngestion.Report report = new BulkIngestion(application, (byte) '\n', 2).ingest(file);
+      assertEquals("Incorrect messages!",
+          Arrays.asList("first", "second", "третій", "a\u000b", "last"), application.messages);
+      assertEquals("Incorrect message count!", 5, report.getMessages());
+      assertEquals("Incorrect batch count!", 3, application.batches);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testStreamMatchesSplit() throws Exception {
+    Random random = new Random(42);
+    StringBuilder content = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 300_000; i++) {
+      String message = Long.toString(random.nextLong() >>> random.nextInt(64), 36);
+      expected.add(message);
+      content.append(message).append(' ');
+    }
+    RecordingApplication application = new RecordingApplication();
+    BulkIngestion.Report report = new BulkIngestion(application, (byte) ' ', 1000)
+        .ingest(Channels.newChannel(new ByteArrayInputStream(
+            content.toString().getBytes(StandardCharsets.UTF_8))));
+    assertEquals("Incorrect messages!", expected, application.messages);
+    assertEquals("Incorrect byte count!", content.length(), report.getBytes());
+  }
+
+  private static class RecordingApplication implements PubSubApplication<String> {
+    private final List<String> messages = new ArrayList<>();
+    private int batches;
+
+    @Override
+    public void registerConsumer(Consumer<String> messageConsumer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void publish(String message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void publishAll(Collection<String> batch) {
+      batches++;
+      messages.addAll(batch);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Tests for circular array storage of bounded queues.
+ *
+ * @author Andrey Minov
+ */
+public class CircularArrayQueueTest {
+
+  @Test
+  public void testWrapAround() {
+    CircularArrayQueue<Integer> queue = new CircularArrayQueue<>(3);
+    for (int i = 0; i < 10; i++) {
+      assertTrue("Incorrent offer!", queue.offer(i));
+      assertTrue("Incorrent offer!", queue.offer(i + 100));
+      assertEquals("Incorrent poll!", Integer.valueOf(i), queue.poll());
+      assertEquals("Incorrent poll!", Integer.valueOf(i + 100), queue.poll());
+    }
+    assertNull("Queue must be empty!", queue.poll());
+    queue.addAll(Arrays.asList(1, 2, 3));
+    assertFalse("Queue must be full!", queue.offer(4));
+    assertEquals("Incorrent content!", Arrays.asList(1, 2, 3), new ArrayList<>(queue));
+  }
+
+  @Test
+  public void testRemoveInTheMiddle() {
+    CircularArrayQueue<Integer> queue = new CircularArrayQueue<>(4);
+    queue.addAll(Arrays.asList(0, 0, 0));
+    queue.poll();
+    queue.poll();
+    queue.addAll(Arrays.asList(1, 2, 3));
+    assertTrue("Element not removed!", queue.remove(2));
+    assertEquals("Incorrent content!", Arrays.asList(0, 1, 3), new ArrayList<>(queue));
+    Iterator<Integer> iterator = queue.iterator();
+    iterator.next();
+    iterator.remove();
+    assertEquals("Incorrent next after remove!", Integer.valueOf(1), iterator.next());
+    assertTrue("Incorrent offer!", queue.offer(4));
+    assertEquals("Incorrent content!", Arrays.asList(1, 3, 4), new ArrayList<>(queue));
+  }
+
+  @Test
+  public void testBoundedQueuesDoNotAllocate() throws Exception {
+    AllocationBenchmark benchmark = new AllocationBenchmark(
+        Collections.singletonMap("operations", "100000"), System.out);
+    for (String name : BlockingQueues.names()) {
+      assertEquals(name + " allocates on put and take!", 0.0,
+          benchmark.bytesPerOperation(BlockingQueues.create(name, 1024)), 0.01);
+    }
+  }
+}
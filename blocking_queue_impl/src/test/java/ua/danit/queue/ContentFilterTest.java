@@ -0,0 +1,72 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+/**
+ * Tests for consumers filtering messages on publish.
+ *
+ * @author Andrey Minov
+ */
+public class ContentFilterTest {
+
+  @Test
+  public void testRouting() {
+    QueuePubSubApplication application = new QueuePubSubApplication(4);
+    List<String> orders = new CopyOnWriteArrayList<>();
+    List<String> euOrders = new CopyOnWriteArrayList<>();
+    List<String> large = new CopyOnWriteArrayList<>();
+    List<String> others = new CopyOnWriteArrayList<>();
+    application.registerPrefixConsumer("order", orders::add);
+    application.registerPrefixConsumer("order.eu", euOrders::add);
+    application.registerConsumer(message -> message.length() > 12, large::add);
+    application.registerConsumer(others::add);
+    application.publish("order.eu.1");
+    application.publish("order.us.1");
+    application.publishAll(Arrays.asList("quote.eu.1", "quote.very.large", "order.eu.large"));
+    application.publish("ord");
+    assertTrue("Messages left!", application.close(Duration.ofSeconds(5)).isEmpty());
+    assertEquals("Incorrent prefix messages!",
+        Arrays.asList("order.eu.1", "order.us.1", "order.eu.large"), orders);
+    assertEquals("Incorrent longer prefix messages!",
+        Arrays.asList("order.eu.1", "order.eu.large"), euOrders);
+    assertEquals("Incorrent predicate messages!",
+        Arrays.asList("quote.very.large", "order.eu.large"), large);
+    assertEquals("Incorrent unfiltered messages!", Arrays.asList("quote.eu.1", "ord"), others);
+  }
+
+  @Test
+  public void testFilteredMessagesReturnedOnClose() {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.registerPrefixConsumer("slow", message -> {
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    for (int i = 0; i < 5; i++) {
+      application.publish("slow " + i);
+    }
+    List<String> remaining = application.close(Duration.ofMillis(50));
+    assertTrue("Undelivered messages are lost!", remaining.size() >= 3);
+    assertTrue("Incorrent undelivered messages!", remaining.contains("slow 4"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testElasticMode() {
+    QueuePubSubApplication application = new QueuePubSubApplication(new ScalingPolicy(1, 2));
+    try {
+      application.registerPrefixConsumer("a", message -> { });
+    } finally {
+      application.close();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for deduplication cache and application dropping duplicate messages.
+ *
+ * @author Andrey Minov
+ */
+public class DeduplicationCacheTest {
+
+  @Test
+  public void testDuplicatesAndExpiry() {
+    AtomicLong now = new AtomicLong();
+    DeduplicationCache<String> cache = new DeduplicationCache<>(100, Duration.ofNanos(1000),
+        Long.MAX_VALUE, key -> 0, now::get);
+    assertTrue("New identifier is duplicate!", cache.add("a"));
+    assertFalse("Duplicate is not found!", cache.add("a"));
+    now.set(999);
+    assertFalse("Duplicate is not found before expiry!", cache.add("a"));
+    now.set(1000);
+    assertTrue("Expired identifier is duplicate!", cache.add("a"));
+    assertFalse("Renewed identifier is not found!", cache.add("a"));
+    assertEquals("Incorrent hit count!", 3, cache.getHitCount());
+    assertEquals("Incorrent miss count!", 2, cache.getMissCount());
+    assertEquals("Incorrent expiration count!", 1, cache.getExpirationCount());
+  }
+
+  @Test
+  public void testEntryBound() {
+    DeduplicationCache<Integer> cache = new DeduplicationCache<>(64, Duration.ofMinutes(1),
+        Long.MAX_VALUE);
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue("New identifier is duplicate!", cache.add(i));
+      assertTrue("Cache exceeds its bound!", cache.size() <= 64);
+    }
+    assertEquals("Incorrent eviction count!", 10_000 - cache.size(), cache.getEvictionCount());
+  }
+
+  @Test
+  public void testReferencedSurviveEviction() {
+    DeduplicationCache<Integer> cache = new DeduplicationCache<>(8, Duration.ofMinutes(1),
+        Long.MAX_VALUE);
+    for (int i = 0; i < 8; i++) {
+      cache.add(i);
+    }
+    // Repeated identifier gets reference bit and outlives one-off identifiers.
+    for (int i = 8; i < 1000; i++) {
+      assertFalse("Hot identifier is evicted!", cache.add(0));
+      assertTrue("New identifier is duplicate!", cache.add(i));
+    }
+    assertEquals("Incorrent size!", 8, cache.size());
+  }
+
+  @Test
+  public void testMemoryBound() {
+    DeduplicationCache<String> cache = new DeduplicationCache<>(1000, Duration.ofMinutes(1),
+        16 * 1024);
+    char[] chars = new char[100];
+    for (int i = 0; i < 1000; i++) {
+      Arrays.fill(chars, (char) ('a' + i % 26));
+      cache.add(i + new String(chars));
+      assertTrue("Cache exceeds memory bound!", cache.getEstimatedBytes() <= 16 * 1024);
+    }
+    assertTrue("Memory bound is not enforced!", cache.size() < 1000);
+    assertTrue("Nothing is evicted!", cache.getEvictionCount() > 0);
+  }
+
+  @Test
+  public void testApplicationDropsDuplicates() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    DeduplicationCache<String> cache = new DeduplicationCache<>(1000, Duration.ofMinutes(1),
+        1024 * 1024);
+    application.deduplicate(message -> message.substring(0, message.indexOf(':')), cache);
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerConsumer(received::add);
+    application.publish("1:first");
+    application.publish("1:retry");
+    application.publishAll(Arrays.asList("2:first", "1:again", "3:first", "2:retry"));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (received.size() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    application.close(Duration.ofSeconds(1));
+    assertEquals("Incorrent messages!", Arrays.asList("1:first", "2:first", "3:first"),
+        received.stream().sorted().collect(Collectors.toList()));
+    assertEquals("Incorrent duplicate count!", 3, cache.getHitCount());
+  }
+
+  @Test
+  public void testRejectedMessageIsNotRemembered() {
+    TwoWayLockingQueue<String> queue = new TwoWayLockingQueue<>(1);
+    QueuePubSubApplication application = new QueuePubSubApplication(1, queue);
+    DeduplicationCache<String> cache = new DeduplicationCache<>(1000, Duration.ofMinutes(1),
+        1024 * 1024);
+    application.deduplicate(message -> message, cache);
+    application.publish("a");
+    application.publish("b");
+    assertEquals("Incorrent queue!", "a", queue.poll());
+    application.publish("b");
+    assertEquals("Retry of rejected message is dropped!", "b", queue.peek());
+
+    application.publishAll(Arrays.asList("b", "c"));
+    assertEquals("Incorrent queue!", "b", queue.poll());
+    application.publishAll(Arrays.asList("c"));
+    assertEquals("Retry of rejected message is dropped!",
+        Arrays.asList("c"), application.close(Duration.ZERO));
+  }
+}
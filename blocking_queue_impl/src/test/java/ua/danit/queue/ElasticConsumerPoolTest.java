@@ -0,0 +1,59 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for elastic consumer pool.
+ *
+ * @author Andrey Minov
+ */
+public class ElasticConsumerPoolTest {
+
+  @Test
+  public void testGrowAndShrink() throws Exception {
+    int n = 200;
+    BlockingQueue<Integer> queue = new TwoWayLockingQueue<>();
+    List<ScalingEvent> events = new CopyOnWriteArrayList<>();
+    CountDownLatch cd = new CountDownLatch(n);
+    try (ElasticConsumerPool<Integer> pool = new ElasticConsumerPool<>(queue,
+        new ScalingPolicy(1, 4, 10, 50, 300, 20), events::add)) {
+      pool.addConsumer(m -> {
+        sleep(5);
+        cd.countDown();
+      });
+      for (int i = 0; i < n; i++) {
+        queue.put(i);
+      }
+      assertTrue("Not all messages are consumed!", cd.await(10, TimeUnit.SECONDS));
+      assertEquals("Incorrect peak number of workers!", 4, pool.getPeakWorkers());
+      assertTrue("Grow events are not emitted!", pool.getGrowEvents() > 0);
+      assertEquals("Incorrect processed count!", n, pool.getProcessedCount());
+
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (pool.getWorkerCount() > 1 && System.currentTimeMillis() < deadline) {
+        sleep(50);
+      }
+      assertEquals("Pool is not shrunk!", 1, pool.getWorkerCount());
+      assertEquals("Incorrect shrink count!", 3, pool.getShrinkEvents());
+      assertEquals("Incorrect last event!", ScalingEvent.Reason.IDLE,
+          events.get(events.size() - 1).getReason());
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for latency histogram.
+ *
+ * @author Andrey Minov
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals("Incorrent count!", 100, histogram.getCount());
+    assertEquals("Incorrent median!", 50, histogram.getValueAtPercentile(50));
+    assertEquals("Incorrent 99th percentile!", 99, histogram.getValueAtPercentile(99));
+    assertEquals("Incorrent max!", 100, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testRelativeError() {
+    for (long value = 128; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(value);
+      histogram.record(value * 2);
+      long reported = histogram.getValueAtPercentile(50);
+      assertTrue("Value is reported below bucket of " + value, reported >= value);
+      assertTrue("Error is above 1% for " + value, reported - value <= value / 100);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 990; i++) {
+      histogram.record(1_000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(1_000_000);
+    }
+    histogram.record(-5);
+    assertEquals("Incorrent max!", 1_000_000, histogram.getMax());
+    assertEquals("Incorrent min!", 0, histogram.getValueAtPercentile(0));
+    assertTrue("Incorrent 99th percentile!",
+        Math.abs(histogram.getValueAtPercentile(99) - 1_000) <= 10);
+    assertEquals("Incorrent 99.9th percentile!", 1_000_000,
+        histogram.getValueAtPercentile(99.9));
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals("Empty histogram has values!", 0,
+        new LatencyHistogram().getValueAtPercentile(99));
+  }
+}
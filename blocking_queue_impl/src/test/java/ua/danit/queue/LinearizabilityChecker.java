@@ -0,0 +1,143 @@
+package ua.danit.queue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Wing and Gong linearizability checker of concurrent queue histories against sequential FIFO
+ * queue of bounded capacity.
+ *
+ * <p>History is a list of completed operations with invocation and response time. Checker
+ * searches for an order of operations which respects real time (operation finished before
+ * another one started stays first) and in which every operation, applied to sequential queue,
+ * returns exactly what concurrent queue returned.
+ *
+ * @author Andrey Minov
+ */
+class LinearizabilityChecker {
+
+  /**
+   * Kind of queue operation.
+   */
+  enum Kind {
+    OFFER, PUT, POLL, TAKE, PEEK, DRAIN, REMOVE, SIZE, CONTAINS, REMAINING
+  }
+
+  /**
+   * Single completed operation.
+   */
+  static final class Operation {
+    private final Kind kind;
+    private final Integer argument;
+    private final Object result;
+    private final long invoked;
+    private final long responded;
+
+    Operation(Kind kind, Integer argument, Object result, long invoked, long responded) {
+      this.kind = kind;
+      this.argument = argument;
+      this.result = result;
+      this.invoked = invoked;
+      this.responded = responded;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s(%s)=%s [%d, %d]", kind, argument == null ? "" : argument, result,
+          invoked, responded);
+    }
+  }
+
+  private final int capacity;
+
+  LinearizabilityChecker(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Check if history is linearizable.
+   *
+   * @param initial the queue content before history started, head first.
+   * @param history the completed operations.
+   * @return true if history is linearizable.
+   */
+  boolean check(List<Integer> initial, List<Operation> history) {
+    if (history.size() > Long.SIZE) {
+      throw new IllegalArgumentException("History is too long!");
+    }
+    return search(history, 0L, new ArrayDeque<>(initial), new HashSet<>());
+  }
+
+  private boolean search(List<Operation> history, long done, Deque<Integer> state,
+                         Set<List<Object>> visited) {
+    if (Long.bitCount(done) == history.size()) {
+      return true;
+    }
+    if (!visited.add(Arrays.asList(done, new ArrayList<>(state)))) {
+      return false;
+    }
+    // Operation may go next only if it started before every pending operation finished.
+    long minResponse = Long.MAX_VALUE;
+    for (int i = 0; i < history.size(); i++) {
+      if ((done & (1L << i)) == 0) {
+        minResponse = Math.min(minResponse, history.get(i).responded);
+      }
+    }
+    for (int i = 0; i < history.size(); i++) {
+      Operation operation = history.get(i);
+      if ((done & (1L << i)) != 0 || operation.invoked > minResponse) {
+        continue;
+      }
+      Deque<Integer> next = new ArrayDeque<>(state);
+      if (apply(operation, next) && search(history, done | (1L << i), next, visited)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean apply(Operation operation, Deque<Integer> state) {
+    switch (operation.kind) {
+      case OFFER:
+        boolean accepted = state.size() < capacity;
+        if (accepted) {
+          state.addLast(operation.argument);
+        }
+        return Objects.equals(accepted, operation.result);
+      case PUT:
+        if (state.size() >= capacity) {
+          return false;
+        }
+        state.addLast(operation.argument);
+        return true;
+      case POLL:
+        return Objects.equals(state.pollFirst(), operation.result);
+      case TAKE:
+        return !state.isEmpty() && Objects.equals(state.pollFirst(), operation.result);
+      case PEEK:
+        return Objects.equals(state.peekFirst(), operation.result);
+      case DRAIN:
+        List<Integer> drained = new ArrayList<>();
+        while (drained.size() < operation.argument && !state.isEmpty()) {
+          drained.add(state.pollFirst());
+        }
+        return drained.equals(operation.result);
+      case REMOVE:
+        return Objects.equals(state.removeFirstOccurrence(operation.argument), operation.result);
+      case SIZE:
+        return Objects.equals(state.size(), operation.result);
+      case CONTAINS:
+        return Objects.equals(state.contains(operation.argument), operation.result);
+      case REMAINING:
+        return Objects.equals(capacity - state.size(), operation.result);
+      default:
+        throw new IllegalStateException("Unknown operation " + operation.kind);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for load generator.
+ *
+ * @author Andrey Minov
+ */
+public class LoadGeneratorTest {
+
+  @Test
+  public void testParse() {
+    Map<String, String> options = LoadGenerator.parse(
+        new String[] {"--rate", "500", "--find-max", "--queue", "parking"});
+    assertEquals("Incorrent rate!", "500", options.get("rate"));
+    assertEquals("Incorrent flag!", "true", options.get("find-max"));
+    assertEquals("Incorrent queue!", "parking", options.get("queue"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnexpectedArgument() {
+    LoadGenerator.parse(new String[] {"rate"});
+  }
+
+  @Test
+  public void testBoundedQueueLosesNoMessages() throws Exception {
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    LoadGenerator generator = new LoadGenerator(LoadGenerator.parse(new String[] {
+        "--duration", "1", "--warmup", "0", "--consumers", "1", "--capacity", "2"}),
+        new PrintStream(report, true, "UTF-8"));
+    LoadGenerator.Result result = generator.run(2000);
+    long count = result.getHistogram().getCount();
+    assertTrue("Messages are lost on full queue: " + count, Math.abs(count - 2000) <= 1);
+    assertTrue("Incorrent report!", report.toString("UTF-8").contains("undelivered=0"));
+  }
+}
@@ -0,0 +1,139 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for consumers with own mailboxes.
+ *
+ * @author Andrey Minov
+ */
+public class MailboxPubSubApplicationTest {
+
+  @Test
+  public void testAllMessagesConsumed() {
+    MailboxPubSubApplication<Integer> application = new MailboxPubSubApplication<>(2, 16);
+    List<AtomicInteger> counters = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      AtomicInteger counter = new AtomicInteger();
+      counters.add(counter);
+      application.registerConsumer(message -> counter.incrementAndGet());
+    }
+    for (int i = 0; i < 10000; i++) {
+      application.publish(i);
+    }
+    application.close();
+    assertEquals("Not all messages are consumed!", 10000,
+        counters.stream().mapToInt(AtomicInteger::get).sum());
+    assertEquals("Messages left!", 0, application.getPendingCount());
+  }
+
+  @Test
+  public void testSlowConsumerIsolated() {
+    MailboxPubSubApplication<Integer> application = new MailboxPubSubApplication<>(2, 4);
+    AtomicInteger fast = new AtomicInteger();
+    AtomicInteger slow = new AtomicInteger();
+    application.registerConsumer(message -> fast.incrementAndGet());
+    application.registerConsumer(message -> {
+      slow.incrementAndGet();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    for (int i = 0; i < 1000; i++) {
+      application.publish(i);
+    }
+    application.close();
+    assertEquals("Not all messages are consumed!", 1000, fast.get() + slow.get());
+    assertTrue("Slow consumer holds back messages!", slow.get() < 100);
+  }
+
+  @Test
+  public void testThroughputQuota() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(12);
+    List<String> handled = new CopyOnWriteArrayList<>();
+    executor.execute(() -> {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    List<Mailbox<String>> mailboxes = new ArrayList<>();
+    for (String name : Arrays.asList("a", "b")) {
+      mailboxes.add(new Mailbox<>(name, new TwoWayLockingQueue<>(), message -> {
+        handled.add(message);
+        done.countDown();
+      }, executor, 2));
+    }
+    for (int i = 0; i < 6; i++) {
+      mailboxes.get(0).offer("a");
+      mailboxes.get(1).offer("b");
+    }
+    start.countDown();
+    assertTrue("Not all messages are handled!", done.await(5, TimeUnit.SECONDS));
+    assertEquals("Mailbox exceeds throughput!",
+        Arrays.asList("a", "a", "b", "b", "a", "a", "b", "b", "a", "a", "b", "b"), handled);
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCloseReleasesBlockedPublisher() throws Exception {
+    MailboxPubSubApplication<Integer> application = new MailboxPubSubApplication<>(1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    application.registerConsumer(message -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    application.publish(1);
+    application.publish(2);
+    AtomicReference<RuntimeException> error = new AtomicReference<>();
+    Thread publisher = new Thread(() -> {
+      try {
+        application.publish(3);
+      } catch (RuntimeException e) {
+        error.set(e);
+      }
+    });
+    publisher.start();
+    Thread.sleep(50);
+    Thread closer = new Thread(application::close);
+    closer.start();
+    publisher.join(TimeUnit.SECONDS.toMillis(1));
+    assertFalse("Publisher is blocked after close!", publisher.isAlive());
+    assertTrue("Closed application is not reported!", error.get() instanceof IllegalStateException);
+    release.countDown();
+    closer.join();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPublishWithoutConsumers() {
+    MailboxPubSubApplication<String> application = new MailboxPubSubApplication<>(1, 1);
+    try {
+      application.publish("message");
+    } finally {
+      application.close();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for message codecs and application using them.
+ *
+ * @author Andrey Minov
+ */
+public class MessageCodecTest {
+  private static final FixedLayoutCodec<long[]> PAIR_CODEC = new FixedLayoutCodec<>(12,
+      (pair, buffer) -> buffer.putLong(pair[0]).putInt((int) pair[1]),
+      buffer -> new long[] {buffer.getLong(), buffer.getInt()});
+
+  @Test
+  public void testUtf8() {
+    MessageCodec<String> codec = MessageCodecs.utf8();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+    String[] messages = {"", "ascii", "\u043a\u0438\u0440\u0438\u043b\u0438\u0446\u044f",
+        "\u20ac sign", "\ud83d\ude00 emoji", "broken \uD800 pair"};
+    for (String message : messages) {
+      buffer.clear();
+      codec.encode(message, buffer);
+      buffer.flip();
+      byte[] encoded = new byte[buffer.remaining()];
+      buffer.duplicate().get(encoded);
+      assertArrayEquals("Incorrent encoding of " + message,
+          message.getBytes(StandardCharsets.UTF_8), encoded);
+      assertEquals("Incorrent decoding!", new String(encoded, StandardCharsets.UTF_8),
+          codec.decode(buffer));
+      assertEquals("Buffer is not consumed!", 0, buffer.remaining());
+    }
+    try {
+      codec.encode("too long", ByteBuffer.allocate(4));
+      throw new AssertionError("Message written past the buffer!");
+    } catch (BufferOverflowException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testBytesAndFixedLayout() {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    MessageCodecs.bytes().encode(new byte[] {1, 2, 3}, buffer);
+    buffer.flip();
+    assertArrayEquals("Incorrent bytes!", new byte[] {1, 2, 3},
+        MessageCodecs.bytes().decode(buffer));
+
+    buffer.clear();
+    PAIR_CODEC.encode(new long[] {Long.MAX_VALUE, 42}, buffer);
+    assertEquals("Incorrent record size!", 12, buffer.position());
+    buffer.flip();
+    assertArrayEquals("Incorrent record!", new long[] {Long.MAX_VALUE, 42},
+        PAIR_CODEC.decode(buffer));
+    buffer.clear().limit(8);
+    try {
+      PAIR_CODEC.decode(buffer);
+      throw new AssertionError("Record of wrong size is decoded!");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testEncodedPublishAndConsume() throws Exception {
+    CodecPubSubApplication<long[]> application = new CodecPubSubApplication<>(PAIR_CODEC, 2,
+        new TwoWayLockingQueue<>());
+    List<Long> received = new CopyOnWriteArrayList<>();
+    application.registerEncodedConsumer(buffer -> {
+      assertEquals("Incorrent encoded size!", 12, buffer.remaining());
+      received.add(buffer.getLong() + buffer.getInt());
+    });
+    ByteBuffer payload = ByteBuffer.allocate(12);
+    for (int i = 0; i < 100; i++) {
+      payload.clear();
+      payload.putLong(i).putInt(i).flip();
+      application.publishEncoded(payload);
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (received.size() < 100 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    application.close();
+    assertEquals("Not all messages are received!", 100, received.size());
+    assertTrue("Incorrent messages!", received.stream().allMatch(value -> value % 2 == 0));
+  }
+}
@@ -0,0 +1,110 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for time to live of queue elements.
+ *
+ * @author Andrey Minov
+ */
+public class QueueExpiryTest {
+
+  @Test
+  public void testQueueTtl() throws Exception {
+    TwoWayLockingQueue<String> queue = new TwoWayLockingQueue<>(10, Duration.ofMillis(50));
+    queue.offer("a");
+    queue.offer("b");
+    Thread.sleep(80);
+    queue.offer("c");
+    assertEquals("Expired element is returned!", "c", queue.poll());
+    assertEquals("Incorrent expired count!", 2, queue.getExpiredCount());
+    assertNull("Queue is not empty!", queue.poll());
+  }
+
+  @Test
+  public void testMessageTtlInDrain() throws Exception {
+    TwoWayLockingQueue<String> queue = new TwoWayLockingQueue<>(Integer.MAX_VALUE, false,
+        message -> message.startsWith("quote") ? TimeUnit.MILLISECONDS.toNanos(1)
+            : Long.MAX_VALUE);
+    queue.addAll(Arrays.asList("quote 1", "order 1", "quote 2", "order 2"));
+    Thread.sleep(20);
+    List<String> drained = new ArrayList<>();
+    assertEquals("Incorrent drained count!", 1, queue.drainTo(drained, 1));
+    assertEquals("Incorrent drained count!", 1, queue.drainTo(drained));
+    assertEquals("Expired element is drained!", Arrays.asList("order 1", "order 2"), drained);
+    assertEquals("Incorrent expired count!", 2, queue.getExpiredCount());
+    assertEquals("Expired elements are left!", 0, queue.size());
+  }
+
+  @Test
+  public void testMessageTtlInTransfer() throws Exception {
+    TwoWayLockingQueue<String> queue = new TwoWayLockingQueue<>(Integer.MAX_VALUE, false,
+        message -> message.startsWith("quote") ? TimeUnit.MILLISECONDS.toNanos(1)
+            : Long.MAX_VALUE);
+    queue.addAll(Arrays.asList("quote 1", "order 1", "quote 2", "order 2", "quote 3"));
+    Thread.sleep(20);
+    TwoWayLockingQueue<String> target = new TwoWayLockingQueue<>(10, Duration.ofMinutes(1));
+    assertEquals("Incorrent transferred count!", 1, queue.transferTo(target, 1));
+    BlockingQueue<String> other = new ArrayBlockingQueue<>(10);
+    assertEquals("Incorrent transferred count!", 1, queue.transferTo(other, 10));
+    assertEquals("Expired element is transferred!", Arrays.asList("order 1"),
+        new ArrayList<>(target));
+    assertEquals("Expired element is transferred!", Arrays.asList("order 2"),
+        new ArrayList<>(other));
+    assertEquals("Incorrent expired count!", 3, queue.getExpiredCount());
+    assertEquals("Expired elements are left!", 0, queue.size());
+  }
+
+  @Test
+  public void testExpiryFreesSpace() throws Exception {
+    TwoWayLockingQueue<String> queue = new TwoWayLockingQueue<>(2, Duration.ofMillis(20));
+    queue.put("a");
+    queue.put("b");
+    CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+      try {
+        queue.put("c");
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(40);
+    assertEquals("Producer is not waiting!", 2, queue.size());
+    assertNull("Expired element is returned!", queue.poll());
+    producer.get(5, TimeUnit.SECONDS);
+    assertEquals("Incorrent element!", "c", queue.poll());
+  }
+
+  @Test
+  public void testTakeWaitsPastExpired() throws Exception {
+    for (TwoWayLockingQueue<String> queue : Arrays.asList(
+        new TwoWayLockingQueue<String>(4, Duration.ofMillis(100)),
+        new TwoWayParkingQueue<String>(4, element -> TimeUnit.MILLISECONDS.toNanos(100)))) {
+      queue.put("stale");
+      Thread.sleep(150);
+      CompletableFuture<String> consumer = CompletableFuture.supplyAsync(() -> {
+        try {
+          return queue.take();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      Thread.sleep(20);
+      queue.put("fresh");
+      assertEquals("Incorrent element!", "fresh", consumer.get(5, TimeUnit.SECONDS));
+      assertNull("Expired element is returned!", queue.poll(10, TimeUnit.MILLISECONDS));
+      assertEquals("Expired element is not counted!", 1, queue.getExpiredCount());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for queue based flow publisher.
+ *
+ * @author Andrey Minov
+ */
+public class QueueFlowPublisherTest {
+
+  private QueueFlowPublisher<Integer> publisher;
+
+  @Before
+  public void setUp() throws Exception {
+    publisher = new QueueFlowPublisher<>(new TwoWayLockingQueue<>(5), Runnable::run, 2);
+  }
+
+  @Test
+  public void testDeliversOnlyRequested() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    for (int i = 0; i < 5; i++) {
+      publisher.publish(i);
+    }
+    assertTrue("Items delivered without demand!", subscriber.items.isEmpty());
+
+    subscriber.subscription.request(3);
+    assertEquals("Incorrect items delivered!", Arrays.asList(0, 1, 2), subscriber.items);
+    assertEquals("Demand is not fulfilled!", 0, publisher.outstandingDemand());
+
+    subscriber.subscription.request(10);
+    assertEquals("Incorrect items delivered!", Arrays.asList(0, 1, 2, 3, 4), subscriber.items);
+    publisher.publish(5);
+    assertEquals("Incorrect item delivered!", 5, (int) subscriber.items.get(5));
+    assertEquals("Incorrect outstanding demand!", 7, publisher.outstandingDemand());
+  }
+
+  @Test
+  public void testPublisherBackpressure() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      assertTrue("Item is not accepted!", publisher.offer(i));
+    }
+    assertFalse("Item accepted while no demand!", publisher.offer(5));
+
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertTrue("Item is not accepted after demand!", publisher.offer(5));
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+    publisher.publish(1);
+    publisher.publish(2);
+    assertTrue("Items delivered after cancel!", subscriber.items.isEmpty());
+    assertEquals("Subscription is not removed!", 0, publisher.subscriberCount());
+  }
+
+  @Test
+  public void testInvalidRequest() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    assertTrue("Error is not signalled!", subscriber.error instanceof IllegalArgumentException);
+  }
+
+  @Test
+  public void testCompleteAfterClose() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    publisher.publish(1);
+    publisher.close();
+    assertFalse("Completed before queue is drained!", subscriber.completed);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals("Incorrect items delivered!", Arrays.asList(1), subscriber.items);
+    assertTrue("Subscriber is not completed!", subscriber.completed);
+  }
+
+  @Test
+  public void testFailedSubscriberKeepsRestOfBatch() throws Exception {
+    RecordingSubscriber failing = new RecordingSubscriber() {
+      @Override
+      public void onNext(Integer item) {
+        throw new IllegalStateException("Broken subscriber");
+      }
+    };
+    publisher.subscribe(failing);
+    publisher.publish(1);
+    publisher.publish(2);
+    failing.subscription.request(2);
+    assertEquals("Subscriber is not removed!", 0, publisher.subscriberCount());
+
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    publisher.close();
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals("Rest of batch is lost!", Arrays.asList(2), subscriber.items);
+    assertTrue("Subscriber is not completed!", subscriber.completed);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPublishAfterClose() throws Exception {
+    publisher.close();
+    publisher.publish(1);
+  }
+
+  private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+    private final List<Integer> items = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+    private boolean completed;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests for weakly consistent iterators of blocking queue implementations.
+ *
+ * @author Andrey Minov
+ */
+public class QueueIteratorTest {
+  private static final int ELEMENTS = 10000;
+
+  @Test
+  public void testIteratorRemove() {
+    for (String name : BlockingQueues.names()) {
+      for (int capacity : new int[] {4, Integer.MAX_VALUE}) {
+        BlockingQueue<Integer> queue = BlockingQueues.create(name, capacity);
+        queue.addAll(Arrays.asList(1, 2, 3, 4));
+        Iterator<Integer> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+          if (iterator.next() % 2 == 0) {
+            iterator.remove();
+          }
+        }
+        assertEquals(name + ": incorrent content!", Arrays.asList(1, 3),
+            Arrays.asList(queue.toArray(new Integer[0])));
+        assertTrue(name + ": incorrent offer!", queue.offer(5));
+        assertEquals(name + ": incorrent content!", Arrays.asList(1, 3, 5),
+            new ArrayList<>(queue));
+      }
+    }
+  }
+
+  @Test
+  public void testIteratorRemovesReturnedDuplicate() {
+    for (String name : BlockingQueues.names()) {
+      BlockingQueue<Integer> queue = BlockingQueues.create(name, 4);
+      queue.addAll(Arrays.asList(1, 2, 1));
+      Iterator<Integer> iterator = queue.iterator();
+      iterator.next();
+      iterator.next();
+      iterator.next();
+      iterator.remove();
+      assertEquals(name + ": incorrent content!", Arrays.asList(1, 2), new ArrayList<>(queue));
+
+      iterator = queue.iterator();
+      iterator.next();
+      queue.poll();
+      queue.add(1);
+      iterator.remove();
+      assertEquals(name + ": incorrent content!", Arrays.asList(2, 1), new ArrayList<>(queue));
+    }
+  }
+
+  @Test
+  public void testSeesElementsPresentDuringIteration() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      for (int capacity : new int[] {ELEMENTS, Integer.MAX_VALUE}) {
+        BlockingQueue<Integer> queue = BlockingQueues.create(name, capacity);
+        for (int i = 0; i < ELEMENTS; i++) {
+          queue.add(i);
+        }
+        // Odd elements are removed while iterating, every even one must be seen.
+        Thread remover = new Thread(() -> {
+          for (int i = 1; i < ELEMENTS; i += 2) {
+            queue.remove(i);
+          }
+        });
+        remover.start();
+        List<Integer> seen = iterate(name, queue);
+        remover.join();
+        List<Integer> even = new ArrayList<>();
+        for (int value : seen) {
+          if (value % 2 == 0) {
+            even.add(value);
+          }
+        }
+        assertEquals(name + ": not all elements seen!", ELEMENTS / 2, even.size());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentPutAndTake() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      for (int capacity : new int[] {16, Integer.MAX_VALUE}) {
+        BlockingQueue<Integer> queue = BlockingQueues.create(name, capacity);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+          for (int i = 0; running.get(); i++) {
+            try {
+              queue.put(i);
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+        });
+        Thread consumer = new Thread(() -> {
+          while (running.get() || !queue.isEmpty()) {
+            queue.poll();
+          }
+        });
+        producer.start();
+        consumer.start();
+        for (int i = 0; i < 1000; i++) {
+          iterate(name, queue);
+        }
+        running.set(false);
+        producer.join();
+        consumer.join();
+      }
+    }
+  }
+
+  private static List<Integer> iterate(String name, BlockingQueue<Integer> queue) {
+    List<Integer> seen = new ArrayList<>();
+    int previous = -1;
+    for (Integer value : queue) {
+      assertTrue(name + ": elements out of order or repeated!", value > previous);
+      previous = value;
+      seen.add(value);
+    }
+    return seen;
+  }
+}
@@ -0,0 +1,171 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ua.danit.queue.LinearizabilityChecker.Kind;
+import ua.danit.queue.LinearizabilityChecker.Operation;
+
+/**
+ * Randomized linearizability tests of all blocking queue implementations.
+ *
+ * <p>Several threads run short random sequences of operations on a small queue, recording
+ * invocation and response time of each, and history is checked by
+ * {@link LinearizabilityChecker}. Threads blocked in put or take longer than expected are
+ * helped by main thread, which polls from full or offers into empty queue. Helping operations
+ * are part of the history. Blocked thread which cannot be helped means lost wake-up.
+ *
+ * @author Andrey Minov
+ */
+public class QueueLinearizabilityTest {
+  private static final int THREADS = 3;
+  private static final int OPERATIONS = 4;
+  private static final int CAPACITY = 3;
+  private static final int HISTORIES = 300;
+  private static final int MAX_HELPS = 20;
+  private static final long HELP_AFTER_MILLIS = 20;
+
+  private ExecutorService executor;
+  private Random random;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(THREADS);
+    random = new Random(7);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testQueues() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      for (int i = 0; i < HISTORIES; i++) {
+        checkHistory(name);
+      }
+    }
+  }
+
+  private void checkHistory(String name) throws Exception {
+    BlockingQueue<Integer> queue = BlockingQueues.create(name, CAPACITY);
+    List<Integer> initial = new ArrayList<>();
+    AtomicInteger values = new AtomicInteger();
+    int prefill = random.nextInt(CAPACITY + 1);
+    for (int i = 0; i < prefill; i++) {
+      Integer value = values.incrementAndGet();
+      queue.add(value);
+      initial.add(value);
+    }
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<Operation>>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      List<Kind> plan = new ArrayList<>();
+      for (int i = 0; i < OPERATIONS; i++) {
+        plan.add(Kind.values()[random.nextInt(Kind.values().length)]);
+      }
+      long seed = random.nextLong();
+      Callable<List<Operation>> task = () -> {
+        start.await();
+        Random local = new Random(seed);
+        List<Operation> operations = new ArrayList<>();
+        for (Kind kind : plan) {
+          operations.add(execute(queue, kind, values, local));
+        }
+        return operations;
+      };
+      futures.add(executor.submit(task));
+    }
+    start.countDown();
+
+    List<Operation> history = new ArrayList<>();
+    int helps = 0;
+    for (Future<List<Operation>> future : futures) {
+      while (true) {
+        try {
+          history.addAll(future.get(HELP_AFTER_MILLIS, TimeUnit.MILLISECONDS));
+          break;
+        } catch (TimeoutException e) {
+          int size = queue.size();
+          if (helps++ == MAX_HELPS || size > 0 && size < CAPACITY) {
+            fail(name + ": thread is blocked while queue size is " + size + ", history "
+                + history);
+          }
+          history.add(execute(queue, size == 0 ? Kind.OFFER : Kind.POLL, values, random));
+        } catch (ExecutionException e) {
+          throw new AssertionError(name + ": operation failed", e.getCause());
+        }
+      }
+    }
+    assertTrue(name + ": history is not linearizable from " + initial + ": " + history,
+        new LinearizabilityChecker(CAPACITY).check(initial, history));
+  }
+
+  private static Operation execute(BlockingQueue<Integer> queue, Kind kind, AtomicInteger values,
+                                   Random random) throws InterruptedException {
+    Integer argument = null;
+    Object result = null;
+    long invoked = System.nanoTime();
+    switch (kind) {
+      case OFFER:
+        argument = values.incrementAndGet();
+        result = queue.offer(argument);
+        break;
+      case PUT:
+        argument = values.incrementAndGet();
+        queue.put(argument);
+        break;
+      case POLL:
+        result = queue.poll();
+        break;
+      case TAKE:
+        result = queue.take();
+        break;
+      case PEEK:
+        result = queue.peek();
+        break;
+      case DRAIN:
+        argument = 1 + random.nextInt(CAPACITY);
+        List<Integer> drained = new ArrayList<>();
+        queue.drainTo(drained, argument);
+        result = drained;
+        break;
+      case REMOVE:
+        argument = 1 + random.nextInt(Math.max(1, values.get()));
+        result = queue.remove(argument);
+        break;
+      case SIZE:
+        result = queue.size();
+        break;
+      case CONTAINS:
+        argument = 1 + random.nextInt(Math.max(1, values.get()));
+        result = queue.contains(argument);
+        break;
+      case REMAINING:
+        result = queue.remainingCapacity();
+        break;
+      default:
+        throw new IllegalStateException("Unknown operation " + kind);
+    }
+    return new Operation(kind, argument, result, invoked, System.nanoTime());
+  }
+}
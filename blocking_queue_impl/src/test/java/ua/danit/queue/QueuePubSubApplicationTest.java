@@ -0,0 +1,165 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for queue publisher-subscriber application.
+ *
+ * @author Andrey Minov
+ */
+public class QueuePubSubApplicationTest {
+
+  @Test
+  public void testCloseWakesUpConsumers() {
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    application.registerConsumer(m -> { });
+    application.registerConsumer(m -> { });
+    long time = System.nanoTime();
+    assertTrue("Messages left!", application.close(Duration.ofSeconds(5)).isEmpty());
+    assertTrue("Consumers are not woken up on close!",
+        System.nanoTime() - time < TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testCloseDrainsQueue() {
+    int n = 100;
+    AtomicInteger received = new AtomicInteger();
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    application.registerConsumer(m -> sleepAndCount(1, received));
+    application.registerConsumer(m -> sleepAndCount(1, received));
+    for (int i = 0; i < n; i++) {
+      application.publish(String.valueOf(i));
+    }
+    assertTrue("Messages left!", application.close(Duration.ofSeconds(10)).isEmpty());
+    assertEquals("Not all messages consumed!", n, received.get());
+  }
+
+  @Test
+  public void testCloseReportsUndelivered() {
+    int n = 100;
+    AtomicInteger received = new AtomicInteger();
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.registerConsumer(m -> sleepAndCount(20, received));
+    for (int i = 0; i < n; i++) {
+      application.publish(String.valueOf(i));
+    }
+    List<String> remaining = application.close(Duration.ofMillis(100));
+    assertFalse("Nothing reported as undelivered!", remaining.isEmpty());
+    assertEquals("Messages are lost!", n, received.get() + remaining.size());
+  }
+
+  @Test
+  public void testCloseDuringPublishLosesNothing() throws Exception {
+    AtomicInteger received = new AtomicInteger();
+    AtomicInteger published = new AtomicInteger();
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    application.registerConsumer(m -> received.incrementAndGet());
+    application.registerConsumer(m -> received.incrementAndGet());
+    List<Thread> publishers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread publisher = new Thread(() -> {
+        try {
+          while (true) {
+            application.publish("message");
+            published.incrementAndGet();
+          }
+        } catch (IllegalStateException e) {
+          // Application is closed.
+        }
+      });
+      publishers.add(publisher);
+      publisher.start();
+    }
+    Thread.sleep(50);
+    List<String> remaining = application.close(Duration.ofSeconds(10));
+    for (Thread publisher : publishers) {
+      publisher.join();
+    }
+    assertEquals("Messages are lost!", published.get(), received.get() + remaining.size());
+  }
+
+  @Test
+  public void testDrainDoesNotInterruptConsumer() {
+    AtomicInteger interrupted = new AtomicInteger();
+    for (int round = 0; round < 20; round++) {
+      QueuePubSubApplication application = new QueuePubSubApplication(4);
+      for (int i = 0; i < 4; i++) {
+        application.registerConsumer(m -> {
+          if (Thread.currentThread().isInterrupted()) {
+            interrupted.incrementAndGet();
+          }
+        });
+      }
+      for (int i = 0; i < 100; i++) {
+        application.publish(String.valueOf(i));
+      }
+      assertTrue("Messages left!", application.close(Duration.ofSeconds(5)).isEmpty());
+    }
+    assertEquals("Consumer runs interrupted!", 0, interrupted.get());
+  }
+
+  @Test
+  public void testCloseLetsConsumersFinish() throws Exception {
+    int n = 5;
+    AtomicInteger received = new AtomicInteger();
+    AtomicInteger interrupted = new AtomicInteger();
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.registerConsumer(m -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        interrupted.incrementAndGet();
+      }
+      received.incrementAndGet();
+    });
+    for (int i = 0; i < n; i++) {
+      application.publish(String.valueOf(i));
+    }
+    long time = System.nanoTime();
+    application.close();
+    assertTrue("Close waits for consumers!",
+        System.nanoTime() - time < TimeUnit.MILLISECONDS.toNanos(100));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (received.get() < n && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals("Not all messages consumed!", n, received.get());
+    assertEquals("Consumer is interrupted!", 0, interrupted.get());
+  }
+
+  @Test
+  public void testPublishAllIntoBoundedQueue() {
+    QueuePubSubApplication application = new QueuePubSubApplication(1,
+        new TwoWayLockingQueue<>(3));
+    application.publishAll(Arrays.asList("a", "b", "c", "d", "e"));
+    assertEquals("Fitting messages are not published!", Arrays.asList("a", "b", "c"),
+        application.close(Duration.ZERO));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPublishAfterClose() {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.close();
+    application.publish("message");
+  }
+
+  private static void sleepAndCount(long millis, AtomicInteger counter) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    counter.incrementAndGet();
+  }
+}
@@ -0,0 +1,142 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for selector waiting on several queues.
+ *
+ * @author Andrey Minov
+ */
+public class QueueSelectorTest {
+  private static final int CONSUMERS = 4;
+  private static final int MESSAGES = 10000;
+
+  @Test
+  public void testSelectReadyQueue() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      BlockingQueue<Integer> control = BlockingQueues.create(name, 16);
+      BlockingQueue<Integer> data = BlockingQueues.create(name, 16);
+      try (QueueSelector<Integer> selector = new QueueSelector<>()) {
+        selector.register(data);
+        selector.register(control, 1);
+        assertNull("Selected empty queue! " + name, selector.selectNow());
+        assertNull("Selected empty queue! " + name,
+            selector.select(1, TimeUnit.MILLISECONDS));
+        data.add(1);
+        assertSame("Incorrent queue is selected! " + name, data, selector.selectNow());
+        control.add(2);
+        assertSame("Priority is not respected! " + name, control, selector.select());
+        assertEquals("Incorrent element! " + name, 2, (int) selector.take());
+        assertEquals("Incorrent element! " + name, 1, (int) selector.take());
+      }
+    }
+  }
+
+  @Test
+  public void testFairness() throws Exception {
+    BlockingQueue<Integer> first = new TwoWayLockingQueue<>();
+    BlockingQueue<Integer> second = new TwoWayLockingQueue<>();
+    for (int i = 0; i < 4; i++) {
+      first.add(i);
+      second.add(-i);
+    }
+    try (QueueSelector<Integer> fair = new QueueSelector<>(true)) {
+      fair.register(first);
+      fair.register(second);
+      List<Integer> result = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        result.add(fair.take());
+      }
+      assertEquals("Queues are not rotated!", Arrays.asList(0, 0, 1, -1), result);
+    }
+    try (QueueSelector<Integer> unfair = new QueueSelector<>()) {
+      unfair.register(first);
+      unfair.register(second);
+      assertEquals("Incorrent element!", 2, (int) unfair.take());
+      assertEquals("Incorrent element!", 3, (int) unfair.take());
+      assertEquals("Incorrent element!", -2, (int) unfair.take());
+    }
+  }
+
+  @Test
+  public void testWaitingSelectIsWoken() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      BlockingQueue<Integer> control = BlockingQueues.create(name, 16);
+      BlockingQueue<Integer> data = BlockingQueues.create(name, 16);
+      try (QueueSelector<Integer> selector = new QueueSelector<>()) {
+        selector.register(control);
+        selector.register(data);
+        AtomicReference<Integer> received = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+          try {
+            received.set(selector.take());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+          Thread.sleep(1);
+        }
+        data.put(7);
+        consumer.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals("Element is not received! " + name, Integer.valueOf(7), received.get());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentSelect() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      List<BlockingQueue<Integer>> queues = Arrays.asList(BlockingQueues.create(name, 64),
+          BlockingQueues.create(name, 64));
+      try (QueueSelector<Integer> selector = new QueueSelector<>(true)) {
+        queues.forEach(selector::register);
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(CONSUMERS);
+        for (int i = 0; i < CONSUMERS; i++) {
+          new Thread(() -> {
+            try {
+              while (selector.take() >= 0) {
+                received.incrementAndGet();
+              }
+              done.countDown();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }).start();
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+          queues.get(i % 2).put(i);
+        }
+        for (int i = 0; i < CONSUMERS; i++) {
+          queues.get(i % 2).put(-1);
+        }
+        assertTrue("Consumers are not finished! " + name, done.await(10, TimeUnit.SECONDS));
+        assertEquals("Not all messages are received! " + name, MESSAGES, received.get());
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testForeignQueue() {
+    try (QueueSelector<Integer> selector = new QueueSelector<>()) {
+      selector.register(new LinkedBlockingQueue<>());
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for topic publisher-subscriber application.
+ *
+ * @author Andrey Minov
+ */
+public class QueueTopicApplicationTest {
+
+  @Test
+  public void testEverySubscriberGetsTopicMessages() throws Exception {
+    QueueTopicApplication<String> application = new QueueTopicApplication<>(2);
+    List<String> first = new CopyOnWriteArrayList<>();
+    List<String> second = new CopyOnWriteArrayList<>();
+    List<String> other = new CopyOnWriteArrayList<>();
+    application.subscribe("orders", first::add);
+    application.subscribe("orders", second::add);
+    application.subscribe("quotes", other::add);
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      application.publish("orders", "order " + i);
+      expected.add("order " + i);
+    }
+    application.publish("quotes", "quote");
+    application.publish("nobody", "lost");
+    application.close();
+    assertEquals("Incorrent messages of first subscriber!", expected, first);
+    assertEquals("Incorrent messages of second subscriber!", expected, second);
+    assertEquals("Incorrent messages of other topic!", Collections.singletonList("quote"),
+        other);
+    assertEquals("Incorrent dropped count!", 1, application.getDroppedCount());
+  }
+
+  @Test
+  public void testCancelledSubscription() throws Exception {
+    QueueTopicApplication<String> application = new QueueTopicApplication<>(1);
+    List<String> received = new CopyOnWriteArrayList<>();
+    TopicPubSubApplication.Subscription subscription = application.subscribe("topic",
+        received::add);
+    assertEquals("Incorrent topic!", "topic", subscription.getTopic());
+    application.publish("topic", "first");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (received.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    subscription.cancel();
+    application.publish("topic", "second");
+    application.close();
+    assertEquals("Message is delivered after cancel!", Arrays.asList("first"), received);
+  }
+
+  @Test
+  public void testManyTopicsShareThreads() throws Exception {
+    int topics = 5000;
+    QueueTopicApplication<Integer> application = new QueueTopicApplication<>(4);
+    int threadsBefore = Thread.activeCount();
+    CountDownLatch latch = new CountDownLatch(topics * 2);
+    for (int i = 0; i < topics; i++) {
+      application.subscribe("topic-" + i, message -> latch.countDown());
+    }
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < topics; i++) {
+        application.publish("topic-" + i, i);
+      }
+    }
+    assertTrue("Not all messages are delivered!", latch.await(10, TimeUnit.SECONDS));
+    assertEquals("Incorrent topic count!", topics, application.getTopicCount());
+    assertTrue("Topics start own threads!", Thread.activeCount() - threadsBefore <= 4);
+    application.close();
+  }
+
+  @Test
+  public void testPatternMatching() {
+    SubscriptionTrie<String> trie = new SubscriptionTrie<>();
+    for (String pattern : Arrays.asList("orders.*.eu", "orders.#", "#", "*.new.*", "orders")) {
+      trie.computeIfAbsent(pattern, name -> name);
+    }
+    assertEquals("Incorrent matches!", Arrays.asList("#", "orders.#", "orders.*.eu", "*.new.*"),
+        match(trie, "orders.new.eu"));
+    assertEquals("Incorrent matches!", Arrays.asList("#", "orders.#", "orders"),
+        match(trie, "orders"));
+    assertEquals("Incorrent matches!", Arrays.asList("#", "orders.#"),
+        match(trie, "orders.new.eu.x.y"));
+    assertEquals("Incorrent matches!", Arrays.asList("#", "orders.#", "orders.*.eu"),
+        match(trie, "orders.*.eu"));
+    assertTrue("Pattern is not recognized!", SubscriptionTrie.isPattern("orders.*.eu"));
+    assertTrue("Topic is recognized as pattern!", !SubscriptionTrie.isPattern("orders.eu"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTailInsidePattern() {
+    new SubscriptionTrie<String>().computeIfAbsent("orders.#.eu", name -> name);
+  }
+
+  @Test
+  public void testWildcardSubscriptions() throws Exception {
+    QueueTopicApplication<String> application = new QueueTopicApplication<>(2);
+    List<String> europe = new CopyOnWriteArrayList<>();
+    List<String> orders = new CopyOnWriteArrayList<>();
+    application.subscribe("orders.*.eu", europe::add);
+    TopicPubSubApplication.Subscription all = application.subscribe("orders.#", orders::add);
+    application.publish("orders.new.eu", "new eu");
+    application.publish("orders.new.us", "new us");
+    application.publish("quotes.new.eu", "quote");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (orders.size() < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    all.cancel();
+    application.publish("orders.paid.eu", "paid eu");
+    List<String> late = new CopyOnWriteArrayList<>();
+    application.subscribe("*.paid.*", late::add);
+    application.publish("orders.paid.eu", "paid eu again");
+    application.close();
+    assertEquals("Incorrent messages of one word pattern!",
+        Arrays.asList("new eu", "paid eu", "paid eu again"), europe);
+    assertEquals("Incorrent messages of tail pattern!", Arrays.asList("new eu", "new us"),
+        orders);
+    assertEquals("Cached match is not invalidated!", Arrays.asList("paid eu again"), late);
+    assertEquals("Incorrent dropped count!", 1, application.getDroppedCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPublishAfterClose() {
+    QueueTopicApplication<String> application = new QueueTopicApplication<>(1);
+    application.close();
+    application.publish("topic", "message");
+  }
+
+  private static List<String> match(SubscriptionTrie<String> trie, String topic) {
+    List<String> matched = new ArrayList<>();
+    trie.match(topic, matched::add);
+    return matched;
+  }
+}
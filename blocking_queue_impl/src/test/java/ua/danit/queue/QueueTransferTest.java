@@ -0,0 +1,178 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for bulk transfer between queues.
+ *
+ * @author Andrey Minov
+ */
+public class QueueTransferTest {
+  private static final int ROUNDS = 2000;
+
+  @Test
+  public void testDrainKeepsElementRefusedByCollection() {
+    for (BlockingQueue<Integer> queue : Arrays.<BlockingQueue<Integer>>asList(
+        new TwoWayLockingQueue<>(8), new TwoWayParkingQueue<>(8))) {
+      String name = queue.getClass().getSimpleName();
+      queue.addAll(Arrays.asList(0, 1, 2, 3));
+      List<Integer> drained = new ArrayList<Integer>() {
+        @Override
+        public boolean add(Integer element) {
+          if (element == 2) {
+            throw new IllegalStateException("Refused");
+          }
+          return super.add(element);
+        }
+      };
+      try {
+        queue.drainTo(drained);
+      } catch (IllegalStateException e) {
+        // Collection refused the element, the rest must stay in the queue.
+      }
+      assertEquals("Incorrent drained elements! " + name, Arrays.asList(0, 1), drained);
+      assertEquals("Refused element is lost! " + name, Arrays.asList(2, 3),
+          new ArrayList<>(queue));
+      assertEquals("Incorrent size! " + name, 2, queue.size());
+    }
+  }
+
+  @Test
+  public void testTransferRespectsTargetCapacity() {
+    for (String sourceName : BlockingQueues.names()) {
+      for (String targetName : BlockingQueues.names()) {
+        BlockingQueue<Integer> source = BlockingQueues.create(sourceName, 8);
+        BlockingQueue<Integer> target = BlockingQueues.create(targetName, 5);
+        for (int i = 0; i < 8; i++) {
+          source.add(i);
+        }
+        target.add(-2);
+        target.add(-1);
+        String pair = sourceName + " -> " + targetName;
+        assertEquals("Incorrent number of moved elements! " + pair, 3,
+            transfer(source, target, 10));
+        assertEquals("Incorrent target! " + pair, Arrays.asList(-2, -1, 0, 1, 2),
+            new ArrayList<>(target));
+        assertEquals("Incorrent source! " + pair, Arrays.asList(3, 4, 5, 6, 7),
+            new ArrayList<>(source));
+        assertEquals("Incorrent number of moved elements! " + pair, 0,
+            transfer(source, target, 10));
+        target.clear();
+        assertEquals("Incorrent number of moved elements! " + pair, 2,
+            transfer(source, target, 2));
+        assertEquals("Incorrent target! " + pair, Arrays.asList(3, 4), new ArrayList<>(target));
+        assertEquals("Incorrent source size! " + pair, 3, source.size());
+      }
+    }
+  }
+
+  @Test
+  public void testTransferToForeignQueue() {
+    for (String name : BlockingQueues.names()) {
+      BlockingQueue<Integer> source = BlockingQueues.create(name, 8);
+      BlockingQueue<Integer> target = new ArrayBlockingQueue<>(2);
+      for (int i = 0; i < 4; i++) {
+        source.add(i);
+      }
+      assertEquals("Incorrent number of moved elements! " + name, 2,
+          transfer(source, target, 10));
+      assertEquals("Incorrent target! " + name, Arrays.asList(0, 1), new ArrayList<>(target));
+      assertEquals("Incorrent source! " + name, Arrays.asList(2, 3), new ArrayList<>(source));
+    }
+  }
+
+  @Test
+  public void testTransferWakesWaiters() throws Exception {
+    for (String name : BlockingQueues.names()) {
+      BlockingQueue<Integer> source = BlockingQueues.create(name, 2);
+      BlockingQueue<Integer> target = BlockingQueues.create(name, 2);
+      source.add(1);
+      source.add(2);
+      CountDownLatch done = new CountDownLatch(3);
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        threads.add(new Thread(() -> {
+          try {
+            target.take();
+            done.countDown();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }));
+      }
+      threads.add(new Thread(() -> {
+        try {
+          source.put(3);
+          done.countDown();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        while (thread.getState() != Thread.State.WAITING) {
+          Thread.sleep(1);
+        }
+      }
+      assertEquals("Incorrent number of moved elements! " + name, 2,
+          transfer(source, target, 2));
+      assertTrue("Not all waiters are woken! " + name, done.await(5, TimeUnit.SECONDS));
+      assertEquals("Incorrent source! " + name, Arrays.asList(3), new ArrayList<>(source));
+    }
+  }
+
+  @Test
+  public void testOppositeTransfersDoNotDeadlock() throws Exception {
+    for (String first : BlockingQueues.names()) {
+      for (String second : BlockingQueues.names()) {
+        BlockingQueue<Integer> left = BlockingQueues.create(first, 16);
+        BlockingQueue<Integer> right = BlockingQueues.create(second, 16);
+        for (int i = 0; i < 16; i++) {
+          left.add(i);
+          right.add(-i - 1);
+        }
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread forward = new Thread(() -> shuffle(left, right, error));
+        Thread backward = new Thread(() -> shuffle(right, left, error));
+        forward.start();
+        backward.start();
+        forward.join(TimeUnit.SECONDS.toMillis(10));
+        backward.join(TimeUnit.SECONDS.toMillis(10));
+        String pair = first + " <-> " + second;
+        assertTrue("Transfers are deadlocked! " + pair, !forward.isAlive() && !backward.isAlive());
+        assertEquals("Unexpected error! " + pair, null, error.get());
+        assertEquals("Not all elements are kept! " + pair, 32, left.size() + right.size());
+      }
+    }
+  }
+
+  private static void shuffle(BlockingQueue<Integer> source, BlockingQueue<Integer> target,
+                              AtomicReference<Throwable> error) {
+    try {
+      for (int i = 0; i < ROUNDS; i++) {
+        transfer(source, target, 1 + i % 8);
+      }
+    } catch (RuntimeException e) {
+      error.set(e);
+    }
+  }
+
+  private static int transfer(BlockingQueue<Integer> source, BlockingQueue<Integer> target,
+                              int maxElements) {
+    return Transfers.transfer(source, Transfers.sideOf(source), target, maxElements);
+  }
+}
@@ -0,0 +1,140 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for retries of failed messages and dead-letter queue.
+ *
+ * @author Andrey Minov
+ */
+public class RetryTest {
+
+  @Test
+  public void testExponentialBackoff() {
+    RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(35));
+    assertEquals("Incorrent first backoff!", TimeUnit.MILLISECONDS.toNanos(10),
+        policy.backoffNanos(1));
+    assertEquals("Incorrent second backoff!", TimeUnit.MILLISECONDS.toNanos(20),
+        policy.backoffNanos(2));
+    assertEquals("Backoff is not capped!", TimeUnit.MILLISECONDS.toNanos(35),
+        policy.backoffNanos(3));
+    assertEquals("Backoff overflows!", TimeUnit.MILLISECONDS.toNanos(35),
+        policy.backoffNanos(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testRetryUntilSuccess() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.retryFailed(new RetryPolicy(3, Duration.ofMillis(5), Duration.ofMillis(20)));
+    ConcurrentHashMap<String, Integer> attempts = new ConcurrentHashMap<>();
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerConsumer(message -> {
+      if (attempts.merge(message, 1, Integer::sum) < 3) {
+        throw new IllegalStateException("Not yet");
+      }
+      received.add(message);
+    });
+    application.publish("message");
+    awaitSize(received, 1);
+    assertEquals("Message is not retried!", Arrays.asList("message"), received);
+    assertEquals("Incorrent retry count!", 2, application.getRetryCount());
+    assertEquals("Message is dead!", 0, application.getDeadLetterQueue().size());
+    assertTrue("Messages left!", application.close(Duration.ofSeconds(1)).isEmpty());
+  }
+
+  @Test
+  public void testDeadLetterReplay() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(2);
+    application.retryFailed(new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(1)));
+    List<String> failing = new CopyOnWriteArrayList<>(Arrays.asList("a", "b", "c"));
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerConsumer(message -> {
+      if (failing.contains(message)) {
+        throw new IllegalArgumentException("Poison " + message);
+      }
+      received.add(message);
+    });
+    application.publishAll(Arrays.asList("a", "b", "c", "d"));
+    DeadLetterQueue<String> deadLetters = application.getDeadLetterQueue();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (deadLetters.size() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals("Not all messages are dead!", 3, deadLetters.size());
+    for (DeadLetterQueue.DeadLetter<String> letter : deadLetters.inspect()) {
+      assertEquals("Incorrent attempts!", 2, letter.getAttempts());
+      assertEquals("Incorrent cause!", "Poison " + letter.getMessage(),
+          letter.getCause().getMessage());
+    }
+    failing.clear();
+    assertEquals("Incorrent replay count!", 1,
+        deadLetters.replay(letter -> letter.getMessage().equals("b")));
+    assertEquals("Incorrent replay count!", 2, deadLetters.replay());
+    awaitSize(received, 4);
+    assertEquals("Incorrent messages!", Arrays.asList("a", "b", "c", "d"),
+        received.stream().sorted().collect(Collectors.toList()));
+    assertEquals("Dead letters left!", 0, deadLetters.size());
+    application.close();
+  }
+
+  @Test
+  public void testReplayAfterCloseKeepsLetters() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.retryFailed(new RetryPolicy(1, Duration.ofMillis(1), Duration.ofMillis(1)));
+    application.registerConsumer(message -> {
+      throw new IllegalArgumentException("Poison " + message);
+    });
+    application.publish("poison");
+    DeadLetterQueue<String> deadLetters = application.getDeadLetterQueue();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (deadLetters.size() < 1 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    application.close();
+    try {
+      deadLetters.replay();
+      fail("Replayed into closed application!");
+    } catch (IllegalStateException e) {
+      assertEquals("Dead letter is lost!", 1, deadLetters.size());
+    }
+  }
+
+  @Test
+  public void testRetryDoesNotBlockConsumer() throws Exception {
+    QueuePubSubApplication application = new QueuePubSubApplication(1);
+    application.retryFailed(new RetryPolicy(2, Duration.ofMinutes(1), Duration.ofMinutes(1)));
+    List<String> received = new CopyOnWriteArrayList<>();
+    application.registerConsumer(message -> {
+      if (message.equals("poison")) {
+        throw new IllegalStateException("Poison");
+      }
+      received.add(message);
+    });
+    application.publish("poison");
+    application.publish("next");
+    awaitSize(received, 1);
+    assertEquals("Consumer is blocked by retry!", Arrays.asList("next"), received);
+    assertEquals("Retry is not pending!", 1, application.getPendingRetryCount());
+    assertEquals("Pending retry is lost!", Arrays.asList("poison"),
+        application.close(Duration.ofSeconds(1)));
+  }
+
+  private static void awaitSize(List<?> list, int size) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (list.size() < size && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+/**
+ * Tests for TCP ingestion server, running over loopback.
+ *
+ * @author Andrey Minov
+ */
+public class TcpIngestionServerTest {
+
+  @Test
+  public void testManyClients() throws Exception {
+    int clients = 5;
+    int messages = 100;
+    RecordingApplication application = new RecordingApplication(clients * messages);
+    try (TcpIngestionServer server = new TcpIngestionServer(application, 0, 2)) {
+      server.start();
+      List<SocketChannel> channels = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        channels.add(SocketChannel.open(server.getLocalAddress()));
+      }
+      for (int i = 0; i < messages; i++) {
+        for (int c = 0; c < clients; c++) {
+          write(channels.get(c), frame("client " + c + " message " + i));
+        }
+      }
+      for (SocketChannel channel : channels) {
+        channel.close();
+      }
+      assertTrue("Not all messages received!", application.latch.await(5, TimeUnit.SECONDS));
+      assertEquals("Incorrect received count!", clients * messages, server.getReceivedCount());
+      assertTrue("Message is not received!",
+          application.messages.contains("client 3 message 42"));
+    }
+  }
+
+  @Test
+  public void testFrameSplitAcrossWrites() throws Exception {
+    RecordingApplication application = new RecordingApplication(2);
+    try (TcpIngestionServer server = new TcpIngestionServer(application, 0, 1)) {
+      server.start();
+      InetSocketAddress address = server.getLocalAddress();
+      try (SocketChannel channel = SocketChannel.open(address)) {
+        ByteBuffer first = frame("привіт");
+        ByteBuffer second = frame("world");
+        ByteBuffer data = ByteBuffer.allocate(first.remaining() + second.remaining());
+        data.put(first).put(second).flip();
+        for (int i = 0; i < data.limit(); i++) {
+          ByteBuffer single = ByteBuffer.wrap(new byte[] {data.get(i)});
+          write(channel, single);
+          Thread.sleep(1);
+        }
+      }
+      assertTrue("Not all messages received!", application.latch.await(5, TimeUnit.SECONDS));
+      assertEquals("Incorrect first message!", "привіт", application.messages.poll());
+      assertEquals("Incorrect second message!", "world", application.messages.poll());
+    }
+  }
+
+  private static ByteBuffer frame(String message) {
+    byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + payload.length);
+    buffer.putInt(payload.length).put(payload).flip();
+    return buffer;
+  }
+
+  private static void write(SocketChannel channel, ByteBuffer buffer) throws Exception {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static class RecordingApplication implements PubSubApplication<String> {
+    private final Queue<String> messages = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch latch;
+
+    private RecordingApplication(int expected) {
+      this.latch = new CountDownLatch(expected);
+    }
+
+    @Override
+    public void registerConsumer(Consumer<String> messageConsumer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void publish(String message) {
+      messages.add(message);
+      latch.countDown();
+    }
+
+    @Override
+    public void publishAll(Collection<String> batch) {
+      for (String message : batch) {
+        publish(message);
+      }
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
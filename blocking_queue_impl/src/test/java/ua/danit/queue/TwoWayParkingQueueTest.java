@@ -0,0 +1,65 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests for two way queue parking waiting threads.
+ *
+ * @author Andrey Minov
+ */
+public class TwoWayParkingQueueTest {
+
+  @Test
+  public void testTimedWaits() throws Exception {
+    TwoWayParkingQueue<Integer> queue = new TwoWayParkingQueue<>(1);
+    long time = System.nanoTime();
+    assertNull("Element from empty queue!", queue.poll(500, TimeUnit.MICROSECONDS));
+    assertTrue("Queue must be empty!", queue.offer(1, 500, TimeUnit.MICROSECONDS));
+    assertFalse("Element offered into full queue!", queue.offer(2, 500, TimeUnit.MICROSECONDS));
+    assertTrue("Timed wait took too long!",
+        System.nanoTime() - time < TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testInterruptedWaiterPassesWakeUp() throws Exception {
+    TwoWayParkingQueue<Integer> queue = new TwoWayParkingQueue<>();
+    AtomicBoolean interrupted = new AtomicBoolean();
+    Thread first = new Thread(() -> {
+      try {
+        queue.take();
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+      }
+    });
+    CountDownLatch received = new CountDownLatch(1);
+    Thread second = new Thread(() -> {
+      try {
+        queue.take();
+        received.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    first.start();
+    second.start();
+    while (first.getState() != Thread.State.WAITING
+        || second.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    first.interrupt();
+    queue.put(1);
+    assertTrue("Element is not received!", received.await(5, TimeUnit.SECONDS));
+    first.join();
+    assertTrue("Interrupted thread took element!", interrupted.get());
+    assertEquals("Queue must be empty!", 0, queue.size());
+  }
+}
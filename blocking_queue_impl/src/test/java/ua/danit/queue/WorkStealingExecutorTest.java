@@ -0,0 +1,154 @@
+package ua.danit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for work stealing executor and its deque.
+ *
+ * @author Andrey Minov
+ */
+public class WorkStealingExecutorTest {
+  private static final int TASKS = 10000;
+  private static final int FANOUT = 8;
+
+  @Test
+  public void testNestedTasksAreStolen() throws Exception {
+    WorkStealingExecutor executor = new WorkStealingExecutor(4);
+    AtomicInteger executed = new AtomicInteger();
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    CountDownLatch done = new CountDownLatch(TASKS * FANOUT);
+    for (int i = 0; i < TASKS; i++) {
+      executor.execute(() -> {
+        for (int j = 0; j < FANOUT; j++) {
+          executor.execute(() -> {
+            threads.add(Thread.currentThread().getName());
+            executed.incrementAndGet();
+            done.countDown();
+          });
+        }
+      });
+    }
+    assertTrue("Not all tasks are executed!", done.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+    assertTrue("Executor is not terminated!", executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals("Incorrent number of executed tasks!", TASKS * FANOUT, executed.get());
+    assertTrue("Unknown worker thread!", threads.stream()
+        .allMatch(name -> name.startsWith("work-stealing-")));
+  }
+
+  @Test
+  public void testSubmitAndShutdown() throws Exception {
+    WorkStealingExecutor executor = new WorkStealingExecutor(2);
+    List<Callable<Integer>> calls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      int value = i;
+      calls.add(() -> value * 2);
+    }
+    int sum = 0;
+    for (Future<Integer> future : executor.invokeAll(calls)) {
+      sum += future.get();
+    }
+    assertEquals("Incorrent result!", 9900, sum);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executed = new AtomicInteger();
+    for (int i = 0; i < 10; i++) {
+      executor.execute(() -> {
+        awaitQuietly(release);
+        executed.incrementAndGet();
+      });
+    }
+    executor.shutdown();
+    assertTrue("Executor must be shut down!", executor.isShutdown());
+    assertFalse("Executor terminated before tasks!", executor.isTerminated());
+    try {
+      executor.execute(executed::incrementAndGet);
+      throw new AssertionError("Task accepted after shutdown!");
+    } catch (RejectedExecutionException e) {
+      // Expected.
+    }
+    release.countDown();
+    assertTrue("Executor is not terminated!", executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals("Queued tasks are not executed!", 10, executed.get());
+  }
+
+  @Test
+  public void testShutdownNow() throws Exception {
+    WorkStealingExecutor executor = new WorkStealingExecutor(1);
+    CountDownLatch started = new CountDownLatch(1);
+    executor.execute(() -> {
+      started.countDown();
+      awaitQuietly(new CountDownLatch(1));
+    });
+    started.await();
+    for (int i = 0; i < 5; i++) {
+      executor.execute(() -> { });
+    }
+    assertEquals("Incorrent number of pending tasks!", 5, executor.shutdownNow().size());
+    assertTrue("Executor is not terminated!", executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDequeOwnerAndThieves() throws Exception {
+    WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+    int total = 100000;
+    Set<Integer> taken = ConcurrentHashMap.newKeySet();
+    AtomicInteger duplicates = new AtomicInteger();
+    AtomicInteger count = new AtomicInteger();
+    List<Thread> thieves = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      thieves.add(new Thread(() -> {
+        while (count.get() < total) {
+          Integer element = deque.steal();
+          if (element != null) {
+            count.incrementAndGet();
+            if (!taken.add(element)) {
+              duplicates.incrementAndGet();
+            }
+          }
+        }
+      }));
+    }
+    thieves.forEach(Thread::start);
+    for (int i = 0; i < total; i++) {
+      deque.push(i);
+      if (i % 3 == 0) {
+        Integer element = deque.pop();
+        if (element != null) {
+          count.incrementAndGet();
+          if (!taken.add(element)) {
+            duplicates.incrementAndGet();
+          }
+        }
+      }
+    }
+    for (Thread thief : thieves) {
+      thief.join(TimeUnit.SECONDS.toMillis(10));
+    }
+    assertEquals("Element taken twice!", 0, duplicates.get());
+    assertEquals("Not all elements are taken!", total, taken.size());
+    assertTrue("Deque must be empty!", deque.isEmpty());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}